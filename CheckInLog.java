@@ -0,0 +1,648 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of the members' check-ins, kept as a compact binary time series, with rollups per night and per member.
+ * <p>
+ * Checking a member in takes no lock and doesn't wait for the disk: the event is put in a ring buffer,
+ * which a background thread drains, appending the events to the log file and adding them to the rollups.
+ * The log file starts with a header: magic number (int), format version (short) and reserved (short).
+ * Then come the events, each: time in milliseconds (long), door (short), member type (byte) and the member's id,
+ * as it's code (long, see {@link CredentialKind#encode(String)}), or -1 followed by the id as a length-prefixed UTF-8 string.
+ * <p>
+ * Nights run from noon to noon in the system's time zone, so a check-in after midnight counts for the night before.
+ * The rollups hold for each night the check-ins per hour, and the first and last check-in; and for each member
+ * the number of visits, and the first and last check-in. Queries read only the rollups, so they take the same time
+ * over years of history. The rollups are written to a rollup file, with the length of the log they cover,
+ * every {@value #CHECKPOINT} events and on close; on open only the log after that is replayed.
+ * A torn event at the end of the log, left by a crash, is dropped.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class CheckInLog implements Closeable {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final int MAGIC = 0x424B4349; // "BKCI"
+    public static final int ROLLUP_MAGIC = 0x424B4341; // "BKCA"
+    public static final short VERSION = 1; // Current format version of the log and rollup files.
+    private static final int HEADER_LENGTH = 8; // Length of the log header in bytes.
+    private static final int EVENT_LENGTH = 19; // Length of an event whose id has a code, in bytes.
+    private static final int CAPACITY = 1 << 12; // Number of events the ring buffer holds, a power of 2.
+    private static final int CHECKPOINT = 10000; // Number of events between writes of the rollups.
+    private static final int NIGHT_START_HOUR = 12; // Hour a night starts at.
+
+    private final File rollupFile; // The rollup file.
+    private final short door; // The door this log's check-ins are at.
+    private final ZoneId zone; // Time zone of nights and hours.
+    private final String[] keys; // The ring buffer: member id of each event,
+    private final ClubberType[] types; // member type,
+    private final long[] times; // and time.
+    private final AtomicLongArray sequences; // For each slot, the position it is free to be put at, or the position put at plus 1.
+    private final AtomicLong tail; // Position of the next event put.
+    private long head; // Position of the next event drained, by the writer thread only.
+    private final FileChannel channel; // Channel of the log file.
+    private final ByteBuffer out; // Events waiting to be written.
+    private long length; // Length of the log written.
+    private int sinceCheckpoint; // Events written since the rollups were last written.
+    private final TreeMap<LocalDate, NightStats> nights; // Rollup of each night.
+    private final HashMap<String, MemberStats> members; // Rollup of each member, by id.
+    private final Thread writer; // Drains the ring buffer.
+    private volatile boolean closed; // Was the log closed?
+    private volatile IOException backgroundError; // Last error of the writer, thrown by close.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * Opens (or creates) the log, reads the rollups and replays the log they don't cover.
+     * The rollup file is the log file's path with ".rollup" appended.
+     * @param file The log file.
+     * @param door The door this log's check-ins are at.
+     * @throws IOException If the log cannot be opened, or isn't a check-in log.
+     */
+    public CheckInLog(File file, int door) throws IOException {
+        this.rollupFile = new File(file.getPath() + ".rollup");
+        this.door = (short)door;
+        zone = ZoneId.systemDefault();
+        keys = new String[CAPACITY];
+        types = new ClubberType[CAPACITY];
+        times = new long[CAPACITY];
+        sequences = new AtomicLongArray(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++)
+            sequences.set(i, i);
+        tail = new AtomicLong();
+        out = ByteBuffer.allocateDirect(1 << 16);
+        nights = new TreeMap<LocalDate, NightStats>();
+        members = new HashMap<String, MemberStats>();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            if (channel.size() < HEADER_LENGTH) { // New log.
+                header.putInt(MAGIC).putShort(VERSION).putShort((short)0).flip();
+                channel.truncate(0);
+                while (header.hasRemaining())
+                    channel.write(header, header.position());
+            }
+            else {
+                channel.read(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC)
+                    throw new StreamCorruptedException("Not a check-in log");
+                short version = header.getShort();
+                if (version > VERSION)
+                    throw new InvalidClassException("Unsupported check-in log version " + version);
+            }
+            long covered = readRollups();
+            if (covered > channel.size()) { // The log lost events the rollups hold, count them again.
+                nights.clear();
+                members.clear();
+                covered = HEADER_LENGTH;
+            }
+            length = replay(covered);
+            channel.truncate(length);
+            channel.position(length);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(this::drain, "BK check-ins");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Checks a member in, now.
+     * @param member The member.
+     */
+    public void checkIn(ClubberRecord member) {
+        checkIn(member.getId(), member.getType(), System.currentTimeMillis());
+    }
+
+    /**
+     * Checks a member in. Takes no lock; waits only if the ring buffer is full, for the writer to drain it.
+     * @param id The member's id.
+     * @param type The member's type.
+     * @param time Time of the check-in, in milliseconds.
+     */
+    public void checkIn(String id, ClubberType type, long time) {
+        if (closed)
+            throw new IllegalStateException("Check-in log is closed");
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int)position & (CAPACITY - 1);
+            long sequence = sequences.get(slot);
+            if (sequence == position && tail.compareAndSet(position, position + 1))
+                break;
+            if (sequence < position) { // Full, let the writer drain it.
+                LockSupport.unpark(writer);
+                Thread.yield();
+            }
+        }
+        keys[slot] = id;
+        types[slot] = type;
+        times[slot] = time;
+        sequences.set(slot, position + 1); // Publishes the event to the writer.
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Run by the writer thread: drains the ring buffer into the log and the rollups,
+     * until the log is closed and all events put are drained.
+     */
+    private void drain() {
+        while (true) {
+            boolean closing = closed;
+            int drained = 0;
+            try {
+                while (true) {
+                    int slot = (int)head & (CAPACITY - 1);
+                    if (sequences.get(slot) != head + 1)
+                        break;
+                    String id = keys[slot];
+                    ClubberType type = types[slot];
+                    long time = times[slot];
+                    keys[slot] = null;
+                    sequences.set(slot, head + CAPACITY); // Frees the slot.
+                    head++;
+                    append(id, type, time);
+                    roll(id, type, time);
+                    drained++;
+                }
+                if (drained > 0) {
+                    writeBuffer();
+                    sinceCheckpoint += drained;
+                    if (sinceCheckpoint >= CHECKPOINT) {
+                        channel.force(false); // The rollups must not cover events still in memory.
+                        writeRollups();
+                        sinceCheckpoint = 0;
+                    }
+                }
+            }
+            catch (IOException e) {
+                ClubMetrics.error("Check-ins cannot be written", e);
+                backgroundError = e;
+                out.clear();
+            }
+            if (drained == 0) {
+                if (closing && tail.get() == head)
+                    return;
+                LockSupport.parkNanos(this, 100000000L);
+            }
+        }
+    }
+
+    /**
+     * Encodes an event into the buffer, writing the buffer first if it is full.
+     * @param id The member's id.
+     * @param type The member's type.
+     * @param time Time of the check-in, in milliseconds.
+     * @throws IOException If the buffer cannot be written.
+     */
+    private void append(String id, ClubberType type, long time) throws IOException {
+        long code = CredentialKind.encode(id);
+        byte[] bytes = (code < 0 ? id.getBytes(StandardCharsets.UTF_8) : null);
+        if (out.remaining() < EVENT_LENGTH + (bytes == null ? 0 : 2 + bytes.length))
+            writeBuffer();
+        out.putLong(time).putShort(door).put((byte)type.ordinal()).putLong(code);
+        if (bytes != null)
+            out.putShort((short)bytes.length).put(bytes);
+    }
+
+    /**
+     * Writes the buffered events to the log.
+     * @throws IOException If the events cannot be written.
+     */
+    private void writeBuffer() throws IOException {
+        out.flip();
+        int bytes = out.remaining();
+        while (out.hasRemaining())
+            channel.write(out);
+        out.clear();
+        length += bytes;
+        ClubMetrics.countBytesWritten(bytes);
+    }
+
+    /**
+     * Replays the log from an offset into the rollups, up to it's end or to a torn or corrupted event.
+     * @param from Offset of the first event to replay.
+     * @return The length of the valid part of the log.
+     * @throws IOException If the log cannot be read.
+     */
+    private long replay(long from) throws IOException {
+        long position = from;
+        channel.position(from);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16)); // Not closed, it would close the channel.
+        try {
+            while (true) {
+                long time = in.readLong();
+                in.readShort(); // Door.
+                int type = in.readUnsignedByte();
+                long code = in.readLong();
+                int eventLength = EVENT_LENGTH;
+                String id;
+                if (code >= 0)
+                    id = CredentialKind.decode(code);
+                else {
+                    int idLength = in.readShort();
+                    if (idLength < 0)
+                        break;
+                    byte[] bytes = new byte[idLength];
+                    in.readFully(bytes);
+                    id = new String(bytes, StandardCharsets.UTF_8);
+                    eventLength += 2 + idLength;
+                }
+                if (type >= ClubberType.values().length)
+                    break;
+                roll(id, ClubberType.values()[type], time);
+                position += eventLength;
+            }
+        }
+        catch (EOFException | IllegalArgumentException e) {
+            // End of the log, or an event torn by a crash.
+        }
+        return position;
+    }
+
+    /**
+     * Adds a check-in to the rollups.
+     * @param id The member's id.
+     * @param type The member's type.
+     * @param time Time of the check-in, in milliseconds.
+     */
+    private synchronized void roll(String id, ClubberType type, long time) {
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone);
+        LocalDate night = nightOf(local);
+        NightStats nightStats = nights.get(night);
+        if (nightStats == null)
+            nights.put(night, nightStats = new NightStats(night));
+        nightStats.add(local.getHour(), time);
+        MemberStats memberStats = members.get(id);
+        if (memberStats == null)
+            members.put(id, memberStats = new MemberStats(id, type));
+        memberStats.add(type, time);
+    }
+
+    /**
+     * Reads the rollup file, if there is one that is valid.
+     * @return The length of the log the rollups cover, the header's length if there are none.
+     */
+    private long readRollups() {
+        if (!rollupFile.exists())
+            return HEADER_LENGTH;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(rollupFile), 1 << 16))) {
+            if (in.readInt() != ROLLUP_MAGIC || in.readShort() > VERSION)
+                throw new StreamCorruptedException("Not a check-in rollup file");
+            in.readShort();
+            long covered = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                NightStats night = new NightStats(LocalDate.ofEpochDay(in.readLong()));
+                night.visits = in.readInt();
+                night.first = in.readLong();
+                night.last = in.readLong();
+                for (int hour = 0; hour < 24; hour++)
+                    night.hours[hour] = in.readInt();
+                nights.put(night.night, night);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                MemberStats member = new MemberStats(in.readUTF(), ClubberType.values()[in.readUnsignedByte()]);
+                member.visits = in.readInt();
+                member.first = in.readLong();
+                member.last = in.readLong();
+                members.put(member.id, member);
+            }
+            return covered;
+        }
+        catch (IOException | RuntimeException e) {
+            ClubMetrics.error("Check-in rollups cannot be read, the whole log is replayed", e);
+            nights.clear();
+            members.clear();
+            return HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Writes the rollups, with the length of the log they cover, to a temporary file which then atomically replaces the rollup file.
+     * @throws IOException If the rollups cannot be written.
+     */
+    private synchronized void writeRollups() throws IOException {
+        File temp = new File(rollupFile.getPath() + ".tmp");
+        try (DataOutputStream rollups = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            rollups.writeInt(ROLLUP_MAGIC);
+            rollups.writeShort(VERSION);
+            rollups.writeShort(0);
+            rollups.writeLong(length);
+            rollups.writeInt(nights.size());
+            for (NightStats night : nights.values()) {
+                rollups.writeLong(night.night.toEpochDay());
+                rollups.writeInt(night.visits);
+                rollups.writeLong(night.first);
+                rollups.writeLong(night.last);
+                for (int visits : night.hours)
+                    rollups.writeInt(visits);
+            }
+            rollups.writeInt(members.size());
+            for (MemberStats member : members.values()) {
+                rollups.writeUTF(member.id);
+                rollups.writeByte(member.type.ordinal());
+                rollups.writeInt(member.visits);
+                rollups.writeLong(member.first);
+                rollups.writeLong(member.last);
+            }
+        }
+        Files.move(temp.toPath(), rollupFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param local A local time.
+     * @return The night the time is in.
+     */
+    private static LocalDate nightOf(LocalDateTime local) {
+        return local.minusHours(NIGHT_START_HOUR).toLocalDate();
+    }
+
+    /**
+     * @param time A time, in milliseconds.
+     * @return The night the time is in, by the date it starts at.
+     */
+    public LocalDate nightOf(long time) {
+        return nightOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone));
+    }
+
+    /**
+     * @param night A night, by the date it starts at.
+     * @return The night's rollup, or null if no one checked in that night.
+     */
+    public synchronized NightStats night(LocalDate night) {
+        NightStats stats = nights.get(night);
+        return (stats == null ? null : stats.copy());
+    }
+
+    /**
+     * @param from The first night.
+     * @param to The last night.
+     * @return The number of check-ins of each night in the range that had any, in order.
+     */
+    public synchronized SortedMap<LocalDate, Integer> visitsPerNight(LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, Integer> visits = new TreeMap<LocalDate, Integer>();
+        for (NightStats night : nights.subMap(from, true, to, true).values())
+            visits.put(night.night, night.visits);
+        return visits;
+    }
+
+    /**
+     * @param from The first night.
+     * @param to The last night.
+     * @return The hour of the day with the most check-ins over the nights in the range, or -1 if there were none.
+     */
+    public synchronized int busiestHour(LocalDate from, LocalDate to) {
+        int[] hours = new int[24];
+        for (NightStats night : nights.subMap(from, true, to, true).values())
+            for (int hour = 0; hour < 24; hour++)
+                hours[hour] += night.hours[hour];
+        return busiest(hours);
+    }
+
+    /**
+     * @param id A member's id.
+     * @return The member's rollup, or null if the member never checked in.
+     */
+    public synchronized MemberStats member(String id) {
+        MemberStats stats = members.get(id);
+        return (stats == null ? null : stats.copy());
+    }
+
+    /**
+     * @param hours Number of check-ins at each hour of the day.
+     * @return The hour with the most check-ins, or -1 if there were none.
+     */
+    private static int busiest(int[] hours) {
+        int busiest = -1;
+        for (int hour = 0; hour < 24; hour++)
+            if (hours[hour] > 0 && (busiest < 0 || hours[hour] > hours[busiest]))
+                busiest = hour;
+        return busiest;
+    }
+
+    /**
+     * Waits for the writer to drain the ring buffer, forces the log to disk and writes the rollups.
+     * @throws IOException If the log or the rollups cannot be written, now or by the writer before.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(false);
+            writeRollups();
+        }
+        finally {
+            channel.close();
+        }
+        IOException error = backgroundError;
+        backgroundError = null;
+        if (error != null)
+            throw error;
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Rollup of a night's check-ins.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class NightStats {
+
+        private final LocalDate night; // The night, by the date it starts at.
+        private final int[] hours; // Check-ins at each hour of the day.
+        private int visits; // Check-ins of the night.
+        private long first, last; // Times of the first and last check-in, in milliseconds.
+
+        /**
+         * Constructor - 1 Parameter.
+         * @param night The night, by the date it starts at.
+         */
+        private NightStats(LocalDate night) {
+            this.night = night;
+            hours = new int[24];
+        }
+
+        /**
+         * Adds a check-in.
+         * @param hour The hour of the day of the check-in.
+         * @param time Time of the check-in, in milliseconds.
+         */
+        private void add(int hour, long time) {
+            hours[hour]++;
+            first = (visits == 0 ? time : Math.min(first, time));
+            last = (visits == 0 ? time : Math.max(last, time));
+            visits++;
+        }
+
+        /**
+         * @return A copy of this rollup.
+         */
+        private NightStats copy() {
+            NightStats copy = new NightStats(night);
+            System.arraycopy(hours, 0, copy.hours, 0, 24);
+            copy.visits = visits;
+            copy.first = first;
+            copy.last = last;
+            return copy;
+        }
+
+        /**
+         * @return The night, by the date it starts at.
+         */
+        public LocalDate getNight() {
+            return night;
+        }
+
+        /**
+         * @return Number of check-ins of the night.
+         */
+        public int getVisits() {
+            return visits;
+        }
+
+        /**
+         * @param hour An hour of the day, 0 to 23.
+         * @return Number of check-ins at that hour.
+         */
+        public int getVisits(int hour) {
+            return hours[hour];
+        }
+
+        /**
+         * @return The hour of the day with the most check-ins.
+         */
+        public int getBusiestHour() {
+            return busiest(hours);
+        }
+
+        /**
+         * @return Time of the first check-in, in milliseconds.
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        /**
+         * @return Time of the last check-in, in milliseconds.
+         */
+        public long getLast() {
+            return last;
+        }
+
+    } // NightStats - End of class definition.
+
+    /**
+     * Rollup of a member's check-ins.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class MemberStats {
+
+        private final String id; // The member's id.
+        private ClubberType type; // The member's type at the last check-in.
+        private int visits; // Check-ins of the member.
+        private long first, last; // Times of the first and last check-in, in milliseconds.
+
+        /**
+         * Constructor - 2 Parameters.
+         * @param id The member's id.
+         * @param type The member's type.
+         */
+        private MemberStats(String id, ClubberType type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        /**
+         * Adds a check-in.
+         * @param type The member's type at the check-in.
+         * @param time Time of the check-in, in milliseconds.
+         */
+        private void add(ClubberType type, long time) {
+            first = (visits == 0 ? time : Math.min(first, time));
+            if (visits == 0 || time >= last) {
+                last = time;
+                this.type = type;
+            }
+            visits++;
+        }
+
+        /**
+         * @return A copy of this rollup.
+         */
+        private MemberStats copy() {
+            MemberStats copy = new MemberStats(id, type);
+            copy.visits = visits;
+            copy.first = first;
+            copy.last = last;
+            return copy;
+        }
+
+        /**
+         * @return The member's id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return The member's type at the last check-in.
+         */
+        public ClubberType getType() {
+            return type;
+        }
+
+        /**
+         * @return Number of check-ins of the member.
+         */
+        public int getVisits() {
+            return visits;
+        }
+
+        /**
+         * @return Time of the first check-in, in milliseconds.
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        /**
+         * @return Time of the last check-in, in milliseconds.
+         */
+        public long getLast() {
+            return last;
+        }
+
+    } // MemberStats - End of class definition.
+
+} // CheckInLog - End of class definition.
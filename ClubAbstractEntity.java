@@ -7,18 +7,23 @@ import java.io.Serializable;
 /**
  * Abstract class for a clubbers entity.
  * The class defines how each entity will be displayed using GUI components and how it's data behaves.
+ * The data itself is kept in an immutable {@link ClubberRecord} the frame is bound to,
+ * so frames are created only for the members being edited. Frames of the club manager are pooled
+ * (see {@link ClubEditorPool}): they are bound to a member when opened, and released once closed.
  * @author Magen Rosenwasser, Atalo Tarafa.
  */
 public abstract class ClubAbstractEntity extends JFrame {
 
     //------------------------------------------- Fields ------------------------------------------
 
+    private static final long serialVersionUID = 1L;
     private final JButton okButton, cancelButton; // Ok and cancel buttons.
     private final JPanel centerPanel; // Cneter panel of frame (for JtextFields and their Jlabels).
     private final ButtonsHandler handler; // Handler for the frame's buttons.
     private final JLabel errorSymbol; // Asterisk symbol which changes locations on centerPanel depanding on validation.
     private JPanel errorLocation; // Remembers the panel where error occured.
     private NightClubMgmtApp clubManager; // The club manager this class is called from.
+    private ClubberRecord record; // Committed data of the clubber (the "belly"), null for a new clubber.
 
     //------------------------------------------- Constructors ------------------------------------
 
@@ -46,24 +51,6 @@ public abstract class ClubAbstractEntity extends JFrame {
 
     //------------------------------------------- Abstract Methods --------------------------------
 
-    /**
-     * Checks if it's an empty class.
-     * it's enough to check id becuase if it's null - class didn't pass validation,
-     * thus is considered empty.
-     * @return True If this instance is empty, false otherwise.
-     */
-    public abstract boolean isEmpty();
-
-    /**
-     * An abstract method that defines an interface for "matching."
-     * Each inheritor is required to implement this method that receives a search key
-     * (String type) and returns true / false whether or not this key matches the
-     * customer's unique ID.
-     * @param key The identification credential to match with.
-     * @return True if a clubber with this key exists, false otherwise.
-     */
-    public abstract boolean match(String key);
-
     /**
      * Used to check if matching identification credentials exists for a different clubber.
      * Implemented by inheritors for different key credentials that they use for identification.
@@ -85,18 +72,25 @@ public abstract class ClubAbstractEntity extends JFrame {
     /**
      * An abstract method that defines an interface for saving The information in the "Belly."
      * Every inheritor is required to implement this method that performs saving the information from
-     * The various JTextFields (belonging to it!) To the fields kept in it's "belly."
+     * The various JTextFields (belonging to it!) To a new record kept in it's "belly,"
+     * using {@link #setRecord(ClubberRecord record)}.
      */
     protected abstract void commit();
 
     /**
      * An abstract method that defines an interface for rollback.
      * Every inheritor is required to implement this method which performs a rollback of data -
-     * that is, all the information stored in it's "belly" is copied to his appropriate JTextFields
+     * that is, all the information stored in it's "belly" ({@link #getRecord()}) is copied to his appropriate JTextFields
      * (no matter what was in those JTextFields before!).
      */
     protected abstract void rollBack();
 
+    /**
+     * Returns the type of members this frame edits.
+     * @return The frame's member type.
+     */
+    public abstract ClubberType getClubberType();
+
     //------------------------------------------- Methods -----------------------------------------
 
     /**
@@ -147,7 +141,46 @@ public abstract class ClubAbstractEntity extends JFrame {
      * @return True if different clubber with this credential exists, false otherwise.
      */
     protected boolean duplicateCredentialCheck(String key) {
-        return clubManager.duplicateKeyCheck(key, this);
+        return clubManager.duplicateKeyCheck(key, record);
+    }
+
+    /**
+     * Returns the committed data of the clubber this frame is bound to.
+     * @return The clubber's record, or null if a new clubber wasn't committed yet.
+     */
+    protected ClubberRecord getRecord() {
+        return record;
+    }
+
+    /**
+     * Binds this frame to the committed data of a clubber.
+     * Used by inheritors on construction and commit.
+     * @param record The clubber's record.
+     */
+    protected void setRecord(ClubberRecord record) {
+        this.record = record;
+    }
+
+    /**
+     * Binds this frame to a clubber, for reuse of the frame: the text fields are reset from the
+     * clubber's data by {@link #rollBack()}, and cancel is enabled only for an existing clubber.
+     * @param record The clubber's data, null for a new clubber.
+     */
+    public void bind(ClubberRecord record) {
+        setRecord(record);
+        rollBack();
+        toggleCancelButton(record != null);
+    }
+
+    /**
+     * Hides this frame and releases it to the club manager's pool, or disposes it if it has no manager.
+     */
+    private void release() {
+        setVisible(false);
+        if (clubManager == null)
+            dispose();
+        else
+            clubManager.releaseEditor(this);
     }
 
     /**
@@ -167,6 +200,8 @@ public abstract class ClubAbstractEntity extends JFrame {
      */
     private class ButtonsHandler implements ActionListener, Serializable {
 
+        private static final long serialVersionUID = 1L;
+
         /**
          * Handles The actions to be taken when a certain button is pressed.
          * @param e The pressed button.
@@ -175,8 +210,14 @@ public abstract class ClubAbstractEntity extends JFrame {
         public void actionPerformed(ActionEvent e) {
             if(e.getSource() == okButton) {
                 if(validateData() && !duplicateCredentialCheck()) { // If regex is proper and no other member with same key credentials exists.
+                    ClubberRecord old = record;
                     commit();
-                    setVisible(false);
+                    if(!clubManager.commitClubber(old, record)) { // Store the new data in the club's repository.
+                        record = old; // Refused, keep editing.
+                        toggleCancelButton(old != null);
+                        return;
+                    }
+                    release(); // The frame is needed again only when a clubber is opened.
                 }
                 else
                     return;
@@ -184,7 +225,7 @@ public abstract class ClubAbstractEntity extends JFrame {
             else
                 if(e.getSource() == cancelButton) {
                     rollBack(); // revert old data to the text fields.
-                    setVisible(false);
+                    release();
                 }
         }
 
@@ -0,0 +1,202 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * Frame for browsing all the club's members in a table, filtered by type, surname prefix and phone digits,
+ * and ordered by addition, surname or phone.
+ * The table holds no copy of the members: it's model keeps only the document numbers of the shown members
+ * (see {@link ClubberSearchIndex#browse(ClubberType, String, String, ClubberSearchIndex.Order)}),
+ * and looks a member up by id in the repository when it's row is painted. So scrolling through millions of members
+ * costs only the rows on screen, and memory is an int per shown member, also over a {@link LazyClubberRepository}.
+ * Double clicking a row opens the member.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubBrowser extends JFrame implements ActionListener {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final long serialVersionUID = 1L;
+    private static final String ALL_TYPES = "All"; // Type filter choice for all types.
+
+    private final NightClubMgmtApp clubManager; // The club manager members are opened by.
+    private final ClubberSearchIndex index; // The index members are browsed in.
+    private final ClubberRepository repository; // The repository shown members are read from.
+    private final MembersModel model; // The table's model.
+    private final JTable table; // Table of the members.
+    private final JComboBox<String> typeCmb, orderCmb; // Type filter and order choices.
+    private final JTextField surnameTxtF, phoneTxtF; // Surname prefix and phone digits filters.
+    private final JButton applyButton; // Applies the filters and order.
+    private final JLabel countLbl; // Number of shown members.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 3 Parameters.
+     * Creates the frame, showing all the members in the order they were added.
+     * @param clubManager The club manager members are opened by.
+     * @param index The index members are browsed in.
+     * @param repository The repository shown members are read from.
+     */
+    public ClubBrowser(NightClubMgmtApp clubManager, ClubberSearchIndex index, ClubberRepository repository) {
+        this.clubManager = clubManager;
+        this.index = index;
+        this.repository = repository;
+        model = new MembersModel();
+        table = new JTable(model);
+        table.setRowHeight(20); // Fixed height, so rows don't need to be measured.
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setFillsViewportHeight(true);
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                if (e.getClickCount() == 2 && row >= 0) {
+                    ClubberRecord clubber = model.getMember(row);
+                    if (clubber != null)
+                        clubManager.showClubber(clubber);
+                }
+            }
+        });
+
+        String[] types = { ALL_TYPES, "Person", "Soldier", "Student" };
+        typeCmb = new JComboBox<String>(types);
+        orderCmb = new JComboBox<String>(new String[] { "Added", "Surname", "Phone" });
+        surnameTxtF = new JTextField(10);
+        phoneTxtF = new JTextField(10);
+        applyButton = new JButton("Apply");
+        countLbl = new JLabel();
+
+        JPanel filtersPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filtersPanel.add(new JLabel("Type"));
+        filtersPanel.add(typeCmb);
+        filtersPanel.add(new JLabel("Surname"));
+        filtersPanel.add(surnameTxtF);
+        filtersPanel.add(new JLabel("Phone"));
+        filtersPanel.add(phoneTxtF);
+        filtersPanel.add(new JLabel("Order"));
+        filtersPanel.add(orderCmb);
+        filtersPanel.add(applyButton);
+
+        setLayout(new BorderLayout());
+        add(filtersPanel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(countLbl, BorderLayout.SOUTH);
+
+        applyButton.addActionListener(this);
+        surnameTxtF.addActionListener(this); // Enter applies as well.
+        phoneTxtF.addActionListener(this);
+
+        setTitle("BK Club members");
+        setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        setSize(800, 500);
+        setLocationRelativeTo(null); // Open window at center of screen.
+        refresh();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Lists the members again with the current filters and order, for example after a commit.
+     */
+    public void refresh() {
+        String typeName = String.valueOf(typeCmb.getSelectedItem());
+        ClubberType type = (typeName.equals(ALL_TYPES) ? null : ClubberType.fromDisplayName(typeName));
+        ClubberSearchIndex.Order order = ClubberSearchIndex.Order.values()[orderCmb.getSelectedIndex()];
+        model.setDocuments(index.browse(type, surnameTxtF.getText(), phoneTxtF.getText(), order));
+        countLbl.setText(String.format(" %,d members", model.getRowCount()));
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    /**
+     * Listener for the apply button and the filter fields.
+     * @param e The event.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        refresh();
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Table model reading the shown members from the repository on demand, by their ids in the index.
+     * The member of the last read row is kept, as each of it's cells is read in turn.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private class MembersModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = 1L;
+        private final String[] columns = { "Type", "ID", "Name", "Surname", "Tel", "Personal NO. / Student ID" };
+        private int[] documents = new int[0]; // Document numbers of the shown members, by row.
+        private int lastRow = -1; // The last read row, -1 if none.
+        private ClubberRecord lastMember; // The last read row's member.
+
+        /**
+         * Shows other members.
+         * @param documents Document numbers of the members, by row.
+         */
+        void setDocuments(int[] documents) {
+            this.documents = documents;
+            lastRow = -1;
+            lastMember = null;
+            fireTableDataChanged();
+        }
+
+        /**
+         * @param row A row.
+         * @return The row's member, or null if it was replaced since the rows were listed.
+         */
+        ClubberRecord getMember(int row) {
+            if (row != lastRow) {
+                String id = index.id(documents[row]);
+                lastMember = (id == null ? null : repository.find(id));
+                lastRow = row;
+            }
+            return lastMember;
+        }
+
+        @Override
+        public int getRowCount() {
+            return documents.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ClubberRecord clubber = getMember(row);
+            if (clubber == null)
+                return null;
+            switch (column) {
+                case 0:
+                    return clubber.getType().getDisplayName();
+                case 1:
+                    return clubber.getId();
+                case 2:
+                    return clubber.getName();
+                case 3:
+                    return clubber.getSurname();
+                case 4:
+                    return clubber.getTel();
+                default:
+                    return (clubber.getType() == ClubberType.SOLDIER ? clubber.getPersonalNum() : clubber.getStudentId());
+            }
+        }
+
+    } // MembersModel - End of class definition.
+
+} // ClubBrowser - End of class definition.
@@ -0,0 +1,241 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line entry point for running the club's maintenance on servers without a display.
+ * Works on the configured data file (see {@link ClubberStorage}) and never loads the GUI classes
+ * ({@link NightClubMgmtApp} is a frame, so it can't be the entry point), nor starts the metrics' JMX registration.
+ * Commands that only read stream the saved data file member by member, read only, so they start at once,
+ * take the same memory for any number of members and can run while the application is live;
+ * changes still only in a journal are not read by them, which is reported.
+ * <p>
+ * Usage: java ClubCommandLine command [arguments], where command is one of:
+ * "lookup key..." - prints the member each key matches, or NONE;
+ * "count-by-type" - prints the number of members of each type;
+ * "validate-file [file]" - checks every member's fields and that no credential is held twice;
+ * "compact" - loads the members and rewrites the data file in it's most compact form
+ * (folding the journal into the snapshot, for the journal store), should not be run while the application is live;
+ * "export csv|jsonl output-file" - exports the members (see {@link ClubberExporter}).
+ * Exits with 0 on success, 1 if a key wasn't found or the file isn't valid, and 2 on wrong usage.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubCommandLine {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final String USAGE = "Usage: java ClubCommandLine lookup key... | count-by-type | validate-file [file]"
+            + " | compact | export csv|jsonl output-file";
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Private constructor - utility class.
+     */
+    private ClubCommandLine() {
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Runs a command and exits with it's status.
+     * @param args The command and it's arguments.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs a command.
+     * @param args The command and it's arguments.
+     * @return The exit status: 0 on success, 1 if a key wasn't found or the file isn't valid, and 2 on wrong usage.
+     * @throws IOException If a file cannot be read or written.
+     */
+    static int run(String[] args) throws IOException {
+        if (args.length == 0)
+            return usage();
+        File file = new File(System.getProperty("bk.file", ClubberStorage.DEFAULT_FILE));
+        switch (args[0]) {
+            case "lookup":
+                return (args.length < 2 ? usage() : lookup(file, args));
+            case "count-by-type":
+                return (args.length != 1 ? usage() : countByType(file));
+            case "validate-file":
+                return (args.length > 2 ? usage() : validateFile(args.length > 1 ? new File(args[1]) : file));
+            case "compact":
+                return (args.length != 1 ? usage() : compact(file));
+            case "export":
+                if (args.length != 3 || !(args[1].equalsIgnoreCase("csv") || args[1].equalsIgnoreCase("jsonl")))
+                    return usage();
+                return export(file, ClubberExporter.Format.valueOf(args[1].toUpperCase()), new File(args[2]));
+            default:
+                return usage();
+        }
+    }
+
+    /**
+     * Prints the usage.
+     * @return 2, the status of wrong usage.
+     */
+    private static int usage() {
+        System.err.println(USAGE);
+        return 2;
+    }
+
+    /**
+     * Streams the members of a saved data file, warning if a journal holds changes not in it.
+     * @param file The data file.
+     * @param sink Receives the members.
+     * @throws IOException If the file cannot be read.
+     */
+    private static void read(File file, LegacyClubberReader.Sink sink) throws IOException {
+        if (new File(file.getPath() + ".log").length() > 0 || new File(file.getPath() + ".log.old").exists())
+            System.err.println("Note: changes still in the journal of " + file + " are not included, run compact first");
+        ClubberStorage.readDataFile(file, sink);
+    }
+
+    /**
+     * Looks keys up in a single pass over the members.
+     * @param file The data file.
+     * @param args The command, then the keys.
+     * @return 0 if every key was found, 1 otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int lookup(File file, String[] args) throws IOException {
+        final Map<String, ClubberRecord> found = new LinkedHashMap<String, ClubberRecord>();
+        for (int i = 1; i < args.length; i++)
+            found.put(args[i], null);
+        read(file, record -> {
+            for (String id : record.keys())
+                if (found.containsKey(id) && found.get(id) == null)
+                    found.put(id, record);
+        });
+        int status = 0;
+        for (Map.Entry<String, ClubberRecord> entry : found.entrySet()) {
+            ClubberRecord record = entry.getValue();
+            if (record == null) {
+                System.out.println(entry.getKey() + ": NONE");
+                status = 1;
+            }
+            else
+                System.out.println(entry.getKey() + ": " + record.matchKind(entry.getKey()) + " of " + record);
+        }
+        return status;
+    }
+
+    /**
+     * Counts the members of each type.
+     * @param file The data file.
+     * @return 0.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int countByType(File file) throws IOException {
+        final EnumMap<ClubberType, Long> counts = new EnumMap<ClubberType, Long>(ClubberType.class);
+        for (ClubberType type : ClubberType.values())
+            counts.put(type, 0L);
+        read(file, record -> counts.put(record.getType(), counts.get(record.getType()) + 1));
+        long total = 0;
+        for (Map.Entry<ClubberType, Long> entry : counts.entrySet()) {
+            System.out.println(entry.getKey().getDisplayName() + ": " + entry.getValue());
+            total += entry.getValue();
+        }
+        System.out.println("Total: " + total);
+        return 0;
+    }
+
+    /**
+     * Checks every member's fields (see {@link ClubberValidator}) and that no credential is held by two members.
+     * Every problem is printed.
+     * @param file The data file.
+     * @return 0 if the file is valid, 1 otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int validateFile(File file) throws IOException {
+        if (!file.exists() && !new File(file.getPath() + ".0").exists()) {
+            System.err.println(file + " doesn't exist");
+            return 1;
+        }
+        final HashMap<String, String> owners = new HashMap<String, String>(); // Id of the member holding each credential.
+        final long[] counts = new long[2]; // Members, and problems found.
+        read(file, record -> {
+            counts[0]++;
+            ClubberValidator.Field invalid = ClubberValidator.firstInvalid(record);
+            if (invalid != null) {
+                System.out.println("Invalid " + invalid + ": " + record);
+                counts[1]++;
+            }
+            for (String key : record.keys()) {
+                String owner = owners.putIfAbsent(key, record.getId());
+                if (owner != null) {
+                    System.out.println("Duplicate " + key + ": " + record + ", already held by " + owner);
+                    counts[1]++;
+                }
+            }
+        });
+        System.out.println(counts[0] + " members, " + counts[1] + " problems");
+        return (counts[1] == 0 ? 0 : 1);
+    }
+
+    /**
+     * Loads the members and rewrites the configured store in it's most compact form.
+     * Replication is never started, even if configured.
+     * @param file The data file.
+     * @return 0.
+     * @throws IOException If the store cannot be read or written.
+     */
+    private static int compact(File file) throws IOException {
+        long before = storedLength(file);
+        ClubberStorage storage = ClubberStorage.fromFileProperties();
+        try {
+            storage.getStore().load(storage.getRepository());
+            storage.getStore().compact(storage.getRepository());
+        }
+        finally {
+            storage.getStore().close();
+        }
+        System.out.println(storage.getRepository().size() + " members compacted, " + before + " to " + storedLength(file) + " bytes");
+        return 0;
+    }
+
+    /**
+     * @param file The data file.
+     * @return The total length of it's shards in sharded mode, once it has any, of the data file and it's journals otherwise.
+     */
+    private static long storedLength(File file) {
+        long length = 0;
+        if ("sharded".equals(System.getProperty("bk.store", "snapshot")))
+            for (int i = 0; new File(file.getPath() + "." + i).exists(); i++)
+                length += new File(file.getPath() + "." + i).length();
+        if (length > 0)
+            return length;
+        for (String suffix : new String[] { "", ".log", ".log.old" })
+            length += new File(file.getPath() + suffix).length();
+        return length;
+    }
+
+    /**
+     * Exports the members.
+     * @param file The data file.
+     * @param format The export format.
+     * @param output The file to export to.
+     * @return 0.
+     * @throws IOException If a file cannot be read or written.
+     */
+    private static int export(File file, ClubberExporter.Format format, File output) throws IOException {
+        FileChannel channel = FileChannel.open(output.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        long count;
+        try (ClubberExporter exporter = new ClubberExporter(channel, format)) {
+            read(file, exporter::write);
+            count = exporter.getCount();
+        }
+        System.out.println(count + " members exported to " + output);
+        return 0;
+    }
+
+} // ClubCommandLine - End of class definition.
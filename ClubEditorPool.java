@@ -0,0 +1,75 @@
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+
+/**
+ * Pool of editor frames, per member type, so opening a member doesn't build a new frame.
+ * A frame is bound to the member's record when opened (see {@link ClubAbstractEntity#bind(ClubberRecord)}),
+ * and returned to the pool by it's OK or Cancel button. Up to a few idle frames of each type are kept,
+ * further ones are disposed, so the number of frames is bounded by the number of open editors.
+ * Used by the event thread only.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubEditorPool {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final NightClubMgmtApp clubManager; // The club manager the editors commit to.
+    private final int maxIdle; // Maximal number of idle frames kept per type.
+    private final EnumMap<ClubberType, ArrayDeque<ClubAbstractEntity>> idle; // Idle frames by type.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * @param clubManager The club manager the editors commit to.
+     * @param maxIdle Maximal number of idle frames kept per type.
+     */
+    public ClubEditorPool(NightClubMgmtApp clubManager, int maxIdle) {
+        this.clubManager = clubManager;
+        this.maxIdle = maxIdle;
+        this.idle = new EnumMap<ClubberType, ArrayDeque<ClubAbstractEntity>>(ClubberType.class);
+        for (ClubberType type : ClubberType.values())
+            idle.put(type, new ArrayDeque<ClubAbstractEntity>());
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Takes an idle frame of a type, or creates one, and binds it to a member.
+     * The frame is not shown yet.
+     * @param type The member's type.
+     * @param record The member's data, null for a new member.
+     * @return A frame of one of the following: {@link Person}, {@link Soldier} or {@link Student}.
+     */
+    public ClubAbstractEntity acquire(ClubberType type, ClubberRecord record) {
+        ClubAbstractEntity editor = idle.get(type).poll();
+        if (editor == null) {
+            switch (type) {
+                case SOLDIER:
+                    editor = new Soldier(clubManager, null);
+                    break;
+                case STUDENT:
+                    editor = new Student(clubManager, null);
+                    break;
+                default:
+                    editor = new Person(clubManager, null);
+            }
+        }
+        editor.bind(record);
+        return editor;
+    }
+
+    /**
+     * Returns a hidden frame to the pool, or disposes it if enough frames of it's type are idle.
+     * @param editor The frame.
+     */
+    public void release(ClubAbstractEntity editor) {
+        editor.bind(null); // Don't hold on to the member's data.
+        ArrayDeque<ClubAbstractEntity> frames = idle.get(editor.getClubberType());
+        if (frames.size() < maxIdle)
+            frames.push(editor);
+        else
+            editor.dispose();
+    }
+
+} // ClubEditorPool - End of class definition.
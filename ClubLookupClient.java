@@ -0,0 +1,135 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client of the {@link ClubLookupService}, for testing it from the same machine.
+ * Usage: java ClubLookupClient host port key... - looks the keys up and prints the answers, or
+ * java ClubLookupClient host port --bench connections lookups - measures the lookups per second
+ * of pipelined lookups of synthetic keys (see {@link SyntheticClubbers#clubber(int)}).
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubLookupClient implements Closeable {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final Socket socket; // Connection to the service.
+    private final BufferedReader in; // Answers of the service.
+    private final BufferedWriter out; // Keys sent to the service.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * Connects to the service.
+     * @param host Host of the service.
+     * @param port Port of the service.
+     * @throws IOException If the service cannot be reached.
+     */
+    public ClubLookupClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Looks a single key up.
+     * @param key The member key.
+     * @return The service's answer.
+     * @throws IOException If the service cannot be reached.
+     */
+    public String lookup(String key) throws IOException {
+        out.write(key);
+        out.write('\n');
+        out.flush();
+        return in.readLine();
+    }
+
+    /**
+     * Looks several keys up in one pipelined round trip.
+     * @param keys The member keys.
+     * @return The service's answers, in order.
+     * @throws IOException If the service cannot be reached.
+     */
+    public List<String> lookup(List<String> keys) throws IOException {
+        for (String key : keys) {
+            out.write(key);
+            out.write('\n');
+        }
+        out.flush();
+        List<String> answers = new ArrayList<String>(keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            answers.add(in.readLine());
+        return answers;
+    }
+
+    /**
+     * Quits and closes the connection.
+     * @throws IOException If the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("QUIT\n");
+            out.flush();
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Main method of the client.
+     * @param args host, port and keys, or host, port, "--bench", connections and lookups.
+     * @throws Exception If the service cannot be reached.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java ClubLookupClient host port key... | host port --bench connections lookups");
+            System.exit(2);
+        }
+        final String host = args[0];
+        final int port = Integer.parseInt(args[1]);
+        if (!args[2].equals("--bench")) {
+            try (ClubLookupClient client = new ClubLookupClient(host, port)) {
+                for (int i = 2; i < args.length; i++)
+                    System.out.println(args[i] + " " + client.lookup(args[i]));
+            }
+            return;
+        }
+        int connections = Integer.parseInt(args[3]);
+        final int lookups = Integer.parseInt(args[4]);
+        final int batch = 100; // Keys per pipelined round trip.
+        Thread[] threads = new Thread[connections];
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            final int first = c * lookups;
+            threads[c] = new Thread(() -> {
+                try (ClubLookupClient client = new ClubLookupClient(host, port)) {
+                    List<String> keys = new ArrayList<String>(batch);
+                    for (int i = 0; i < lookups; i += batch) {
+                        keys.clear();
+                        for (int j = i; j < Math.min(i + batch, lookups); j++)
+                            keys.add(SyntheticClubbers.clubber(first + j).getId());
+                        client.lookup(keys);
+                    }
+                }
+                catch (IOException e) {
+                    System.err.println("Lookup failed: " + e);
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d lookups over %d connections in %.2f s: %.0f lookups/s%n",
+                (long)connections * lookups, connections, seconds, connections * lookups / seconds);
+    }
+
+} // ClubLookupClient - End of class definition.
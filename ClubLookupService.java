@@ -0,0 +1,223 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless check-in lookup service, for door scanners on the club's network.
+ * Clients connect over TCP and send one member key per line. For every key the service answers one line:
+ * "MEMBER type kind" (such as "MEMBER SOLDIER PERSONAL_NUMBER") if the key matches a member,
+ * as {@link ClubberRecord#matchKind(String key)} does, or "NONE" otherwise. "QUIT" closes the connection.
+ * Answers to pipelined keys are flushed together.
+ * <p>
+ * The service may run on a read replica (see {@link ClubberReplica}), at another door than the primary.
+ * While the replica hasn't heard from it's primary within the allowed lag, every key is answered "STALE".
+ * <p>
+ * Every connection is served by it's own thread: a virtual thread when the Java runtime has them,
+ * or a pooled platform thread otherwise.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubLookupService implements Closeable {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final int DEFAULT_PORT = 7070; // Default port of the service.
+
+    private final ClubberRepository repository; // The repository members are looked up in.
+    private final ClubberReplica replica; // The repository, if it is a replica, null otherwise.
+    private final ServerSocket server; // The listening socket.
+    private final ExecutorService connections; // Runs a task per connection.
+    private final Thread acceptor; // Accepts connections.
+    private volatile boolean running; // Is the service accepting connections?
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 3 Parameters.
+     * Opens the listening socket, see {@link #start()} for accepting connections.
+     * @param repository The repository members are looked up in.
+     * @param port The port to listen on, 0 for any free port.
+     * @param bindAddress The address to listen on, null for all addresses.
+     * @throws IOException If the socket cannot be opened.
+     */
+    public ClubLookupService(ClubberRepository repository, int port, InetAddress bindAddress) throws IOException {
+        this.repository = repository;
+        this.replica = (repository instanceof ClubberReplica ? (ClubberReplica)repository : null);
+        this.server = new ServerSocket(port, 1024, bindAddress);
+        this.connections = newConnectionExecutor();
+        this.acceptor = new Thread(this::acceptConnections, "BK lookup acceptor");
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Creates the executor of connection tasks: a thread per task, virtual if the runtime supports it.
+     * @return The executor.
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)virtual.invoke(null);
+        }
+        catch (ReflectiveOperationException e) { // Runtime without virtual threads.
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "BK lookup connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        running = true;
+        acceptor.start();
+    }
+
+    /**
+     * @return The port the service listens on.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the service is closed.
+     */
+    private void acceptConnections() {
+        while (running) {
+            try {
+                final Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+            catch (IOException e) {
+                if (running)
+                    ClubMetrics.error("Lookup service cannot accept a connection", e);
+            }
+        }
+    }
+
+    /**
+     * Answers the keys sent over a connection until the client quits or disconnects.
+     * @param socket The connection.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String key = line.trim();
+                if (key.equals("QUIT"))
+                    break;
+                out.write(answer(key));
+                out.write('\n');
+                if (!in.ready()) // Flush once no more pipelined keys are waiting.
+                    out.flush();
+            }
+        }
+        catch (SocketException e) {
+            // Client went away.
+        }
+        catch (IOException e) {
+            ClubMetrics.error("Lookup service connection failed", e);
+        }
+    }
+
+    /**
+     * Looks a key up.
+     * @param key The member key.
+     * @return The answer line, without line break.
+     */
+    public String answer(String key) {
+        if (replica != null && !replica.isCurrent())
+            return "STALE";
+        long start = ClubMetrics.LOOKUP.start();
+        ClubberRecord clubber = repository.find(key);
+        ClubMetrics.LOOKUP.stop(start);
+        if (clubber == null) {
+            ClubMetrics.countLookupMiss();
+            return "NONE";
+        }
+        return "MEMBER " + clubber.getType().name() + " " + clubber.matchKind(key).name();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     * @throws IOException If the listening socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        connections.shutdownNow();
+        try {
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the service over the configured data file (see {@link ClubberStorage}), without any GUI.
+     * The port is set by the "bk.port" system property (default 7070),
+     * and the listening address by "bk.bind" (default all addresses).
+     * With "bk.replica.of" set to a primary's "host:port", runs on a {@link ClubberReplica} of that primary instead,
+     * current while it heard from the primary within "bk.replica.maxlag" milliseconds (default 5000).
+     * @param args arguments (unused).
+     * @throws IOException If the data file cannot be read or the socket cannot be opened.
+     */
+    public static void main(String[] args) throws IOException {
+        String replicaOf = System.getProperty("bk.replica.of");
+        final ClubberStorage storage;
+        final ClubberReplica replica;
+        if (replicaOf == null) {
+            replica = null;
+            storage = ClubberStorage.fromSystemProperties();
+            ClubMetrics.start(storage);
+            storage.getStore().load(storage.getRepository());
+        }
+        else {
+            int colon = replicaOf.lastIndexOf(':');
+            if (colon < 0)
+                throw new IllegalArgumentException("bk.replica.of must be host:port: " + replicaOf);
+            replica = new ClubberReplica(new InetSocketAddress(replicaOf.substring(0, colon), Integer.parseInt(replicaOf.substring(colon + 1))),
+                    Long.getLong("bk.replica.maxlag", 5000));
+            storage = new ClubberStorage(new File(System.getProperty("bk.file", ClubberStorage.DEFAULT_FILE)), replica, null); // A replica stores nothing.
+            ClubMetrics.start(storage);
+            replica.start();
+        }
+        String bind = System.getProperty("bk.bind");
+        final ClubLookupService service = new ClubLookupService(storage.getRepository(),
+                Integer.getInteger("bk.port", DEFAULT_PORT), (bind == null ? null : InetAddress.getByName(bind)));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                service.close();
+                if (replica != null)
+                    replica.close();
+                else
+                    storage.getStore().close();
+            }
+            catch (IOException e) {
+                ClubMetrics.error("Lookup service cannot shut down cleanly", e);
+            }
+        }));
+        service.start();
+        if (replica != null)
+            System.out.printf("Lookup service of a replica of %s listening on port %d%n", replicaOf, service.getPort());
+        else
+            System.out.printf("Lookup service of %d members listening on port %d%n", storage.getRepository().size(), service.getPort());
+    }
+
+} // ClubLookupService - End of class definition.
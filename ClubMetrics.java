@@ -0,0 +1,399 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of the club manager: latencies of loading, saving, lookups, validation and commits,
+ * member counts, file sizes, bytes written, errors and the false positives of the credential filter
+ * (see {@link ClubberBloomFilter}).
+ * Metrics are kept from the start of the process by static counters, so recording one costs a few
+ * uncontended adds. Lookups and validations are counted every time, but only one in 64 is timed.
+ * Once {@link #start(ClubberStorage)} is called, they are exposed through JMX as "bk:type=ClubMetrics"
+ * (see {@link ClubMetricsMXBean}) and logged to the "bk" logger every "bk.metrics.interval"
+ * milliseconds (default 60000, 0 to disable).
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class ClubMetrics implements ClubMetricsMXBean {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final Timer LOAD = new Timer(false); // Loading the members from the data file.
+    public static final Timer SAVE = new Timer(false); // Saving the members to the data file.
+    public static final Timer LOOKUP = new Timer(true); // Looking members up by key.
+    public static final Timer VALIDATION = new Timer(true); // Validating member data.
+    public static final Timer COMMIT = new Timer(false); // Committing members from the editors.
+
+    private static final Logger LOG = Logger.getLogger("bk"); // Logger of the metrics and errors.
+    private static final LongAdder lookupMisses = new LongAdder(); // Lookups that found no member.
+    private static final LongAdder validationFailures = new LongAdder(); // Validations that failed.
+    private static final LongAdder bytesWritten = new LongAdder(); // Bytes written to data files and journals.
+    private static final LongAdder errors = new LongAdder(); // Errors reported.
+    private static final LongAdder filterNegatives = new LongAdder(); // Credentials the filter ruled out.
+    private static final LongAdder filterFalsePositives = new LongAdder(); // Credentials passing the filter, of no member.
+    private static ClubMetrics started; // The metrics of the started storage, null until started.
+
+    private final ClubberStorage storage; // The storage whose members and files are measured.
+    private final ScheduledExecutorService logger; // Writes the periodic log line.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * @param storage The storage whose members and files are measured.
+     */
+    private ClubMetrics(ClubberStorage storage) {
+        this.storage = storage;
+        this.logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BK metrics");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Exposes the metrics of a storage through JMX and starts the periodic log line.
+     * Only the first call has an effect.
+     * @param storage The storage whose members and files are measured.
+     */
+    public static synchronized void start(ClubberStorage storage) {
+        if (started != null)
+            return;
+        started = new ClubMetrics(storage);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(started, new ObjectName("bk:type=ClubMetrics"));
+        }
+        catch (JMException e) {
+            LOG.log(Level.WARNING, "Metrics cannot be exposed through JMX", e);
+        }
+        long interval = Long.getLong("bk.metrics.interval", 60000);
+        if (interval > 0)
+            started.logger.scheduleAtFixedRate(() -> LOG.info(started.getSummary()), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts a lookup that found no member.
+     */
+    public static void countLookupMiss() {
+        lookupMisses.increment();
+    }
+
+    /**
+     * Counts a validation that failed.
+     */
+    public static void countValidationFailure() {
+        validationFailures.increment();
+    }
+
+    /**
+     * Counts a credential the credential filter ruled out.
+     */
+    public static void countFilterNegative() {
+        filterNegatives.increment();
+    }
+
+    /**
+     * Counts a credential that passed the credential filter but belongs to no member.
+     */
+    public static void countFilterFalsePositive() {
+        filterFalsePositives.increment();
+    }
+
+    /**
+     * Counts bytes written to a data file or a journal.
+     * @param bytes Number of bytes.
+     */
+    public static void countBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * Counts and logs an error.
+     * @param what What failed.
+     * @param e The error.
+     */
+    public static void error(String what, Exception e) {
+        errors.increment();
+        LOG.log(Level.WARNING, what, e);
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public TimerStats getLoad() {
+        return LOAD.stats();
+    }
+
+    @Override
+    public TimerStats getSave() {
+        return SAVE.stats();
+    }
+
+    @Override
+    public TimerStats getLookup() {
+        return LOOKUP.stats();
+    }
+
+    @Override
+    public long getLookupMisses() {
+        return lookupMisses.sum();
+    }
+
+    @Override
+    public long getFilterNegatives() {
+        return filterNegatives.sum();
+    }
+
+    @Override
+    public long getFilterFalsePositives() {
+        return filterFalsePositives.sum();
+    }
+
+    /**
+     * The share of checked credentials of no member which passed the filter, 0 before any was checked.
+     */
+    @Override
+    public double getFilterFalsePositiveRate() {
+        long falsePositives = getFilterFalsePositives(), absent = falsePositives + getFilterNegatives();
+        return (absent == 0 ? 0 : (double)falsePositives / absent);
+    }
+
+    @Override
+    public TimerStats getValidation() {
+        return VALIDATION.stats();
+    }
+
+    @Override
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+
+    @Override
+    public TimerStats getCommit() {
+        return COMMIT.stats();
+    }
+
+    @Override
+    public long getMembers() {
+        return storage.getRepository().size();
+    }
+
+    /**
+     * Reads the counts the repository keeps per type, so reading them costs no iteration over the members.
+     */
+    @Override
+    public String getMembersByType() {
+        StringBuilder s = new StringBuilder();
+        for (ClubberType type : ClubberType.values())
+            s.append(s.length() == 0 ? "" : ", ").append(type.getDisplayName()).append('=').append(storage.getRepository().count(type));
+        return s.toString();
+    }
+
+    @Override
+    public long getDataFileBytes() {
+        return storage.getFile().length();
+    }
+
+    @Override
+    public long getJournalFileBytes() {
+        return new File(storage.getFile().getPath() + ".log").length();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("members=%d (%s) dataFile=%dB journal=%dB written=%dB errors=%d%n"
+                + "  load %s%n  save %s%n  lookup %s misses=%d%n  filter negatives=%d falsePositives=%d rate=%.4f%n"
+                + "  validation %s failures=%d%n  commit %s",
+                getMembers(), getMembersByType(), getDataFileBytes(), getJournalFileBytes(), getBytesWritten(), getErrors(),
+                getLoad(), getSave(), getLookup(), getLookupMisses(),
+                getFilterNegatives(), getFilterFalsePositives(), getFilterFalsePositiveRate(),
+                getValidation(), getValidationFailures(), getCommit());
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Counts operations and keeps a histogram of their latencies.
+     * The histogram has 4 buckets per power of two, so percentiles are within 25% of the true latency.
+     * Usage: {@code long start = timer.start(); ... timer.stop(start);}
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Timer {
+
+        private static final int BUCKETS = 64 * 4; // 4 buckets per power of two of nanoseconds.
+        private static final long NOT_TIMED = Long.MIN_VALUE; // Start of an operation that isn't timed.
+        private static final int SAMPLE_MASK = 63; // Sampled timers time one operation in 64.
+
+        private final boolean sampled; // Is only a sample of the operations timed?
+        private final LongAdder count; // Number of operations.
+        private final LongAdder[] buckets; // Number of timed operations by latency bucket.
+
+        /**
+         * Constructor - 1 Parameter.
+         * @param sampled Whether only a sample of the operations is timed, for operations on hot paths.
+         */
+        private Timer(boolean sampled) {
+            this.sampled = sampled;
+            this.count = new LongAdder();
+            this.buckets = new LongAdder[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        /**
+         * Counts an operation, and starts timing it unless it isn't in the sample.
+         * @return The start of the operation, to be passed to {@link #stop(long)}.
+         */
+        public long start() {
+            count.increment();
+            if (sampled && (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) != 0)
+                return NOT_TIMED;
+            return System.nanoTime();
+        }
+
+        /**
+         * Stops timing an operation.
+         * @param start The start returned by {@link #start()}.
+         */
+        public void stop(long start) {
+            if (start != NOT_TIMED)
+                buckets[bucket(Math.max(0, System.nanoTime() - start))].increment();
+        }
+
+        /**
+         * @param nanos A latency.
+         * @return The latency's bucket.
+         */
+        private static int bucket(long nanos) {
+            if (nanos < 4)
+                return (int)nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            return exponent * 4 + (int)((nanos >>> (exponent - 2)) & 3);
+        }
+
+        /**
+         * @param bucket A bucket.
+         * @return The highest latency of the bucket, in nanoseconds.
+         */
+        private static long upperBound(int bucket) {
+            if (bucket < 4)
+                return bucket;
+            int exponent = bucket / 4;
+            return ((5L + bucket % 4) << (exponent - 2)) - 1;
+        }
+
+        /**
+         * @return Count and latency percentiles of the operations.
+         */
+        public TimerStats stats() {
+            long[] counts = new long[BUCKETS];
+            long timed = 0;
+            for (int i = 0; i < BUCKETS; i++)
+                timed += (counts[i] = buckets[i].sum());
+            return new TimerStats(count.sum(), percentile(counts, timed, 0.5), percentile(counts, timed, 0.99),
+                    percentile(counts, timed, 0.999), percentile(counts, timed, 1));
+        }
+
+        /**
+         * @param counts Timed operations by bucket.
+         * @param timed Number of timed operations.
+         * @param fraction The percentile, as a fraction.
+         * @return The latency below which the fraction of the timed operations lies, in microseconds.
+         */
+        private static double percentile(long[] counts, long timed, double fraction) {
+            long rank = (long)Math.ceil(fraction * timed), seen = 0;
+            for (int i = 0; i < BUCKETS && timed > 0; i++)
+                if ((seen += counts[i]) >= rank)
+                    return upperBound(i) / 1000.0;
+            return 0;
+        }
+
+    } // Timer - End of class definition.
+
+    /**
+     * Count and latency percentiles of a timer, in microseconds.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class TimerStats {
+
+        private final long count; // Number of operations.
+        private final double p50, p99, p999, max; // Latency percentiles.
+
+        /**
+         * Constructor - 5 Parameters.
+         * @param count Number of operations.
+         * @param p50 Median latency.
+         * @param p99 99th percentile latency.
+         * @param p999 99.9th percentile latency.
+         * @param max Highest latency.
+         */
+        private TimerStats(long count, double p50, double p99, double p999, double max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        /**
+         * @return Number of operations.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Median latency, in microseconds.
+         */
+        public double getP50() {
+            return p50;
+        }
+
+        /**
+         * @return 99th percentile latency, in microseconds.
+         */
+        public double getP99() {
+            return p99;
+        }
+
+        /**
+         * @return 99.9th percentile latency, in microseconds.
+         */
+        public double getP999() {
+            return p999;
+        }
+
+        /**
+         * @return Highest latency, in microseconds.
+         */
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus", count, p50, p99, p999, max);
+        }
+
+    } // TimerStats - End of class definition.
+
+} // ClubMetrics - End of class definition.
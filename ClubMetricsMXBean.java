@@ -0,0 +1,93 @@
+/**
+ * Management interface of the {@link ClubMetrics}, exposed through JMX as "bk:type=ClubMetrics".
+ * Latencies are in microseconds.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public interface ClubMetricsMXBean {
+
+    /**
+     * @return Latencies of loading the members from the data file.
+     */
+    ClubMetrics.TimerStats getLoad();
+
+    /**
+     * @return Latencies of saving the members to the data file.
+     */
+    ClubMetrics.TimerStats getSave();
+
+    /**
+     * @return Latencies of looking members up by key.
+     */
+    ClubMetrics.TimerStats getLookup();
+
+    /**
+     * @return Number of lookups that found no member.
+     */
+    long getLookupMisses();
+
+    /**
+     * @return Number of credentials the credential filter ruled out without a lookup.
+     */
+    long getFilterNegatives();
+
+    /**
+     * @return Number of credentials that passed the credential filter but belong to no member.
+     */
+    long getFilterFalsePositives();
+
+    /**
+     * @return Share of checked credentials of no member that passed the credential filter, from 0 to 1.
+     */
+    double getFilterFalsePositiveRate();
+
+    /**
+     * @return Latencies of validating member data.
+     */
+    ClubMetrics.TimerStats getValidation();
+
+    /**
+     * @return Number of validations that failed.
+     */
+    long getValidationFailures();
+
+    /**
+     * @return Latencies of committing members from the editors.
+     */
+    ClubMetrics.TimerStats getCommit();
+
+    /**
+     * @return Number of members.
+     */
+    long getMembers();
+
+    /**
+     * @return Number of members of each type, such as "Person=10, Soldier=4, Student=7".
+     */
+    String getMembersByType();
+
+    /**
+     * @return Size of the data file, in bytes.
+     */
+    long getDataFileBytes();
+
+    /**
+     * @return Size of the journal, in bytes (0 without a journal).
+     */
+    long getJournalFileBytes();
+
+    /**
+     * @return Number of bytes written to data files and journals.
+     */
+    long getBytesWritten();
+
+    /**
+     * @return Number of errors, such as files that couldn't be read or written.
+     */
+    long getErrors();
+
+    /**
+     * @return All the metrics, as the periodic log line shows them.
+     */
+    String getSummary();
+
+} // ClubMetricsMXBean - End of interface definition.
@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over identification credentials: tells for sure that a credential belongs to no member,
+ * or that it may belong to one, in a few bits per credential.
+ * Credentials are hashed by their code (see {@link CredentialKind#encode(String)}) when they have one,
+ * so checking a credential hashes no string. About 10 bits are kept per expected credential,
+ * with 7 hash functions, for under 1% false positives until more credentials than expected are added.
+ * Checks take no lock and may run concurrently with additions.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberBloomFilter {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int BITS_PER_KEY = 10; // Bits kept per expected credential, at least.
+    private static final int HASHES = 7; // Number of bits set per credential.
+
+    private final AtomicLongArray words; // The bits.
+    private final long mask; // Number of bits minus one.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * Creates an empty filter.
+     * @param expectedKeys Number of credentials the filter is expected to hold.
+     */
+    public ClubberBloomFilter(long expectedKeys) {
+        long bits = Long.highestOneBit(Math.max(64, expectedKeys * BITS_PER_KEY - 1)) * 2;
+        words = new AtomicLongArray((int)Math.min(bits >>> 6, 1 << 30));
+        mask = words.length() * 64L - 1;
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param key A credential.
+     * @return A 64 bit hash of the credential.
+     */
+    private static long hash(String key) {
+        long code = CredentialKind.encode(key);
+        long h = (code >= 0 ? code : key.hashCode() ^ (0x5DEECE66DL << 32)) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Adds a credential.
+     * @param key The credential.
+     */
+    public void add(String key) {
+        long h = hash(key);
+        long step = (h >>> 32) | 1; // The bits are spread by double hashing.
+        for (int i = 0; i < HASHES; i++, h += step) {
+            long bit = h & mask;
+            long word = 1L << bit;
+            int index = (int)(bit >>> 6);
+            if ((words.get(index) & word) == 0)
+                words.accumulateAndGet(index, word, (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Checks whether a credential may have been added.
+     * @param key The credential.
+     * @return False if the credential was surely not added, true if it may have been.
+     */
+    public boolean mightContain(String key) {
+        long h = hash(key);
+        long step = (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++, h += step) {
+            long bit = h & mask;
+            if ((words.get((int)(bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+} // ClubberBloomFilter - End of class definition.
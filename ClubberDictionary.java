@@ -0,0 +1,171 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionaries of the strings that repeat across the club's members: first names, surnames
+ * and telephone prefixes, giving each distinct string of a table a number (it's code).
+ * A {@link ClubberRecord} keeps the codes instead of it's own strings, so each name is held once
+ * however many members have it, and comparing two members' names compares two ints.
+ * <p>
+ * The members of the live repository share {@link #SHARED}, whose codes stay valid for the whole run.
+ * Only members committed to the repository are added to it: the editors' records, and the records
+ * loaded by the stores. Tools that stream a file, such as exporting or validating it, decode it's members
+ * into dictionaries of their own (see {@link #forStreaming(ClubberDictionary)}), which are dropped with the members,
+ * so their memory doesn't grow with the file or the run.
+ * Strings are never removed, names of replaced members are few and likely to come back.
+ * Codes aren't saved, files keep dictionaries of their own (see {@link ClubberFileFormat}).
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class ClubberDictionary {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final ClubberDictionary SHARED = new ClubberDictionary(); // Dictionary of the live repository's members.
+    private static final int STREAMING_LIMIT = 1 << 16; // Strings a dictionary of streamed members holds before a new one is started.
+
+    private final Table names; // Members' first names.
+    private final Table surnames; // Members' last names.
+    private final Table telPrefixes; // Country and area codes of telephone numbers.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - Parameterless.
+     * Creates an empty dictionary, for members that aren't committed to the live repository.
+     */
+    public ClubberDictionary() {
+        names = new Table();
+        surnames = new Table();
+        telPrefixes = new Table();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Returns the dictionary to keep the next streamed member's strings in: the given one, or a new one once
+     * the given one holds many strings. Members read before keep their dictionary, which is dropped with them,
+     * so streaming members with any number of distinct strings takes bounded memory.
+     * @param current The dictionary of the last streamed member.
+     * @return The dictionary for the next member.
+     */
+    public static ClubberDictionary forStreaming(ClubberDictionary current) {
+        if (current.names.size() + current.surnames.size() + current.telPrefixes.size() < STREAMING_LIMIT)
+            return current;
+        return new ClubberDictionary();
+    }
+
+    /**
+     * @return The table of first names.
+     */
+    public Table getNames() {
+        return names;
+    }
+
+    /**
+     * @return The table of last names.
+     */
+    public Table getSurnames() {
+        return surnames;
+    }
+
+    /**
+     * @return The table of telephone prefixes.
+     */
+    public Table getTelPrefixes() {
+        return telPrefixes;
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Table of the strings of one field.
+     * Decoding and encoding known strings take no lock; new strings are added under the table's lock.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Table {
+
+        private final ConcurrentHashMap<String, Integer> codes; // String to it's code.
+        private volatile String[] strings; // Code to it's string, grown by doubling.
+        private int size; // Number of strings.
+
+        /**
+         * Constructor - Parameterless.
+         * Creates an empty table.
+         */
+        private Table() {
+            codes = new ConcurrentHashMap<String, Integer>();
+            strings = new String[64];
+        }
+
+        /**
+         * Returns the code of a string, adding the string if it's new.
+         * @param s The string, may be null.
+         * @return The string's code, or -1 for null.
+         */
+        public int encode(String s) {
+            if (s == null)
+                return -1;
+            Integer code = codes.get(s);
+            return (code != null ? code : add(s));
+        }
+
+        /**
+         * Returns the code of a string without adding it, such as for filtering by a string.
+         * @param s The string.
+         * @return The string's code, or -1 if the table doesn't hold it.
+         */
+        public int lookup(String s) {
+            Integer code = codes.get(s);
+            return (code == null ? -1 : code);
+        }
+
+        /**
+         * Returns the string of a code.
+         * @param code A code returned by this table, or -1.
+         * @return The string, or null for -1.
+         */
+        public String decode(int code) {
+            if (code < 0)
+                return null;
+            String[] current = strings;
+            String s = (code < current.length ? current[code] : null);
+            return (s != null ? s : decodeAdded(code));
+        }
+
+        /**
+         * Returns the string of a code added by another thread, which this thread may not see yet without the lock.
+         * @param code A code returned by this table.
+         * @return The string.
+         */
+        private synchronized String decodeAdded(int code) {
+            if (code >= size)
+                throw new IllegalArgumentException("Unknown code " + code);
+            return strings[code];
+        }
+
+        /**
+         * Adds a string, unless another thread just did.
+         * @param s The string.
+         * @return The string's code.
+         */
+        private synchronized int add(String s) {
+            Integer code = codes.get(s);
+            if (code != null)
+                return code;
+            if (size == strings.length)
+                strings = Arrays.copyOf(strings, size * 2);
+            strings[size] = s;
+            codes.put(s, size);
+            return size++;
+        }
+
+        /**
+         * @return The number of strings in the table.
+         */
+        public synchronized int size() {
+            return size;
+        }
+
+    } // Table - End of class definition.
+
+} // ClubberDictionary - End of class definition.
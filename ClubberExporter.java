@@ -0,0 +1,258 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming export of members to CSV or JSON Lines, for reporting.
+ * Members are written one by one through a fixed buffer to a channel, so exporting any number of members
+ * takes the same memory, and no list of members is built.
+ * CSV rows hold: type, id, name, surname, tel and credential (the personal number or student id),
+ * after a header row, as {@link ClubberImporter} reads them. JSON lines hold the same fields,
+ * named as the member's fields ("personalNum" for soldiers, "studentId" for students).
+ * <p>
+ * A live repository can be exported as it is used, by {@link #writeAll(Iterable)}, since it's iterators
+ * take no lock. From the command line, the saved data file is streamed, read only, so it can run
+ * while the application is live.
+ * Usage: {@code ClubberExporter exporter = new ClubberExporter(channel, Format.CSV); exporter.writeAll(records); exporter.close();}
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberExporter implements Closeable {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int BUFFER = 1 << 16; // Size of the output buffer in bytes.
+    private static final String CSV_HEADER = "type,id,name,surname,tel,credential";
+
+    private final WritableByteChannel channel; // The channel members are exported to.
+    private final Format format; // The export's format.
+    private final CharsetEncoder encoder; // Encodes lines as UTF-8.
+    private final ByteBuffer out; // Encoded bytes waiting to be written.
+    private final StringBuilder line; // The line being formatted, reused.
+    private long count; // Number of members written.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * Writes the CSV header, if exporting to CSV.
+     * @param channel The channel members are exported to, closed with the exporter.
+     * @param format The export's format.
+     * @throws IOException If the header cannot be written.
+     */
+    public ClubberExporter(WritableByteChannel channel, Format format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        encoder = StandardCharsets.UTF_8.newEncoder();
+        out = ByteBuffer.allocateDirect(BUFFER);
+        line = new StringBuilder(256);
+        if (format == Format.CSV)
+            writeLine(line.append(CSV_HEADER));
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Writes a member.
+     * @param record The member.
+     * @throws IOException If the member cannot be written.
+     */
+    public void write(ClubberRecord record) throws IOException {
+        String credential = (record.getType() == ClubberType.SOLDIER ? record.getPersonalNum() : record.getStudentId());
+        if (format == Format.CSV) {
+            csvField(record.getType().getDisplayName()).append(',');
+            csvField(record.getId()).append(',');
+            csvField(record.getName()).append(',');
+            csvField(record.getSurname()).append(',');
+            csvField(record.getTel());
+            if (record.getType() != ClubberType.PERSON)
+                csvField(line.append(','), credential);
+        }
+        else {
+            jsonField(line.append('{'), "type", record.getType().getDisplayName());
+            jsonField(line.append(','), "id", record.getId());
+            jsonField(line.append(','), "name", record.getName());
+            jsonField(line.append(','), "surname", record.getSurname());
+            jsonField(line.append(','), "tel", record.getTel());
+            if (record.getType() != ClubberType.PERSON)
+                jsonField(line.append(','), (record.getType() == ClubberType.SOLDIER ? "personalNum" : "studentId"), credential);
+            line.append('}');
+        }
+        writeLine(line);
+        count++;
+    }
+
+    /**
+     * Writes members, one at a time as they are iterated.
+     * @param records The members.
+     * @throws IOException If a member cannot be written.
+     */
+    public void writeAll(Iterable<ClubberRecord> records) throws IOException {
+        for (ClubberRecord record : records)
+            write(record);
+    }
+
+    /**
+     * @return Number of members written.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Appends a CSV field to the line, quoted if it holds a comma, a quote or a line break.
+     * @param field The field, null for an empty field.
+     * @return The line.
+     */
+    private StringBuilder csvField(String field) {
+        return csvField(line, field);
+    }
+
+    /**
+     * Appends a CSV field to a line, quoted if it holds a comma, a quote or a line break.
+     * @param s The line.
+     * @param field The field, null for an empty field.
+     * @return The line.
+     */
+    private static StringBuilder csvField(StringBuilder s, String field) {
+        if (field == null)
+            return s;
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = (c == ',' || c == '"' || c == '\n' || c == '\r');
+        }
+        if (!quote)
+            return s.append(field);
+        s.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            s.append(c == '"' ? "\"\"" : String.valueOf(c));
+        }
+        return s.append('"');
+    }
+
+    /**
+     * Appends a JSON name and string value to a line.
+     * @param s The line.
+     * @param name The name.
+     * @param value The value, null for a JSON null.
+     */
+    private static void jsonField(StringBuilder s, String name, String value) {
+        s.append('"').append(name).append("\":");
+        if (value == null) {
+            s.append("null");
+            return;
+        }
+        s.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                s.append('\\').append(c);
+            else if (c < 0x20)
+                s.append(String.format("\\u%04x", (int)c));
+            else
+                s.append(c);
+        }
+        s.append('"');
+    }
+
+    /**
+     * Encodes a line, with a line break, into the buffer, writing the buffer whenever it fills, and empties the line.
+     * @param s The line.
+     * @throws IOException If the buffer cannot be written.
+     */
+    private void writeLine(StringBuilder s) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(s.append('\n'));
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, true);
+            if (result.isOverflow())
+                flushBuffer();
+            else if (result.isError())
+                result.throwException();
+            else
+                break;
+        }
+        s.setLength(0);
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     * @throws IOException If the bytes cannot be written.
+     */
+    private void flushBuffer() throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            channel.write(out);
+        out.clear();
+    }
+
+    /**
+     * Writes the buffered bytes and closes the channel.
+     * @throws IOException If the bytes cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Streams the members of a saved data file (see {@link ClubberStorage#readDataFile(File, LegacyClubberReader.Sink)}),
+     * so memory doesn't depend on it's size.
+     * @param file The data file.
+     * @param exporter The exporter to write the members with.
+     * @throws IOException If a file cannot be read or a member cannot be written.
+     */
+    public static void exportDataFile(File file, ClubberExporter exporter) throws IOException {
+        ClubberStorage.readDataFile(file, exporter::write);
+    }
+
+    /**
+     * Exports the members of the configured data file (see {@link ClubberStorage}) as last saved.
+     * With the journal store, changes still only in the journal are not exported.
+     * Usage: java ClubberExporter csv|jsonl output-file.
+     * @param args The format and the output file.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || !(args[0].equalsIgnoreCase("csv") || args[0].equalsIgnoreCase("jsonl"))) {
+            System.err.println("Usage: java ClubberExporter csv|jsonl output-file");
+            System.exit(2);
+        }
+        Format format = Format.valueOf(args[0].toUpperCase());
+        File data = new File(System.getProperty("bk.file", ClubberStorage.DEFAULT_FILE));
+        FileChannel channel = FileChannel.open(new File(args[1]).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        long count;
+        try (ClubberExporter exporter = new ClubberExporter(channel, format)) {
+            exportDataFile(data, exporter);
+            count = exporter.getCount();
+        }
+        System.out.println(count + " members exported to " + args[1]);
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Formats of an export.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public enum Format {
+
+        CSV,   // Comma separated values, with a header row.
+        JSONL; // A JSON object per line.
+
+    } // Format - End of enum definition.
+
+} // ClubberExporter - End of class definition.
@@ -0,0 +1,566 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact binary file format for clubber records, replacing Java serialization.
+ * <p>
+ * A file starts with a header: magic number (int), format version (short), reserved (short),
+ * sequence number of the last change included (long), number of records (int)
+ * and, since version 2, the offset of the file's dictionaries (long).
+ * Then come the records, each prefixed by the length of it's body (int).
+ * A body holds the member type (byte) followed by the id, then the first name, surname and telephone prefix as codes
+ * of the file's dictionaries and the telephone number's last 7 digits (see {@link ClubberRecord}), then the credential.
+ * Strings are UTF-8, prefixed by their length in bytes (short, -1 for null). Codes are variable length
+ * (7 bits a byte, low bits first, the high bit set on all but the last byte) and one more than the code, 0 for null;
+ * the digits are an int, -1 for a number kept whole. The dictionaries follow the records: for names,
+ * surnames and telephone prefixes in turn, the number of strings (int) and the strings, in the order of their codes.
+ * <p>
+ * Version 1 files, which are still read, have no dictionaries: the name, surname and telephone number are strings.
+ * Journal entries and replicated changes, which stand alone, hold version 1 bodies (see {@link #writeRecord(DataOutput, ClubberRecord)}).
+ * Readers skip whatever a body holds after the fields they know, so fields can be added by later versions.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class ClubberFileFormat {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final int MAGIC = 0x424B4352; // "BKCR"
+    public static final short VERSION = 2; // Current format version.
+    public static final int HEADER_LENGTH = 28; // Length of the file header in bytes.
+    private static final int HEADER_LENGTH_1 = 20; // Length of the header of version 1 files, without the dictionaries' offset.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Private constructor - utility class.
+     */
+    private ClubberFileFormat() {
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Checks if a file is in this format, by it's magic number.
+     * @param file The file to check.
+     * @return True if the file starts with this format's magic number, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isFormatOf(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+        catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the body of a record as a version 1 body, which needs no dictionaries.
+     * @param out The output to write to.
+     * @param record The record to write.
+     * @throws IOException If the record cannot be written.
+     */
+    public static void writeRecord(DataOutput out, ClubberRecord record) throws IOException {
+        out.writeByte(record.getType().ordinal());
+        writeString(out, record.getId());
+        writeString(out, record.getName());
+        writeString(out, record.getSurname());
+        writeString(out, record.getTel());
+        writeString(out, (record.getType() == ClubberType.SOLDIER ? record.getPersonalNum() : record.getStudentId()));
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     * @param out The output to write to.
+     * @param s The string, may be null.
+     * @throws IOException If the string cannot be written.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE)
+            throw new UTFDataFormatException("String too long: " + bytes.length + " bytes");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a version 1 body of a record from the current position of a buffer, as a member of the live repository.
+     * @param in The buffer to read from.
+     * @return The record.
+     * @throws IOException If the body is malformed.
+     */
+    public static ClubberRecord readRecord(ByteBuffer in) throws IOException {
+        return readRecord(in, ClubberDictionary.SHARED);
+    }
+
+    /**
+     * Reads a version 1 body of a record from the current position of a buffer.
+     * @param in The buffer to read from.
+     * @param dictionary The dictionary to keep the record's strings in.
+     * @return The record.
+     * @throws IOException If the body is malformed.
+     */
+    public static ClubberRecord readRecord(ByteBuffer in, ClubberDictionary dictionary) throws IOException {
+        int type = in.get();
+        if (type < 0 || type >= ClubberType.values().length)
+            throw new StreamCorruptedException("Unknown clubber type: " + type);
+        String id = readString(in), name = readString(in), surname = readString(in), tel = readString(in);
+        String credential = readString(in);
+        return new ClubberRecord(dictionary, ClubberType.values()[type], id, name, surname, tel, credential);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the current position of a buffer.
+     * @param in The buffer to read from.
+     * @return The string, or null.
+     */
+    public static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0)
+            return null;
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+        else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    /**
+     * Writes a dictionary code, as one more than the code in 7 bit groups.
+     * @param out The output to write to.
+     * @param code The code, -1 for null.
+     * @throws IOException If the code cannot be written.
+     */
+    private static void writeCode(DataOutput out, int code) throws IOException {
+        int v = code + 1;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Reads a dictionary code from the current position of a buffer.
+     * @param in The buffer to read from.
+     * @return The code, -1 for null.
+     * @throws IOException If the code is malformed.
+     */
+    private static int readCode(ByteBuffer in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return v - 1;
+        }
+        throw new StreamCorruptedException("Malformed dictionary code");
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Writes a file of clubber records.
+     * The header is completed when the writer is closed.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel; // Channel of the written file.
+        private final DataOutputStream out; // Buffered output over the channel.
+        private final ByteArrayOutputStream body; // Body of the record being written.
+        private final DataOutputStream bodyOut; // Output of the record's body.
+        private final FileDictionary names, surnames, telPrefixes; // The file's dictionaries.
+        private long sequence; // Sequence number of the last change included.
+        private long position; // Offset of the next record in the file.
+        private int count; // Number of records written.
+
+        /**
+         * Constructor - 2 Parameters.
+         * Creates (or truncates) the file and reserves it's header.
+         * @param file The file to write.
+         * @param sequence The sequence number of the last change included in the file.
+         * @throws IOException If the file cannot be created.
+         */
+        public Writer(File file, long sequence) throws IOException {
+            this.sequence = sequence;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_LENGTH);
+            position = HEADER_LENGTH;
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            body = new ByteArrayOutputStream(128);
+            bodyOut = new DataOutputStream(body);
+            names = new FileDictionary();
+            surnames = new FileDictionary();
+            telPrefixes = new FileDictionary();
+        }
+
+        /**
+         * Appends a record to the file.
+         * @param record The record to append.
+         * @return The offset of the record in the file.
+         * @throws IOException If the record cannot be written.
+         */
+        public long append(ClubberRecord record) throws IOException {
+            body.reset();
+            bodyOut.writeByte(record.getType().ordinal());
+            writeString(bodyOut, record.getId());
+            writeCode(bodyOut, names.code(record.getName()));
+            writeCode(bodyOut, surnames.code(record.getSurname()));
+            writeCode(bodyOut, telPrefixes.code(record.getTelPrefix()));
+            bodyOut.writeInt(record.getTelNumber());
+            writeString(bodyOut, (record.getType() == ClubberType.SOLDIER ? record.getPersonalNum() : record.getStudentId()));
+            out.writeInt(body.size());
+            body.writeTo(out);
+            count++;
+            long offset = position;
+            position += 4 + body.size();
+            return offset;
+        }
+
+        /**
+         * Sets the sequence number written to the header, for a writer that learns it only after the records.
+         * @param sequence The sequence number of the last change included in the file.
+         */
+        public void setSequence(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Writes the dictionaries after the records, then the header, and forces the file to disk.
+         * @throws IOException If the file cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                long dictionariesOffset = position;
+                int before = out.size();
+                for (FileDictionary dictionary : new FileDictionary[] { names, surnames, telPrefixes }) {
+                    out.writeInt(dictionary.strings.size());
+                    for (String s : dictionary.strings)
+                        writeString(out, s);
+                }
+                position += out.size() - before;
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).putShort(VERSION).putShort((short)0).putLong(sequence).putInt(count).putLong(dictionariesOffset).flip();
+                while (header.hasRemaining())
+                    channel.write(header, header.position());
+                channel.force(false);
+                ClubMetrics.countBytesWritten(position);
+            }
+            finally {
+                channel.close();
+            }
+        }
+
+    } // Writer - End of class definition.
+
+    /**
+     * Dictionary of a file being written, giving codes to strings as the file's records use them.
+     * Records of any dictionary can be written, their strings are looked up by value.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class FileDictionary {
+
+        private final HashMap<String, Integer> codes; // String to it's code in the file.
+        private final ArrayList<String> strings; // The file's strings, by their code in the file.
+
+        /**
+         * Constructor - Parameterless.
+         */
+        private FileDictionary() {
+            this.codes = new HashMap<String, Integer>();
+            this.strings = new ArrayList<String>();
+        }
+
+        /**
+         * Returns the file's code of a string, giving it one if it's new to the file.
+         * @param s The string, may be null.
+         * @return The file's code, -1 for null.
+         */
+        private int code(String s) {
+            if (s == null)
+                return -1;
+            Integer code = codes.get(s);
+            if (code == null) {
+                code = strings.size();
+                codes.put(s, code);
+                strings.add(s);
+            }
+            return code;
+        }
+
+    } // FileDictionary - End of class definition.
+
+    /**
+     * Reads a file of clubber records through memory-mapped windows of the file,
+     * so memory use doesn't depend on the file's size.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Reader implements Closeable {
+
+        private static final int WINDOW = 64 << 20; // Size of a mapped window in bytes.
+
+        private final FileChannel channel; // Channel of the read file.
+        private final long fileLength; // Length of the file.
+        private final short version; // Format version of the file.
+        private final long recordsEnd; // Offset after the last record.
+        private final boolean streaming; // Is the dictionary the reader's own?
+        private ClubberDictionary dictionary; // The dictionary the read records' strings are kept in.
+        private final String[][] strings; // Strings of the file's dictionaries by their code, null for version 1.
+        private final int[][] codes; // One more than the code in the dictionary of each code in the file's, 0 until first used.
+        private final long sequence; // Sequence number of the last change included.
+        private final int count; // Number of records in the file.
+        private MappedByteBuffer window; // Currently mapped part of the file.
+        private long windowStart; // Offset of the mapped window in the file.
+        private long position; // Offset of the next record.
+        private long recordOffset; // Offset of the current record.
+        private int read; // Number of records read so far.
+
+        /**
+         * Constructor - 1 Parameter.
+         * Opens the file for streaming it, keeping the records' strings in dictionaries of the reader's own.
+         * @param file The file to read.
+         * @throws IOException If the file cannot be read or isn't in this format.
+         */
+        public Reader(File file) throws IOException {
+            this(file, null);
+        }
+
+        /**
+         * Constructor - 2 Parameters.
+         * Opens the file and reads it's header and dictionaries.
+         * Strings of the file's dictionaries are added to the given dictionary only once a record read uses them.
+         * @param file The file to read.
+         * @param dictionary The dictionary to keep the records' strings in, {@link ClubberDictionary#SHARED} for loading
+         *                   the live repository, or null for dictionaries of the reader's own
+         *                   (see {@link ClubberDictionary#forStreaming(ClubberDictionary)}).
+         * @throws IOException If the file cannot be read or isn't in this format.
+         */
+        public Reader(File file, ClubberDictionary dictionary) throws IOException {
+            this.streaming = (dictionary == null);
+            this.dictionary = (streaming ? new ClubberDictionary() : dictionary);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                fileLength = channel.size();
+                if (fileLength < HEADER_LENGTH_1)
+                    throw new StreamCorruptedException("File too short for a header");
+                ByteBuffer header = map(0, HEADER_LENGTH_1);
+                if (header.getInt() != MAGIC)
+                    throw new StreamCorruptedException("Not a clubbers file");
+                version = header.getShort();
+                if (version > VERSION)
+                    throw new InvalidClassException("Unsupported clubbers file version " + version);
+                header.getShort();
+                sequence = header.getLong();
+                count = header.getInt();
+                if (version < 2) {
+                    position = HEADER_LENGTH_1;
+                    recordsEnd = fileLength;
+                    strings = null;
+                    codes = null;
+                }
+                else {
+                    if (fileLength < HEADER_LENGTH)
+                        throw new StreamCorruptedException("File too short for a header");
+                    recordsEnd = map(HEADER_LENGTH_1, 8).getLong();
+                    if (recordsEnd < HEADER_LENGTH || recordsEnd > fileLength)
+                        throw new StreamCorruptedException("Invalid dictionaries offset: " + recordsEnd);
+                    position = HEADER_LENGTH;
+                    strings = readDictionaries();
+                    codes = new int[strings.length][];
+                    for (int i = 0; i < strings.length; i++)
+                        codes[i] = new int[strings[i].length];
+                }
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the file's dictionaries.
+         * @return The strings of each of the file's dictionaries, by their code.
+         * @throws IOException If the dictionaries are malformed.
+         */
+        private String[][] readDictionaries() throws IOException {
+            if (fileLength - recordsEnd > Integer.MAX_VALUE)
+                throw new StreamCorruptedException("Dictionaries too long");
+            ByteBuffer in = map(recordsEnd, (int)(fileLength - recordsEnd)).slice();
+            in.limit((int)(fileLength - recordsEnd));
+            String[][] read = new String[3][];
+            try {
+                for (int i = 0; i < read.length; i++) {
+                    int size = in.getInt();
+                    if (size < 0 || size > in.remaining() / 2)
+                        throw new StreamCorruptedException("Invalid dictionary size: " + size);
+                    read[i] = new String[size];
+                    for (int code = 0; code < size; code++)
+                        read[i][code] = readString(in);
+                }
+            }
+            catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new EOFException("Clubbers file dictionaries are truncated");
+            }
+            return read;
+        }
+
+        /**
+         * Translates a code of one of the file's dictionaries, adding it's string to the reader's dictionary on first use.
+         * @param table Index of the file's dictionary: 0 for names, 1 for surnames, 2 for telephone prefixes.
+         * @param code The code in the file's dictionary, -1 for null.
+         * @return The code in the reader's dictionary, -1 for null.
+         * @throws IOException If the file's dictionary has no such code.
+         */
+        private int translate(int table, int code) throws IOException {
+            if (code < 0)
+                return -1;
+            if (code >= codes[table].length)
+                throw new StreamCorruptedException("Unknown dictionary code: " + code);
+            if (codes[table][code] == 0) {
+                ClubberDictionary.Table target = (table == 0 ? dictionary.getNames() : table == 1 ? dictionary.getSurnames() : dictionary.getTelPrefixes());
+                codes[table][code] = target.encode(strings[table][code]) + 1;
+            }
+            return codes[table][code] - 1;
+        }
+
+        /**
+         * @return The sequence number of the last change included in the file.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return The number of records in the file.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Moves to the next record.
+         * @return True if there is a next record, false at the end of the file.
+         * @throws IOException If the file is truncated.
+         */
+        public boolean next() throws IOException {
+            if (read == count)
+                return false;
+            recordOffset = position;
+            position += 4 + recordLength(position);
+            read++;
+            return true;
+        }
+
+        /**
+         * @return The offset of the current record in the file.
+         */
+        public long offset() {
+            return recordOffset;
+        }
+
+        /**
+         * Decodes the current record.
+         * @return The current record.
+         * @throws IOException If the record is malformed.
+         */
+        public ClubberRecord record() throws IOException {
+            return readAt(recordOffset);
+        }
+
+        /**
+         * Decodes the record at the given offset.
+         * @param offset Offset of the record, as returned by {@link #offset()}.
+         * @return The record.
+         * @throws IOException If the record is malformed.
+         */
+        public ClubberRecord readAt(long offset) throws IOException {
+            int length = recordLength(offset);
+            ByteBuffer body = map(offset + 4, length).slice();
+            body.limit(length);
+            try {
+                if (strings == null) {
+                    if (streaming)
+                        dictionary = ClubberDictionary.forStreaming(dictionary);
+                    return readRecord(body, dictionary);
+                }
+                int type = body.get();
+                if (type < 0 || type >= ClubberType.values().length)
+                    throw new StreamCorruptedException("Unknown clubber type: " + type);
+                String id = readString(body);
+                int name = translate(0, readCode(body)), surname = translate(1, readCode(body)), telPrefix = translate(2, readCode(body));
+                int telNumber = body.getInt();
+                return new ClubberRecord(dictionary, ClubberType.values()[type], id, name, surname, telPrefix, telNumber, readString(body));
+            }
+            catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new EOFException("Clubbers file record is truncated");
+            }
+        }
+
+        /**
+         * Reads the length of a record's body, which must end before the records do.
+         * @param offset Offset of the record.
+         * @return The length of the record's body.
+         * @throws IOException If the length is out of the file's records.
+         */
+        private int recordLength(long offset) throws IOException {
+            if (offset + 4 > recordsEnd)
+                throw new EOFException("Clubbers file is truncated");
+            int length = map(offset, 4).getInt();
+            if (length < 0 || length > recordsEnd - offset - 4)
+                throw new StreamCorruptedException("Invalid record length " + length + " at offset " + offset);
+            return length;
+        }
+
+        /**
+         * Returns the mapped window holding the given range of the file,
+         * positioned at the range's start. Maps a new window if the range isn't mapped.
+         * @param offset Start of the range.
+         * @param length Length of the range.
+         * @return The window.
+         * @throws IOException If the range is out of the file or cannot be mapped.
+         */
+        private ByteBuffer map(long offset, int length) throws IOException {
+            if (offset + length > fileLength)
+                throw new EOFException("Clubbers file is truncated");
+            if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(Math.max(WINDOW, length), fileLength - offset));
+            }
+            window.position((int)(offset - windowStart));
+            return window;
+        }
+
+        /**
+         * Closes the file.
+         * @throws IOException If the file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+
+    } // Reader - End of class definition.
+
+} // ClubberFileFormat - End of class definition.
@@ -0,0 +1,228 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk import of members from a CSV file, without opening a frame per member.
+ * Each row holds: type (Person, Soldier or Student), id, name, surname, tel and,
+ * for soldiers and students, the personal number or student id. A first row starting with "type" is a header.
+ * <p>
+ * The file is streamed in batches, so memory doesn't depend on it's size. The rows of a batch are
+ * parsed and validated in parallel with the rules of {@link ClubberValidator}. Then, in file order,
+ * rows with a credential already used by an earlier row of the batch or by a member of the repository
+ * are rejected, as the editors' duplicate credential check would. Rejected rows are written to a report.
+ * <p>
+ * Imported members are added to the repository only, and the store writes them all at once when the file is done,
+ * with one {@link ClubberStore#compact(ClubberRepository)}, rather than committing them one by one,
+ * which would force a journal to disk for every row. If the import fails, the store isn't written.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberImporter {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final ClubberRepository repository; // The repository members are imported into.
+    private final ClubberStore store; // The store writing the imported members.
+    private final int batchSize; // Number of rows validated together.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 3 Parameters.
+     * @param repository The repository members are imported into.
+     * @param store The store writing the imported members.
+     * @param batchSize Number of rows validated together.
+     */
+    public ClubberImporter(ClubberRepository repository, ClubberStore store, int batchSize) {
+        this.repository = repository;
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Imports the members of a CSV file, then compacts the store once if any member was imported.
+     * Should be called by the thread committing changes.
+     * @param csv The CSV file.
+     * @param rejectsFile The file to write rejected rows to, with their line number and reason.
+     * @return The import's counts.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public Result importFile(File csv, File rejectsFile) throws IOException {
+        final String[] lines = new String[batchSize];
+        final long[] lineNumbers = new long[batchSize];
+        final ClubberRecord[] records = new ClubberRecord[batchSize];
+        final String[] reasons = new String[batchSize];
+        HashMap<String, Long> batchKeys = new HashMap<String, Long>(); // Credentials imported by the batch, to their line.
+        Result result = new Result();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter rejects = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rejectsFile), StandardCharsets.UTF_8))) {
+            rejects.write("line,reason,row");
+            rejects.newLine();
+            long lineNumber = 0;
+            String line = "";
+            while (line != null) {
+                int count = 0;
+                while (count < batchSize && (line = in.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty() || (lineNumber == 1 && line.regionMatches(true, 0, "type", 0, 4)))
+                        continue; // Blank line or header.
+                    lines[count] = line;
+                    lineNumbers[count++] = lineNumber;
+                }
+                final ClubberDictionary dictionary = new ClubberDictionary(); // The batch's, rejected rows stay out of the shared one.
+                IntStream.range(0, count).parallel().forEach(i -> {
+                    records[i] = parse(lines[i], dictionary);
+                    reasons[i] = (records[i] == null ? "malformed row" : invalidReason(records[i]));
+                });
+                batchKeys.clear();
+                for (int i = 0; i < count; i++) {
+                    result.read++;
+                    String reason = (reasons[i] != null ? reasons[i] : duplicateReason(records[i], batchKeys));
+                    if (reason == null)
+                        records[i] = records[i].intern();
+                    if (reason == null && !repository.add(records[i])) // Taken meanwhile by another terminal.
+                        reason = "credential already belongs to a member";
+                    if (reason != null) {
+                        result.rejected++;
+                        rejects.write(lineNumbers[i] + "," + quote(reason) + "," + quote(lines[i]));
+                        rejects.newLine();
+                    }
+                    else {
+                        for (String key : records[i].keys())
+                            batchKeys.put(key, lineNumbers[i]);
+                        result.imported++;
+                    }
+                    lines[i] = null;
+                    records[i] = null;
+                }
+            }
+        }
+        if (result.imported > 0)
+            store.compact(repository);
+        return result;
+    }
+
+    /**
+     * Parses a CSV row.
+     * @param line The row.
+     * @param dictionary The dictionary to keep the record's strings in.
+     * @return The row's record, or null if it hasn't the right number of fields or an unknown type.
+     */
+    private static ClubberRecord parse(String line, ClubberDictionary dictionary) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 5 || fields.length > 6)
+            return null;
+        ClubberType type = null;
+        for (ClubberType t : ClubberType.values())
+            if (t.getDisplayName().equalsIgnoreCase(fields[0].trim()))
+                type = t;
+        if (type == null || (type != ClubberType.PERSON && fields.length != 6))
+            return null;
+        return new ClubberRecord(dictionary, type, fields[1].trim(), fields[2].trim(), fields[3].trim(), fields[4].trim(),
+                (fields.length == 6 ? fields[5].trim() : null));
+    }
+
+    /**
+     * Validates a record.
+     * @param record The record.
+     * @return The reason it is invalid, or null if validation passed.
+     */
+    private static String invalidReason(ClubberRecord record) {
+        ClubberValidator.Field invalid = ClubberValidator.firstInvalid(record);
+        return (invalid == null ? null : "invalid " + invalid.name().toLowerCase());
+    }
+
+    /**
+     * Checks if a record's credentials are used by an earlier row of the batch or by a member.
+     * @param record The record.
+     * @param batchKeys Credentials imported by the batch so far, to their line.
+     * @return The reason it is a duplicate, or null if it's credentials are unique.
+     */
+    private String duplicateReason(ClubberRecord record, HashMap<String, Long> batchKeys) {
+        for (String key : record.keys()) {
+            Long line = batchKeys.get(key);
+            if (line != null)
+                return "credential " + key + " duplicates line " + line;
+            if (repository.duplicateKeyCheck(key, null))
+                return "credential " + key + " already belongs to a member";
+        }
+        return null;
+    }
+
+    /**
+     * Quotes a CSV field.
+     * @param s The field.
+     * @return The quoted field.
+     */
+    private static String quote(String s) {
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Imports a CSV file into the configured data file (see {@link ClubberStorage}).
+     * Should not be run while the club manager application is running on the same file.
+     * Usage: java ClubberImporter members.csv [rejects.csv].
+     * @param args The CSV file, and optionally the rejects report (default: the CSV file + ".rejects.csv").
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ClubberImporter members.csv [rejects.csv]");
+            System.exit(2);
+        }
+        File csv = new File(args[0]);
+        File rejects = new File(args.length > 1 ? args[1] : args[0] + ".rejects.csv");
+        ClubberStorage storage = ClubberStorage.fromFileProperties(); // No replication listener or JMX for a tool.
+        Result result;
+        try {
+            storage.getStore().load(storage.getRepository());
+            result = new ClubberImporter(storage.getRepository(), storage.getStore(), Integer.getInteger("bk.import.batch", 10000)).importFile(csv, rejects);
+        }
+        finally {
+            storage.getStore().close();
+        }
+        System.out.println(result + (result.rejected > 0 ? ", see " + rejects : ""));
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Counts of an import.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Result {
+
+        private long read, imported, rejected; // Rows read, imported and rejected.
+
+        /**
+         * @return Number of rows read.
+         */
+        public long getRead() {
+            return read;
+        }
+
+        /**
+         * @return Number of members imported.
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * @return Number of rows rejected.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows read, %d imported, %d rejected", read, imported, rejected);
+        }
+
+    } // Result - End of class definition.
+
+} // ClubberImporter - End of class definition.
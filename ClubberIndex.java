@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Concurrent hash index over the identification credentials of the club's members.
+ * Every credential a clubber can be matched by (see {@link ClubberRecord#keys()})
+ * is mapped to the clubber's slot in the repository, where an {@link Entry} holds the clubber's record.
+ * Credentials of the standard formats are encoded as numbers (see {@link CredentialKind#encode(String)})
+ * and kept in {@link LongIntMap}s, so they take no object of their own and are looked up without hashing strings.
+ * The codes are spread over several maps, each locked on it's own, so members can be added by several threads at once,
+ * as by a parallel load.
+ * Other credentials, left by older data, are mapped to their entry by a string map.
+ * Lookups take no lock. A clubber's credentials are claimed all-or-nothing, so of two members
+ * registered at once with the same credential only one gets in.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberIndex {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final AtomicIntegerFieldUpdater<Entry> RETIRED =
+            AtomicIntegerFieldUpdater.newUpdater(Entry.class, "retired"); // Retires an entry atomically.
+
+    private final Slots slots; // The repository's slots.
+    private static final int STRIPES = 16; // Number of maps the codes are spread over, a power of two.
+
+    private final LongIntMap[] slotsByCode; // Encoded credential to owning clubber's slot, by stripe.
+    private final ConcurrentHashMap<String, Entry> owners; // Other credential to owning clubber.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * Creates an empty index.
+     * @param slots The repository's slots, where indexed entries are written.
+     */
+    public ClubberIndex(Slots slots) {
+        this.slots = slots;
+        slotsByCode = new LongIntMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            slotsByCode[i] = new LongIntMap(1024);
+        owners = new ConcurrentHashMap<String, Entry>();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Claims all the credentials of an entry's clubber, taking over those of the entry it replaces.
+     * Nothing is claimed if one of the credentials belongs to a different clubber,
+     * or if the replaced entry was already replaced by someone else.
+     * Once claimed, the remaining credentials of the replaced entry are released.
+     * The entry is found by it's credentials once written to it's slot.
+     * @param entry The entry to index.
+     * @param previous The entry being replaced, in the same slot, null for a new clubber.
+     * @return True if the credentials were claimed, false otherwise.
+     */
+    public boolean claim(Entry entry, Entry previous) {
+        if (previous != null && previous.slot != entry.slot)
+            throw new IllegalArgumentException("Replacing entry must take the replaced entry's slot.");
+        if (previous != null && !RETIRED.compareAndSet(previous, 0, 1))
+            return false; // Replaced concurrently.
+        List<String> keys = entry.record.keys();
+        List<Boolean> claimed = new ArrayList<Boolean>(keys.size()); // Was each key newly claimed?
+        for (String key : keys) {
+            long code = CredentialKind.encode(key);
+            boolean taken;
+            if (code >= 0) {
+                int owner = stripe(code).putIfAbsent(code, entry.slot);
+                taken = (owner == LongIntMap.NO_VALUE);
+                if (!taken && (previous == null || owner != previous.slot)) {
+                    rollBack(keys, claimed, entry, previous);
+                    return false; // Credential belongs to a different clubber.
+                }
+            } else {
+                Entry owner = owners.putIfAbsent(key, entry);
+                taken = (owner == null);
+                if (!taken && (owner != previous || !owners.replace(key, previous, entry))) {
+                    rollBack(keys, claimed, entry, previous);
+                    return false;
+                }
+            }
+            claimed.add(taken);
+        }
+        if (previous != null)
+            for (String key : previous.record.keys()) {
+                long code = CredentialKind.encode(key);
+                if (code < 0)
+                    owners.remove(key, previous);
+                else if (!entry.holds(code)) // Keys kept by the clubber stay on the shared slot.
+                    stripe(code).remove(code, previous.slot);
+            }
+        return true;
+    }
+
+    /**
+     * @param code A credential's code.
+     * @return The map holding the code.
+     */
+    private LongIntMap stripe(long code) {
+        return slotsByCode[(int)((code * 0x9E3779B97F4A7C15L) >>> 60) & (STRIPES - 1)];
+    }
+
+    /**
+     * Releases the credentials claimed so far by a failed claim, and gives the replaced entry back it's place.
+     * @param keys The credentials of the entry's clubber.
+     * @param claimed For each credential claimed so far, whether it was newly claimed or taken over.
+     * @param entry The entry that was being indexed.
+     * @param previous The entry that was being replaced, null for a new clubber.
+     */
+    private void rollBack(List<String> keys, List<Boolean> claimed, Entry entry, Entry previous) {
+        for (int i = 0; i < claimed.size(); i++) {
+            String key = keys.get(i);
+            long code = CredentialKind.encode(key);
+            if (code >= 0) {
+                if (claimed.get(i))
+                    stripe(code).remove(code, entry.slot);
+            } else if (claimed.get(i))
+                owners.remove(key, entry);
+            else
+                owners.replace(key, entry, previous);
+        }
+        if (previous != null)
+            previous.retired = 0;
+    }
+
+    /**
+     * Finds the entry of the clubber who owns the given credential.
+     * A clubber whose entry is still being written to it's slot is not found yet.
+     * @param key The identification credential to look for.
+     * @return The entry of the matching clubber, or null if no clubber matches the key.
+     */
+    public Entry get(String key) {
+        long code = CredentialKind.encode(key);
+        if (code < 0)
+            return owners.get(key);
+        int slot = stripe(code).get(code);
+        if (slot == LongIntMap.NO_VALUE)
+            return null;
+        Entry entry = slots.entry(slot);
+        return (entry != null && entry.holds(code) ? entry : null); // The slot may still hold the replaced entry.
+    }
+
+    /**
+     * Empties the index.
+     */
+    public void clear() {
+        for (LongIntMap map : slotsByCode)
+            map.clear();
+        owners.clear();
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * The slots of a repository, which the index maps credentials to.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public interface Slots {
+
+        /**
+         * @param slot A slot.
+         * @return The entry written to the slot, or null if none was written yet.
+         */
+        Entry entry(int slot);
+
+    } // Slots - End of interface definition.
+
+    /**
+     * A clubber in the index: it's record, and it's slot in the repository.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Entry {
+
+        private final ClubberRecord record; // The clubber's data.
+        private final int slot; // Slot of the clubber in the repository.
+        private final int idCode, credentialCode; // Codes of the clubber's credentials, -1 for none.
+        volatile int retired; // Has this entry been replaced? 1 if so, 0 otherwise. Not private, for RETIRED.
+
+        /**
+         * Constructor - 2 Parameters.
+         * @param record The clubber's data.
+         * @param slot Slot of the clubber in the repository.
+         */
+        public Entry(ClubberRecord record, int slot) {
+            this.record = record;
+            this.slot = slot;
+            List<String> keys = record.keys();
+            idCode = (int)CredentialKind.encode(keys.get(0));
+            credentialCode = (keys.size() > 1 ? (int)CredentialKind.encode(keys.get(1)) : -1);
+        }
+
+        /**
+         * Tells if the clubber has a credential, by it's code, without reading the clubber's strings.
+         * @param code The credential's code.
+         * @return True if one of the clubber's credentials has the code, false otherwise.
+         */
+        boolean holds(long code) {
+            return code == idCode || code == credentialCode;
+        }
+
+        /**
+         * @return The clubber's data.
+         */
+        public ClubberRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * @return Slot of the clubber in the repository.
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * @return True if this entry was replaced by a newer one, false otherwise.
+         */
+        public boolean isRetired() {
+            return retired != 0;
+        }
+
+    } // Entry - End of class definition.
+
+} // ClubberIndex - End of class definition.
@@ -0,0 +1,116 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Migration of a data file written with Java serialization by older versions to a snapshot in {@link ClubberFileFormat}.
+ * The old file is streamed through {@link LegacyClubberReader} and each member is written as soon as it is read,
+ * so files of any size are converted in the same memory, and files of member frames without a display.
+ * The snapshot is written to a temporary file, which then replaces the target file. Migrating a file in place
+ * keeps the old file beside it, with ".legacy" appended to it's name.
+ * <p>
+ * The application still loads serialized files itself, the same way, and saves them in the new format,
+ * keeping a ".legacy" copy as well; the tool converts a file ahead of time, and reports what was converted.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberMigrator {
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Private constructor - utility class.
+     */
+    private ClubberMigrator() {
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Converts a serialized data file to a snapshot in {@link ClubberFileFormat}.
+     * @param legacy The serialized data file.
+     * @param target The snapshot file to write, may be the serialized file itself.
+     * @return The migration's counts.
+     * @throws IOException If a file cannot be read or written, or the serialized file is malformed.
+     */
+    public static Result migrate(File legacy, File target) throws IOException {
+        if (ClubberFileFormat.isFormatOf(legacy))
+            throw new IOException(legacy + " is already in the new format");
+        File temp = new File(target.getPath() + ".tmp");
+        Result result = new Result();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(legacy), 1 << 16);
+             ClubberFileFormat.Writer writer = new ClubberFileFormat.Writer(temp, 0)) {
+            LegacyClubberReader reader = new LegacyClubberReader(in);
+            writer.setSequence(reader.read(writer::append));
+            result.migrated = reader.getRead();
+            result.dropped = reader.getDropped();
+            result.unresolved = reader.getUnresolved();
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        if (legacy.getCanonicalFile().equals(target.getCanonicalFile())) {
+            result.kept = new File(legacy.getPath() + ".legacy");
+            Files.move(legacy.toPath(), result.kept.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return result;
+    }
+
+    /**
+     * Converts a serialized data file, by default into the configured data file (see {@link ClubberStorage}).
+     * Should not be run while the club manager application is running on the target file.
+     * Usage: java ClubberMigrator legacy-file [target-file].
+     * @param args The serialized data file, and optionally the snapshot file to write.
+     * @throws IOException If a file cannot be read or written, or the serialized file is malformed.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java ClubberMigrator legacy-file [target-file]");
+            System.exit(2);
+        }
+        File target = new File(args.length > 1 ? args[1] : System.getProperty("bk.file", ClubberStorage.DEFAULT_FILE));
+        Result result = migrate(new File(args[0]), target);
+        System.out.println(result + " to " + target + (result.kept != null ? ", old file kept as " + result.kept : ""));
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Counts of a migration.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Result {
+
+        private long migrated, dropped, unresolved; // Members migrated, dropped without an id, and dropped with a lost field.
+        private File kept; // The old file, if it was migrated in place.
+
+        /**
+         * @return Number of members migrated.
+         */
+        public long getMigrated() {
+            return migrated;
+        }
+
+        /**
+         * @return Number of empty members (without an id) dropped.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * @return Number of members dropped because a field referred to a string the reader no longer remembered.
+         */
+        public long getUnresolved() {
+            return unresolved;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d members migrated, %d empty entries dropped, %d unresolved", migrated, dropped, unresolved);
+        }
+
+    } // Result - End of class definition.
+
+} // ClubberMigrator - End of class definition.
@@ -0,0 +1,336 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable data of a single club member.
+ * This is what the club keeps in it's repository and saves to file.
+ * The GUI that edits a member ({@link Person}, {@link Soldier} or {@link Student})
+ * is created only when the member is opened, and is bound to a record of this class.
+ * <p>
+ * First names, surnames and telephone prefixes (up to the last hyphen) repeat across members, so they are kept as codes
+ * of a dictionary (see {@link ClubberDictionary}), and the 7 digits of a telephone number after it's prefix
+ * as a number; a telephone number of another form is kept whole as it's prefix. Members of the live repository
+ * use {@link ClubberDictionary#SHARED}, members streamed from a file that of their reader (see {@link #intern()}).
+ * Records are still serialized with their fields as strings, as older versions wrote them,
+ * and files of serialized records are read by {@link LegacyClubberReader}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class ClubberRecord implements Serializable {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final long serialVersionUID = 1L;
+    private static final ObjectStreamField[] serialPersistentFields = { // Fields as serialized by older versions.
+        new ObjectStreamField("type", ClubberType.class), new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class), new ObjectStreamField("surname", String.class),
+        new ObjectStreamField("tel", String.class), new ObjectStreamField("credential", String.class) };
+    private static final int TEL_NUMBER_LENGTH = 7; // Digits of a telephone number after it's prefix.
+
+    private final ClubberType type; // Type of member.
+    private final String id; // Clubber's ID number.
+    private final ClubberDictionary dictionary; // The dictionary the codes belong to.
+    private final int name, surname; // Codes of the first and last names, in their dictionaries.
+    private final int telPrefix; // Code of the telephone prefix, or of the whole telephone number if of another form.
+    private final int telNumber; // Digits of the telephone number after the prefix, -1 if kept whole.
+    private final String credential; // Soldier's personal number or student's id, null for a person.
+    private transient String credentialKey; // Credential as matched: the personal number or the student number.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 6 Parameters.
+     * Creates a member of the live repository, whose strings are added to {@link ClubberDictionary#SHARED}.
+     * @param type The type of member.
+     * @param id Clubber's ID number.
+     * @param name Clubber's first name.
+     * @param surname Clubber's last name.
+     * @param tel Clubber's telephone number.
+     * @param credential Soldier's personal number or student's id. Ignored for a person.
+     */
+    public ClubberRecord(ClubberType type, String id, String name, String surname, String tel, String credential) {
+        this(ClubberDictionary.SHARED, type, id, name, surname, tel, credential);
+    }
+
+    /**
+     * Constructor - 7 Parameters.
+     * Creates a member whose strings are added to the given dictionary, such as a member read by a tool
+     * streaming a file, or one that may yet be refused.
+     * @param dictionary The dictionary to keep the strings in.
+     * @param type The type of member.
+     * @param id Clubber's ID number.
+     * @param name Clubber's first name.
+     * @param surname Clubber's last name.
+     * @param tel Clubber's telephone number.
+     * @param credential Soldier's personal number or student's id. Ignored for a person.
+     */
+    public ClubberRecord(ClubberDictionary dictionary, ClubberType type, String id, String name, String surname, String tel, String credential) {
+        this(dictionary, type, id, dictionary.getNames().encode(name), dictionary.getSurnames().encode(surname),
+                dictionary.getTelPrefixes().encode(telPrefix(tel)), telNumber(tel), credential);
+    }
+
+    /**
+     * Constructor - 8 Parameters.
+     * For readers that already hold the codes, such as of a file's dictionaries.
+     * @param dictionary The dictionary the codes belong to.
+     * @param type The type of member.
+     * @param id Clubber's ID number.
+     * @param name Code of the first name.
+     * @param surname Code of the last name.
+     * @param telPrefix Code of the telephone prefix.
+     * @param telNumber Digits of the telephone number after the prefix, -1 if the prefix is the whole number.
+     * @param credential Soldier's personal number or student's id. Ignored for a person.
+     */
+    ClubberRecord(ClubberDictionary dictionary, ClubberType type, String id, int name, int surname, int telPrefix, int telNumber, String credential) {
+        this.type = type;
+        this.id = id;
+        this.dictionary = dictionary;
+        this.name = name;
+        this.surname = surname;
+        this.telPrefix = telPrefix;
+        this.telNumber = telNumber;
+        this.credential = (type == ClubberType.PERSON ? null : credential);
+        normalizeKeys();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Returns the number part of a student's id, which is what a student is matched by.
+     * @param studentId The student's id, such as "ABC/12345".
+     * @return The student number, such as "12345", or an empty string for an id too short to hold one.
+     */
+    public static String studentNumber(String studentId) {
+        return (studentId.length() > 4 ? studentId.substring(4) : "");
+    }
+
+    /**
+     * Returns the prefix of a telephone number kept in the dictionary:
+     * the country and area codes up to the last hyphen, if 7 digits follow it, or else the whole number.
+     * @param tel The telephone number, may be null.
+     * @return The prefix, or null for null.
+     */
+    static String telPrefix(String tel) {
+        return (telNumber(tel) < 0 ? tel : tel.substring(0, tel.length() - TEL_NUMBER_LENGTH));
+    }
+
+    /**
+     * Returns the 7 digits after the last hyphen of a telephone number, as a number.
+     * @param tel The telephone number, may be null.
+     * @return The digits, or -1 if the number has another form.
+     */
+    static int telNumber(String tel) {
+        if (tel == null || tel.length() <= TEL_NUMBER_LENGTH || tel.charAt(tel.length() - TEL_NUMBER_LENGTH - 1) != '-')
+            return -1;
+        int number = 0;
+        for (int i = tel.length() - TEL_NUMBER_LENGTH; i < tel.length(); i++) {
+            char c = tel.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Computes the keys this member is matched by, once, when the record is created
+     * (that is, when the member is committed), so matching allocates nothing.
+     * Their hash codes are computed now too, and cached by the strings.
+     */
+    private void normalizeKeys() {
+        if (type == ClubberType.STUDENT && credential != null)
+            credentialKey = studentNumber(credential);
+        else
+            credentialKey = credential;
+        if (id != null)
+            id.hashCode();
+        if (credentialKey != null)
+            credentialKey.hashCode();
+    }
+
+    /**
+     * Returns this member with it's strings in {@link ClubberDictionary#SHARED}, for committing it to the live repository.
+     * @return This record if it's strings are already there, or else a copy whose are.
+     */
+    public ClubberRecord intern() {
+        if (dictionary == ClubberDictionary.SHARED)
+            return this;
+        return new ClubberRecord(type, id, getName(), getSurname(), getTel(), credential);
+    }
+
+    /**
+     * Serializes the fields as strings, as older versions did.
+     * @param out The stream to write to.
+     * @throws IOException If the fields cannot be written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("type", type);
+        fields.put("id", id);
+        fields.put("name", getName());
+        fields.put("surname", getSurname());
+        fields.put("tel", getTel());
+        fields.put("credential", credential);
+        out.writeFields();
+    }
+
+    /**
+     * Refuses to deserialize a record, serialized records are read by {@link LegacyClubberReader}.
+     * @param in The stream to read from.
+     * @throws IOException Always.
+     */
+    private void readObject(ObjectInputStream in) throws IOException {
+        throw new InvalidObjectException("Serialized members are read by LegacyClubberReader");
+    }
+
+    /**
+     * @return The type of this member.
+     */
+    public ClubberType getType() {
+        return type;
+    }
+
+    /**
+     * @return Clubber's ID number.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return Clubber's first name.
+     */
+    public String getName() {
+        return dictionary.getNames().decode(name);
+    }
+
+    /**
+     * @return Clubber's last name.
+     */
+    public String getSurname() {
+        return dictionary.getSurnames().decode(surname);
+    }
+
+    /**
+     * @return Code of the clubber's last name in the surnames of {@link #getDictionary()}, -1 if none.
+     */
+    public int getSurnameCode() {
+        return surname;
+    }
+
+    /**
+     * @return Code of the clubber's first name in the names of {@link #getDictionary()}, -1 if none.
+     */
+    int getNameCode() {
+        return name;
+    }
+
+    /**
+     * @return Code of the telephone prefix in the telephone prefixes of {@link #getDictionary()}, -1 if none.
+     */
+    int getTelPrefixCode() {
+        return telPrefix;
+    }
+
+    /**
+     * @return The telephone prefix, or the whole telephone number if of another form.
+     */
+    String getTelPrefix() {
+        return dictionary.getTelPrefixes().decode(telPrefix);
+    }
+
+    /**
+     * @return The dictionary the codes of this member belong to.
+     */
+    public ClubberDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return Digits of the telephone number after it's prefix, -1 if the prefix is the whole number.
+     */
+    int getTelNumber() {
+        return telNumber;
+    }
+
+    /**
+     * @return Clubber's telephone number.
+     */
+    public String getTel() {
+        return tel(getTelPrefix(), telNumber);
+    }
+
+    /**
+     * Joins a telephone prefix and the digits after it.
+     * @param prefix The prefix, or the whole number.
+     * @param telNumber The digits after the prefix, -1 if the prefix is the whole number.
+     * @return The telephone number.
+     */
+    static String tel(String prefix, int telNumber) {
+        if (telNumber < 0)
+            return prefix;
+        StringBuilder s = new StringBuilder(prefix.length() + TEL_NUMBER_LENGTH).append(prefix);
+        String number = Integer.toString(telNumber);
+        for (int i = number.length(); i < TEL_NUMBER_LENGTH; i++)
+            s.append('0');
+        return s.append(number).toString();
+    }
+
+    /**
+     * @return Soldier's personal number, or null if this member isn't a soldier.
+     */
+    public String getPersonalNum() {
+        return (type == ClubberType.SOLDIER ? credential : null);
+    }
+
+    /**
+     * @return Student's id, or null if this member isn't a student.
+     */
+    public String getStudentId() {
+        return (type == ClubberType.STUDENT ? credential : null);
+    }
+
+    /**
+     * Returns true if given key matches one of this member's identification credentials:
+     * the id, a soldier's personal number or the number part of a student's id.
+     * @param key Key to be matched.
+     * @return True if key matches this member.
+     */
+    public boolean match(String key) {
+        return matchKind(key) != null;
+    }
+
+    /**
+     * Tells which of this member's identification credentials the given key matches.
+     * @param key Key to be matched.
+     * @return The kind of the matched credential, or null if key doesn't match this member.
+     */
+    public CredentialKind matchKind(String key) {
+        if (key.equals(id))
+            return CredentialKind.NATIONAL_ID;
+        if (key.equals(credentialKey))
+            return (type == ClubberType.SOLDIER ? CredentialKind.PERSONAL_NUMBER : CredentialKind.STUDENT_NUMBER);
+        return null;
+    }
+
+    /**
+     * Lists every key that {@link #match(String key)} accepts.
+     * @return The identification credentials of this member.
+     */
+    public List<String> keys() {
+        List<String> keys = new ArrayList<String>(2);
+        keys.add(id);
+        if (credentialKey != null)
+            keys.add(credentialKey);
+        return keys;
+    }
+
+    /**
+     * @return The type, id and name of this member.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %s %s %s", type.getDisplayName(), id, getName(), getSurname());
+    }
+
+} // ClubberRecord - End of class definition.
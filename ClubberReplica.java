@@ -0,0 +1,256 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Read only copy of the clubbers repository of a primary (see {@link ReplicationPrimary}), kept current over TCP.
+ * The replica holds the members in it's own {@link InMemoryClubberRepository}, with it's own indexes,
+ * so lookups are served locally; changes shipped by the primary are applied as they arrive, by a background thread.
+ * <p>
+ * When the connection is lost, the replica reconnects every second, with the last change it applied,
+ * and gets the changes it missed or, if the primary no longer has them, a snapshot. A snapshot is loaded
+ * into a new repository which then replaces the current one, so lookups meanwhile see the previous members.
+ * The primary sends a heartbeat at least every {@link ReplicationPrimary#HEARTBEAT_MILLIS} milliseconds;
+ * the replica is current while it heard from the primary within the allowed lag.
+ * Changes to the repository are refused, they are made on the primary.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberReplica implements ClubberRepository, Closeable {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int RECONNECT_MILLIS = 1000; // Time between connection attempts.
+
+    private final InetSocketAddress primary; // Address of the primary.
+    private final long maxLagMillis; // Longest time without hearing from the primary for the replica to be current.
+    private final Thread replicator; // Connects to the primary and applies it's changes.
+    private volatile InMemoryClubberRepository current; // The members.
+    private volatile long run; // Run of the primary the members come from, 0 before the first snapshot.
+    private volatile long applied; // Number of the last change applied.
+    private volatile long heard; // Time the primary was last heard from, in milliseconds, 0 if never.
+    private volatile long commitLag; // Time from commit on the primary to apply of the last change, in milliseconds.
+    private volatile Socket socket; // The connection to the primary, null if disconnected.
+    private volatile boolean closed; // Was the replica closed?
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * See {@link #start()} for connecting to the primary.
+     * @param primary Address of the primary.
+     * @param maxLagMillis Longest time without hearing from the primary for the replica to be current.
+     */
+    public ClubberReplica(InetSocketAddress primary, long maxLagMillis) {
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.current = new InMemoryClubberRepository();
+        this.replicator = new Thread(this::replicate, "BK replica");
+        replicator.setDaemon(true);
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Starts connecting to the primary and applying it's changes.
+     */
+    public void start() {
+        replicator.start();
+    }
+
+    /**
+     * @return True if the primary was heard from within the allowed lag, false otherwise.
+     */
+    public boolean isCurrent() {
+        return getLagMillis() <= maxLagMillis;
+    }
+
+    /**
+     * @return Time since the primary was last heard from, in milliseconds, Long.MAX_VALUE if never.
+     */
+    public long getLagMillis() {
+        long last = heard;
+        return (last == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - last);
+    }
+
+    /**
+     * @return Time from commit on the primary to apply here of the last change applied, in milliseconds
+     *         (as far as the two clocks agree).
+     */
+    public long getCommitLagMillis() {
+        return commitLag;
+    }
+
+    /**
+     * @return Number of the last change of the primary applied.
+     */
+    public long getApplied() {
+        return applied;
+    }
+
+    /**
+     * Run by the replicator thread: follows the primary, reconnecting whenever the connection is lost, until closed.
+     */
+    private void replicate() {
+        boolean lost = false; // Did the last attempt fail already, so the error was reported?
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                s.connect(primary, RECONNECT_MILLIS);
+                s.setTcpNoDelay(true);
+                s.setSoTimeout((int)Math.max(maxLagMillis, 4L * ReplicationPrimary.HEARTBEAT_MILLIS));
+                socket = s;
+                lost = false;
+                if (closed)
+                    return;
+                follow(s);
+            }
+            catch (IOException e) {
+                if (!closed && !lost)
+                    ClubMetrics.error("Replica lost the primary " + primary + ", reconnecting", e);
+                lost = true;
+            }
+            finally {
+                socket = null;
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Greets the primary and applies it's messages until the connection is lost,
+     * or until a change cannot be applied, as the members diverged from the primary's.
+     * @param s The connection to the primary.
+     * @throws IOException If the connection is lost or the primary's messages are malformed.
+     */
+    private void follow(Socket s) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.writeInt(ReplicationPrimary.MAGIC);
+        out.writeShort(ReplicationPrimary.VERSION);
+        out.writeLong(run);
+        out.writeLong(applied);
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+        while (!closed) {
+            int type = in.readByte();
+            heard = System.currentTimeMillis();
+            if (type == ReplicationPrimary.HEARTBEAT) {
+                in.readLong();
+                in.readLong();
+            }
+            else if (type == ReplicationPrimary.CHANGE) {
+                long sequence = in.readLong();
+                long time = in.readLong();
+                ByteBuffer change = ByteBuffer.wrap(readBytes(in));
+                String oldId = ClubberFileFormat.readString(change);
+                ClubberRecord updated = ClubberFileFormat.readRecord(change);
+                if (!JournalClubberStore.apply(current, oldId, updated)) {
+                    ClubMetrics.error("Replica cannot apply change " + sequence + " of member " + updated.getId()
+                            + ", reloading a snapshot from the primary", null);
+                    run = 0; // The next connection asks for a snapshot, the members are served meanwhile.
+                    return;
+                }
+                applied = sequence;
+                commitLag = Math.max(0, System.currentTimeMillis() - time);
+            }
+            else if (type == ReplicationPrimary.SNAPSHOT) {
+                long snapshotRun = in.readLong();
+                long sequence = in.readLong();
+                InMemoryClubberRepository loaded = new InMemoryClubberRepository();
+                for (int i = in.readInt(); i > 0; i--)
+                    loaded.add(ClubberFileFormat.readRecord(ByteBuffer.wrap(readBytes(in))));
+                current = loaded;
+                run = snapshotRun;
+                applied = sequence;
+                heard = System.currentTimeMillis();
+            }
+            else
+                throw new StreamCorruptedException("Unknown replication message: " + type);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed block of bytes.
+     * @param in The connection to the primary.
+     * @return The bytes.
+     * @throws IOException If the connection is lost or the length is invalid.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 1 << 20)
+            throw new StreamCorruptedException("Invalid replication message length: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Stops following the primary.
+     * @throws IOException If the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        replicator.interrupt();
+        Socket s = socket;
+        if (s != null)
+            s.close();
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public int size() {
+        return current.size();
+    }
+
+    @Override
+    public int count(ClubberType type) {
+        return current.count(type);
+    }
+
+    @Override
+    public ClubberRecord find(String key) {
+        return current.find(key);
+    }
+
+    @Override
+    public boolean duplicateKeyCheck(String key, ClubberRecord owner) {
+        return current.duplicateKeyCheck(key, owner);
+    }
+
+    /**
+     * Refused, members are added on the primary.
+     */
+    @Override
+    public boolean add(ClubberRecord clubber) {
+        throw new UnsupportedOperationException("Replicas are read only, add members on the primary");
+    }
+
+    /**
+     * Refused, members are changed on the primary.
+     */
+    @Override
+    public boolean replace(ClubberRecord old, ClubberRecord updated) {
+        throw new UnsupportedOperationException("Replicas are read only, change members on the primary");
+    }
+
+    /**
+     * Refused, members are removed on the primary.
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Replicas are read only");
+    }
+
+    @Override
+    public Iterator<ClubberRecord> iterator() {
+        return current.iterator();
+    }
+
+} // ClubberReplica - End of class definition.
@@ -0,0 +1,62 @@
+/**
+ * Interface for the night club's regular customers repository.
+ * Holds the members as lightweight {@link ClubberRecord}s and finds them by their
+ * identification credentials. Implementations are safe for use by several threads,
+ * such as several door terminals served by one process.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public interface ClubberRepository extends Iterable<ClubberRecord> {
+
+    /**
+     * @return The number of members in the repository.
+     */
+    int size();
+
+    /**
+     * Counts the members of a type, without iterating over the members.
+     * @param type The type of member.
+     * @return The number of members of the type.
+     */
+    int count(ClubberType type);
+
+    /**
+     * Finds the member matching the given key.
+     * See {@link ClubberRecord#match(String key)} for the keys a member is matched by.
+     * @param key The identification credential to look for.
+     * @return The matching member, or null if no member matches the key.
+     */
+    ClubberRecord find(String key);
+
+    /**
+     * Checks if a member other than the given one owns the given credential.
+     * @param key The credential which to check with.
+     * @param owner The member who wants to use given credential, null for a new member.
+     * @return True if a different member with same credential exists, false otherwise.
+     */
+    boolean duplicateKeyCheck(String key, ClubberRecord owner);
+
+    /**
+     * Adds a new member to the repository, unless one of it's credentials belongs to another member.
+     * The check and the insertion are atomic.
+     * @param clubber The member to be added.
+     * @return True if the member was added, false if a credential is taken.
+     */
+    boolean add(ClubberRecord clubber);
+
+    /**
+     * Replaces the data of an existing member with it's newly committed data,
+     * unless one of the new credentials belongs to another member.
+     * The check and the replacement are atomic.
+     * @param old The member as currently kept in the repository.
+     * @param updated The new data of the member.
+     * @return True if the member was replaced, false if a credential is taken or the member was changed meanwhile.
+     */
+    boolean replace(ClubberRecord old, ClubberRecord updated);
+
+    /**
+     * Removes all members from the repository.
+     * Must not be called while other threads use the repository.
+     */
+    void clear();
+
+} // ClubberRepository - End of interface definition.
@@ -0,0 +1,886 @@
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search index over the names, surnames and phone numbers of the club's members,
+ * for finding a member whose key isn't known.
+ * <p>
+ * A query is one or more words, and a member is found if every word matches it's name, surname or phone.
+ * A word of letters matches a name or surname exactly, as it's prefix, inside it (3 letters or more),
+ * or with a typo (4 letters or more: one typo, 8 or more: two). A word of digits (3 or more,
+ * "+()-" are ignored) matches the digits of the phone exactly, as their prefix, or inside them.
+ * Members are ranked by how well the words match them, in that order.
+ * <p>
+ * Names and surnames are kept in a sorted dictionary, so a prefix is a range of it, with trigrams of the
+ * dictionary's terms (padded with blanks at both ends) for substrings and typos. Phones are indexed by the trigrams of their digits.
+ * The index holds no member: per document it keeps the member's id, type, and the codes of it's name, surname and phone
+ * in {@link ClubberDictionary#SHARED}, and members found are looked up by id in the repository. So over a
+ * {@link LazyClubberRepository} the members stay on disk, and only the index's own structures are in memory.
+ * The index is kept up to date by adding and replacing members as they are committed, once it was built.
+ * Replaced members are only marked as removed, and the index is rebuilt once most of it is removed.
+ * Searching takes a read lock and updating a write lock, so searches don't block each other.
+ * <p>
+ * The index also serves browsing all the members (see {@link #browse(ClubberType, String, String, Order)}):
+ * filtered by type, surname prefix and phone digits, in the order they were added, by surname
+ * (from a sorted dictionary of surnames) or by phone (an order computed once per change of the index).
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberSearchIndex {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int EXACT = 4, PREFIX = 3, SUBSTRING = 2, TYPO = 1; // Scores of a matching word.
+    private static final int MIN_REBUILD = 4096; // Removed members that may trigger a rebuild.
+
+    private final ClubberRepository repository; // The indexed members, looked up by id.
+    private final ArrayList<String> ids; // Ids of the indexed members by document number, null once removed.
+    private byte[] types; // Ordinal of each document's member type.
+    private int[] nameCodes, surnameCodes; // Codes of each document's name and surname in the shared dictionary.
+    private int[] telPrefixCodes, telNumbers; // Code of each document's phone prefix in the shared dictionary, and the digits after it.
+    private final HashMap<String, Integer> documents; // Member id to document number.
+    private final TreeMap<String, IntList> terms; // Lower case name or surname to the documents holding it.
+    private final TreeMap<String, IntList> surnames; // Lower case surname to the documents holding it.
+    private final HashMap<String, Set<String>> termGrams; // Trigram to the terms containing it.
+    private final IntList[] phoneGrams; // Trigram of phone digits (as a number) to the documents holding it.
+    private int removed; // Number of removed documents.
+    private int version; // Number of changes of the index.
+    private boolean built; // Was the index built, so it follows the commits?
+    private volatile PhoneOrder phoneOrder; // Documents by phone, as of a version of the index.
+    private final ReadWriteLock lock; // Searches read, updates write.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * Creates an empty index, to be built by {@link #build()}.
+     * @param repository The members to index, looked up by id once found.
+     */
+    public ClubberSearchIndex(ClubberRepository repository) {
+        this.repository = repository;
+        ids = new ArrayList<String>();
+        documents = new HashMap<String, Integer>();
+        terms = new TreeMap<String, IntList>();
+        surnames = new TreeMap<String, IntList>();
+        termGrams = new HashMap<String, Set<String>>();
+        phoneGrams = new IntList[1000];
+        lock = new ReentrantReadWriteLock();
+        clear();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Indexes all the members of the repository, replacing the current content of the index.
+     * From now on the index follows the commits passed to {@link #replace(ClubberRecord, ClubberRecord)}.
+     */
+    public void build() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            for (ClubberRecord clubber : repository)
+                index(clubber);
+            built = true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the index unless it was built already, such as on first use when it wasn't built on load.
+     * Building reads every member of the repository, which for a {@link LazyClubberRepository} reads the whole file.
+     */
+    public void buildIfNeeded() {
+        lock.writeLock().lock();
+        try {
+            if (!built)
+                build();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a new member.
+     * @param clubber The member.
+     */
+    public void add(ClubberRecord clubber) {
+        replace(null, clubber);
+    }
+
+    /**
+     * Replaces the indexed data of a member with it's newly committed data.
+     * Ignored until the index is built, as building reads the committed data from the repository.
+     * @param old The member's data before the commit, null for a new member.
+     * @param updated The member's committed data.
+     */
+    public void replace(ClubberRecord old, ClubberRecord updated) {
+        lock.writeLock().lock();
+        try {
+            if (!built)
+                return;
+            if (old != null) {
+                Integer document = documents.remove(old.getId());
+                if (document != null) {
+                    ids.set(document, null);
+                    removed++;
+                    version++;
+                }
+            }
+            index(updated);
+            if (removed > MIN_REBUILD && removed > ids.size() / 2)
+                rebuild();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a page of the members matching a query, best matches first.
+     * The page's members are looked up in the repository after the index is released.
+     * @param query Words to look for in the names, surnames and phones.
+     * @param offset Number of best matches to skip.
+     * @param limit Maximal number of members in the page.
+     * @return The page, empty if the query holds no word that can be looked for.
+     */
+    public Page search(String query, int offset, int limit) {
+        List<String> words = words(query);
+        List<String> pageIds = new ArrayList<String>(Math.max(0, Math.min(limit, 100)));
+        int total = 0;
+        if (words.isEmpty())
+            return new Page(new ArrayList<ClubberRecord>(), 0, offset);
+        lock.readLock().lock();
+        try {
+            // The word matching the fewest members drives the search, the others are checked per member.
+            String driver = null;
+            Map<String, Integer> driverTerms = null;
+            IntList driverPhones = null;
+            long driverCost = Long.MAX_VALUE;
+            HashMap<String, Map<String, Integer>> wordTerms = new HashMap<String, Map<String, Integer>>(); // Word of letters to it's terms.
+            for (String word : words) {
+                long cost = 0;
+                Map<String, Integer> matched = null;
+                IntList phones = null;
+                if (isPhone(word)) {
+                    phones = phoneCandidates(word);
+                    cost = phones.size;
+                }
+                else {
+                    matched = matchingTerms(word);
+                    wordTerms.put(word, matched);
+                    for (String term : matched.keySet())
+                        cost += terms.get(term).size;
+                }
+                if (cost < driverCost) {
+                    driver = word;
+                    driverTerms = matched;
+                    driverPhones = phones;
+                    driverCost = cost;
+                }
+            }
+            IntList[] byScore = new IntList[EXACT * words.size() + 1]; // Matching documents by total score.
+            BitSet seen = new BitSet(ids.size());
+            if (driverPhones != null) {
+                for (int i = 0; i < driverPhones.size; i++)
+                    collect(driverPhones.get(i), driver, -1, words, wordTerms, seen, byScore);
+            }
+            else {
+                List<Map.Entry<String, Integer>> ranked = new ArrayList<Map.Entry<String, Integer>>(driverTerms.entrySet());
+                ranked.sort((a, b) -> (a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey()) : b.getValue() - a.getValue()));
+                for (Map.Entry<String, Integer> term : ranked) {
+                    IntList postings = terms.get(term.getKey());
+                    for (int i = 0; i < postings.size; i++)
+                        collect(postings.get(i), driver, term.getValue(), words, wordTerms, seen, byScore);
+                }
+            }
+            int skip = offset;
+            for (int score = byScore.length - 1; score > 0; score--) {
+                IntList documentsOfScore = byScore[score];
+                if (documentsOfScore == null)
+                    continue;
+                total += documentsOfScore.size;
+                for (int i = 0; i < documentsOfScore.size && pageIds.size() < limit; i++) {
+                    if (skip > 0)
+                        skip--;
+                    else
+                        pageIds.add(ids.get(documentsOfScore.get(i)));
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        List<ClubberRecord> page = new ArrayList<ClubberRecord>(pageIds.size());
+        for (String id : pageIds) {
+            ClubberRecord clubber = repository.find(id);
+            if (clubber != null) // Unless replaced meanwhile.
+                page.add(clubber);
+        }
+        return new Page(page, total, offset);
+    }
+
+    /**
+     * Lists the members passing filters, in a given order, for browsing them.
+     * The members are listed by document number, see {@link #member(int)}.
+     * @param type Type of the members, null for all types.
+     * @param surnamePrefix Prefix of the members' surnames (in any case), null or empty for all surnames.
+     * @param phoneDigits Digits the members' phones hold, null or empty for all phones.
+     * @param order The order of the members.
+     * @return The document numbers of the members.
+     */
+    public int[] browse(ClubberType type, String surnamePrefix, String phoneDigits, Order order) {
+        String prefix = (surnamePrefix == null ? "" : surnamePrefix.trim().toLowerCase(Locale.ROOT));
+        String digits = (phoneDigits == null ? "" : digits(phoneDigits));
+        lock.readLock().lock();
+        try {
+            // Mark the members passing the filters, starting from the most selective index.
+            BitSet passing = new BitSet(ids.size());
+            if (digits.length() >= 3) {
+                IntList candidates = phoneCandidates(digits);
+                for (int i = 0; i < candidates.size; i++)
+                    passing.set(candidates.get(i));
+            }
+            else if (!prefix.isEmpty()) {
+                for (IntList postings : surnames.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values())
+                    for (int i = 0; i < postings.size; i++)
+                        passing.set(postings.get(i));
+            }
+            else
+                passing.set(0, ids.size());
+            byte[] surnameMatches = new byte[prefix.isEmpty() ? 0 : ClubberDictionary.SHARED.getSurnames().size()]; // By surname code: 0 unknown, 1 passing, 2 not.
+            for (int document = passing.nextSetBit(0); document >= 0; document = passing.nextSetBit(document + 1)) {
+                if (ids.get(document) == null || (type != null && types[document] != type.ordinal())
+                        || (!prefix.isEmpty() && !surnameStartsWith(document, prefix, surnameMatches))
+                        || (!digits.isEmpty() && !digits(tel(document)).contains(digits)))
+                    passing.clear(document);
+            }
+            int[] view = new int[passing.cardinality()];
+            int n = 0;
+            switch (order) {
+                case SURNAME:
+                    Map<String, IntList> range = (prefix.isEmpty() ? surnames : surnames.subMap(prefix, true, prefix + Character.MAX_VALUE, false));
+                    for (IntList postings : range.values())
+                        for (int i = 0; i < postings.size; i++)
+                            if (passing.get(postings.get(i)))
+                                view[n++] = postings.get(i);
+                    break;
+                case PHONE:
+                    for (int document : phoneOrder())
+                        if (passing.get(document))
+                            view[n++] = document;
+                    break;
+                default:
+                    for (int document = passing.nextSetBit(0); document >= 0; document = passing.nextSetBit(document + 1))
+                        view[n++] = document;
+            }
+            return view;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a document's surname starts with a prefix, once per surname:
+     * members sharing a surname share it's code, so the others are an int lookup.
+     * The read lock must be held.
+     * @param document The document.
+     * @param prefix The lower case prefix.
+     * @param matches By surname code: 0 not checked yet, 1 starts with the prefix, 2 doesn't.
+     * @return True if the surname starts with the prefix, false otherwise.
+     */
+    private boolean surnameStartsWith(int document, String prefix, byte[] matches) {
+        int code = surnameCodes[document];
+        if (code >= matches.length) // Added after the filter started.
+            return surname(document).toLowerCase(Locale.ROOT).startsWith(prefix);
+        if (matches[code] == 0)
+            matches[code] = (byte)(surname(document).toLowerCase(Locale.ROOT).startsWith(prefix) ? 1 : 2);
+        return matches[code] == 1;
+    }
+
+    /**
+     * Returns the id of an indexed member.
+     * @param document The member's document number, as listed by {@link #browse(ClubberType, String, String, Order)}.
+     * @return The member's id, or null if it was replaced or the index was rebuilt since.
+     */
+    public String id(int document) {
+        lock.readLock().lock();
+        try {
+            return (document < ids.size() ? ids.get(document) : null);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns an indexed member, looked up by id in the repository.
+     * @param document The member's document number, as listed by {@link #browse(ClubberType, String, String, Order)}.
+     * @return The member, or null if it was replaced or the index was rebuilt since.
+     */
+    public ClubberRecord member(int document) {
+        String id = id(document);
+        return (id == null ? null : repository.find(id));
+    }
+
+    /**
+     * Returns the members ordered by phone, updating the order if the index changed since it was last computed.
+     * Members indexed since are sorted and merged into the previous order, and removed members are dropped,
+     * so only a rebuild of the index sorts all the members again. Phones are ordered by their digits.
+     * The read lock must be held.
+     * @return The document numbers of all the members, by phone.
+     */
+    private int[] phoneOrder() {
+        PhoneOrder previous = phoneOrder;
+        if (previous != null && previous.version == version)
+            return previous.documents;
+        if (previous == null || previous.indexed > ids.size())
+            previous = new PhoneOrder(version, 0, new int[0], new long[0]); // Index was cleared or rebuilt.
+        // Sort the new members by packing (rank of phone, document) pairs in longs, so no object is created per member.
+        int added = ids.size() - previous.indexed;
+        long[] keys = new long[added];
+        for (int i = 0; i < added; i++) {
+            int document = previous.indexed + i;
+            keys[i] = (ids.get(document) == null ? Long.MAX_VALUE : phoneKey(tel(document)));
+        }
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        long[] pairs = new long[added];
+        for (int i = 0; i < added; i++)
+            pairs[i] = ((long)Arrays.binarySearch(sorted, keys[i]) << 32) | (previous.indexed + i);
+        Arrays.sort(pairs);
+        // Merge them with the previous order, dropping removed members.
+        int[] documents = new int[previous.documents.length + added];
+        long[] documentKeys = new long[documents.length];
+        int n = 0, i = 0, j = 0;
+        while (i < previous.documents.length || j < added) {
+            int document;
+            long key;
+            if (j == added || (i < previous.documents.length && previous.keys[i] <= sorted[(int)(pairs[j] >>> 32)])) {
+                document = previous.documents[i];
+                key = previous.keys[i++];
+            }
+            else {
+                document = (int)pairs[j];
+                key = sorted[(int)(pairs[j++] >>> 32)];
+            }
+            if (ids.get(document) != null) {
+                documents[n] = document;
+                documentKeys[n++] = key;
+            }
+        }
+        PhoneOrder current = new PhoneOrder(version, ids.size(), Arrays.copyOf(documents, n), Arrays.copyOf(documentKeys, n));
+        phoneOrder = current;
+        return current.documents;
+    }
+
+    /**
+     * Computes a number which orders phones as their digits do.
+     * @param tel The phone.
+     * @return The digits (up to 15) left aligned in 15 decimal places, times 16, plus the number of digits.
+     */
+    private static long phoneKey(String tel) {
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < tel.length() && digits < 15; i++)
+            if (tel.charAt(i) >= '0' && tel.charAt(i) <= '9') {
+                key = key * 10 + (tel.charAt(i) - '0');
+                digits++;
+            }
+        for (int i = digits; i < 15; i++)
+            key *= 10;
+        return key * 16 + digits;
+    }
+
+    /**
+     * Scores a document found by the driving word against the other words, and keeps it by it's total score.
+     * @param document The document.
+     * @param driver The driving word.
+     * @param driverScore Score of the driving word, -1 to score a word of digits against the member's phone.
+     * @param words All the words of the query.
+     * @param wordTerms The terms matched by each word of letters, with their scores.
+     * @param seen Documents already kept.
+     * @param byScore Kept documents by total score.
+     */
+    private void collect(int document, String driver, int driverScore, List<String> words,
+            Map<String, Map<String, Integer>> wordTerms, BitSet seen, IntList[] byScore) {
+        if (ids.get(document) == null || seen.get(document))
+            return;
+        int total = (driverScore < 0 ? phoneScore(driver, tel(document)) : driverScore);
+        if (total == 0)
+            return; // Holds the trigrams but not the digits.
+        for (String word : words) {
+            if (word == driver)
+                continue;
+            int score;
+            if (isPhone(word))
+                score = phoneScore(word, tel(document));
+            else {
+                Map<String, Integer> matched = wordTerms.get(word);
+                score = Math.max(matched.getOrDefault(name(document).toLowerCase(Locale.ROOT), 0),
+                        matched.getOrDefault(surname(document).toLowerCase(Locale.ROOT), 0));
+            }
+            if (score == 0)
+                return;
+            total += score;
+        }
+        seen.set(document);
+        if (byScore[total] == null)
+            byScore[total] = new IntList();
+        byScore[total].add(document);
+    }
+
+    /**
+     * Finds the terms of the dictionary a word of letters matches, with their scores.
+     * @param word The word, in lower case.
+     * @return The matching terms and their scores.
+     */
+    private Map<String, Integer> matchingTerms(String word) {
+        HashMap<String, Integer> matched = new HashMap<String, Integer>();
+        for (String term : terms.subMap(word, true, word + Character.MAX_VALUE, false).keySet())
+            matched.put(term, score(word, term));
+        if (word.length() < 3)
+            return matched;
+        // Terms holding all the plain trigrams of the word may hold it, terms sharing enough of it's
+        // padded trigrams may be a typo away from it. A typo changes up to 3 padded trigrams.
+        Set<String> plain = new HashSet<String>(trigrams(word));
+        Set<String> padded = new HashSet<String>(trigrams("  " + word + " "));
+        HashMap<String, int[]> shared = new HashMap<String, int[]>(); // Candidate term to shared plain and padded trigrams.
+        for (String gram : padded) {
+            Set<String> containing = termGrams.get(gram);
+            if (containing != null)
+                for (String term : containing) {
+                    int[] counts = shared.computeIfAbsent(term, t -> new int[2]);
+                    if (plain.contains(gram))
+                        counts[0]++;
+                    counts[1]++;
+                }
+        }
+        int typos = maxTypos(word);
+        for (Map.Entry<String, int[]> candidate : shared.entrySet()) {
+            int[] counts = candidate.getValue();
+            if ((counts[0] == plain.size() || (typos > 0 && counts[1] >= padded.size() - 3 * typos))
+                    && !matched.containsKey(candidate.getKey())) {
+                int score = score(word, candidate.getKey());
+                if (score > 0)
+                    matched.put(candidate.getKey(), score);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Finds the documents whose phone digits hold all the trigrams of a word of digits.
+     * @param word The word, digits only.
+     * @return The candidate documents, in order.
+     */
+    private IntList phoneCandidates(String word) {
+        IntList candidates = null;
+        for (int i = 0; i + 3 <= word.length(); i++) {
+            IntList postings = phoneGrams[phoneGram(word, i)];
+            if (postings == null)
+                return new IntList();
+            candidates = (candidates == null ? postings : candidates.intersect(postings));
+        }
+        return candidates;
+    }
+
+    /**
+     * Scores a word of letters against a name or surname.
+     * @param word The word, in lower case.
+     * @param term The name or surname, in lower case.
+     * @return The word's score, 0 if it doesn't match.
+     */
+    private static int score(String word, String term) {
+        if (term.equals(word))
+            return EXACT;
+        if (term.startsWith(word))
+            return PREFIX;
+        if (word.length() >= 3 && term.contains(word))
+            return SUBSTRING;
+        int typos = maxTypos(word);
+        if (typos > 0 && Math.abs(term.length() - word.length()) <= typos && editDistance(word, term, typos) <= typos)
+            return TYPO;
+        return 0;
+    }
+
+    /**
+     * Scores a word of digits against a member's phone.
+     * @param word The word, digits only.
+     * @param tel The member's phone.
+     * @return The word's score, 0 if it doesn't match.
+     */
+    private static int phoneScore(String word, String tel) {
+        String digits = digits(tel);
+        if (digits.equals(word))
+            return EXACT;
+        if (digits.startsWith(word))
+            return PREFIX;
+        return (digits.contains(word) ? SUBSTRING : 0);
+    }
+
+    /**
+     * @param word A word of letters.
+     * @return The number of typos the word is matched with.
+     */
+    private static int maxTypos(String word) {
+        return (word.length() >= 8 ? 2 : (word.length() >= 4 ? 1 : 0));
+    }
+
+    /**
+     * Computes the edit distance of two strings, giving up once it exceeds a bound.
+     * @param a The first string.
+     * @param b The second string.
+     * @param bound The bound.
+     * @return The edit distance, or bound + 1 if it exceeds the bound.
+     */
+    private static int editDistance(String a, String b, int bound) {
+        int[] previous = new int[b.length() + 1], current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > bound)
+                return bound + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], bound + 1);
+    }
+
+    /**
+     * Splits a query into words, in lower case. Phone punctuation is dropped from words of digits.
+     * Words of digits shorter than 3, and words mixing letters and digits, are ignored.
+     * @param query The query.
+     * @return The words.
+     */
+    private static List<String> words(String query) {
+        List<String> words = new ArrayList<String>();
+        if (query == null)
+            return words;
+        for (String word : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            String digits = digits(word);
+            if (digits.isEmpty()) {
+                if (!word.isEmpty())
+                    words.add(word);
+            }
+            else if (digits.length() == word.replaceAll("[+()\\-]", "").length() && digits.length() >= 3)
+                words.add(digits);
+        }
+        return words;
+    }
+
+    /**
+     * @param word A word of the query.
+     * @return True if the word is looked for in phones, false if in names and surnames.
+     */
+    private static boolean isPhone(String word) {
+        return Character.isDigit(word.charAt(0));
+    }
+
+    /**
+     * @param s A string.
+     * @return The digits of the string.
+     */
+    private static String digits(String s) {
+        StringBuilder digits = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) >= '0' && s.charAt(i) <= '9')
+                digits.append(s.charAt(i));
+        return digits.toString();
+    }
+
+    /**
+     * @param s A string.
+     * @return The trigrams of the string, in order.
+     */
+    private static List<String> trigrams(String s) {
+        List<String> grams = new ArrayList<String>(Math.max(0, s.length() - 2));
+        for (int i = 0; i + 3 <= s.length(); i++)
+            grams.add(s.substring(i, i + 3));
+        return grams;
+    }
+
+    /**
+     * @param digits Digits.
+     * @param i Start of a trigram.
+     * @return The trigram starting at i, as a number.
+     */
+    private static int phoneGram(String digits, int i) {
+        return (digits.charAt(i) - '0') * 100 + (digits.charAt(i + 1) - '0') * 10 + (digits.charAt(i + 2) - '0');
+    }
+
+    /**
+     * @param document A document.
+     * @return The document's first name.
+     */
+    private String name(int document) {
+        return ClubberDictionary.SHARED.getNames().decode(nameCodes[document]);
+    }
+
+    /**
+     * @param document A document.
+     * @return The document's surname.
+     */
+    private String surname(int document) {
+        return ClubberDictionary.SHARED.getSurnames().decode(surnameCodes[document]);
+    }
+
+    /**
+     * @param document A document.
+     * @return The document's phone.
+     */
+    private String tel(int document) {
+        return ClubberRecord.tel(ClubberDictionary.SHARED.getTelPrefixes().decode(telPrefixCodes[document]), telNumbers[document]);
+    }
+
+    /**
+     * Indexes a member under a new document number. The write lock must be held.
+     * @param clubber The member.
+     */
+    private void index(ClubberRecord clubber) {
+        ClubberRecord interned = clubber.intern(); // Members streamed by a lazy repository have codes of their own.
+        index(interned.getId(), interned.getType().ordinal(), interned.getNameCode(), interned.getSurnameCode(),
+                interned.getTelPrefixCode(), interned.getTelNumber());
+    }
+
+    /**
+     * Indexes a member's data under a new document number. The write lock must be held.
+     * @param id The member's id.
+     * @param type Ordinal of the member's type.
+     * @param nameCode Code of the member's name in the shared dictionary.
+     * @param surnameCode Code of the member's surname in the shared dictionary.
+     * @param telPrefixCode Code of the member's phone prefix in the shared dictionary.
+     * @param telNumber Digits of the member's phone after the prefix, -1 if the prefix is the whole phone.
+     */
+    private void index(String id, int type, int nameCode, int surnameCode, int telPrefixCode, int telNumber) {
+        int document = ids.size();
+        if (document == types.length) {
+            types = Arrays.copyOf(types, document * 2);
+            nameCodes = Arrays.copyOf(nameCodes, document * 2);
+            surnameCodes = Arrays.copyOf(surnameCodes, document * 2);
+            telPrefixCodes = Arrays.copyOf(telPrefixCodes, document * 2);
+            telNumbers = Arrays.copyOf(telNumbers, document * 2);
+        }
+        ids.add(id);
+        types[document] = (byte)type;
+        nameCodes[document] = nameCode;
+        surnameCodes[document] = surnameCode;
+        telPrefixCodes[document] = telPrefixCode;
+        telNumbers[document] = telNumber;
+        documents.put(id, document);
+        for (String name : new String[] { name(document), surname(document) }) {
+            String term = name.toLowerCase(Locale.ROOT);
+            IntList postings = terms.get(term);
+            if (postings == null) {
+                terms.put(term, postings = new IntList());
+                for (String gram : trigrams("  " + term + " ")) // Padded, so the plain trigrams are included.
+                    termGrams.computeIfAbsent(gram, g -> new HashSet<String>()).add(term);
+            }
+            postings.addOnce(document);
+        }
+        surnames.computeIfAbsent(surname(document).toLowerCase(Locale.ROOT), s -> new IntList()).add(document);
+        version++;
+        String digits = digits(tel(document));
+        for (int i = 0; i + 3 <= digits.length(); i++) {
+            int gram = phoneGram(digits, i);
+            if (phoneGrams[gram] == null)
+                phoneGrams[gram] = new IntList();
+            phoneGrams[gram].addOnce(document);
+        }
+    }
+
+    /**
+     * Reindexes the remaining members, dropping removed ones. The write lock must be held.
+     */
+    private void rebuild() {
+        String[] oldIds = ids.toArray(new String[ids.size()]);
+        byte[] oldTypes = types;
+        int[] oldNames = nameCodes, oldSurnames = surnameCodes, oldTelPrefixes = telPrefixCodes, oldTelNumbers = telNumbers;
+        clear();
+        for (int document = 0; document < oldIds.length; document++)
+            if (oldIds[document] != null)
+                index(oldIds[document], oldTypes[document], oldNames[document], oldSurnames[document],
+                        oldTelPrefixes[document], oldTelNumbers[document]);
+    }
+
+    /**
+     * Empties the index. The write lock must be held.
+     */
+    private void clear() {
+        ids.clear();
+        types = new byte[64];
+        nameCodes = new int[64];
+        surnameCodes = new int[64];
+        telPrefixCodes = new int[64];
+        telNumbers = new int[64];
+        documents.clear();
+        terms.clear();
+        surnames.clear();
+        termGrams.clear();
+        Arrays.fill(phoneGrams, null);
+        removed = 0;
+        version++;
+        phoneOrder = null; // Documents are renumbered.
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Orders of browsed members.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public enum Order {
+        ADDED,   // The order the members were indexed in.
+        SURNAME, // By surname, ignoring case.
+        PHONE    // By the digits of the phone.
+    }
+
+    /**
+     * The members ordered by phone, as of a version of the index.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class PhoneOrder {
+
+        private final int version; // Version of the index the order was computed for.
+        private final int indexed; // Number of documents when the order was computed.
+        private final int[] documents; // Document numbers, by phone.
+        private final long[] keys; // Phone keys of the documents.
+
+        /**
+         * Constructor - 4 Parameters.
+         * @param version Version of the index the order was computed for.
+         * @param indexed Number of documents when the order was computed.
+         * @param documents Document numbers, by phone.
+         * @param keys Phone keys of the documents.
+         */
+        private PhoneOrder(int version, int indexed, int[] documents, long[] keys) {
+            this.version = version;
+            this.indexed = indexed;
+            this.documents = documents;
+            this.keys = keys;
+        }
+
+    } // PhoneOrder - End of class definition.
+
+    /**
+     * A page of search results.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public static final class Page {
+
+        private final List<ClubberRecord> members; // The page's members, best matches first.
+        private final int total; // Number of matching members.
+        private final int offset; // Rank of the page's first member.
+
+        /**
+         * Constructor - 3 Parameters.
+         * @param members The page's members, best matches first.
+         * @param total Number of matching members.
+         * @param offset Rank of the page's first member.
+         */
+        private Page(List<ClubberRecord> members, int total, int offset) {
+            this.members = Collections.unmodifiableList(members);
+            this.total = total;
+            this.offset = offset;
+        }
+
+        /**
+         * @return The page's members, best matches first.
+         */
+        public List<ClubberRecord> getMembers() {
+            return members;
+        }
+
+        /**
+         * @return Number of matching members, in all pages.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return Rank of the page's first member, from 0.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return True if more matching members follow this page, false otherwise.
+         */
+        public boolean hasMore() {
+            return offset + members.size() < total;
+        }
+
+    } // Page - End of class definition.
+
+    /**
+     * Growable list of document numbers, in increasing order.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class IntList {
+
+        private int[] items = new int[4]; // The numbers.
+        private int size; // Number of numbers.
+
+        /**
+         * @param i Position.
+         * @return The number at the position.
+         */
+        int get(int i) {
+            return items[i];
+        }
+
+        /**
+         * Appends a number.
+         * @param n The number.
+         */
+        void add(int n) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = n;
+        }
+
+        /**
+         * Appends a number, unless it is already the last one.
+         * @param n The number, not less than the last one.
+         */
+        void addOnce(int n) {
+            if (size == 0 || items[size - 1] != n)
+                add(n);
+        }
+
+        /**
+         * @param other Another list.
+         * @return A new list of the numbers in both lists.
+         */
+        IntList intersect(IntList other) {
+            IntList both = new IntList();
+            for (int i = 0, j = 0; i < size && j < other.size; ) {
+                if (items[i] < other.items[j])
+                    i++;
+                else if (items[i] > other.items[j])
+                    j++;
+                else {
+                    both.add(items[i]);
+                    i++;
+                    j++;
+                }
+            }
+            return both;
+        }
+
+    } // IntList - End of class definition.
+
+} // ClubberSearchIndex - End of class definition.
@@ -0,0 +1,153 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * The clubbers repository together with the store it is persisted in.
+ * Configured by system properties, so the application and the command line tools agree:
+ * "bk.file" - the data file (default BKCustomers.dat),
+ * "bk.store" - "snapshot" (default) to rewrite the file on every save,
+ * "journal" to append every commit to a write-ahead journal,
+ * "sharded" to split the members into shard files loaded in parallel,
+ * or "lazy" to read members from the file only when needed.
+ * For a journal, "bk.fsync" - "always" (default), "interval" or "never",
+ * "bk.fsync.interval" - milliseconds between interval forces (default 1000), and
+ * "bk.compact.threshold" - journal entries that trigger a compaction (default 10000).
+ * For sharded mode, "bk.shards" - number of shard files (default 16).
+ * For lazy mode, "bk.cache.size" - maximal number of members kept in memory (default 10000).
+ * With "bk.replication.port" set, the store also ships committed changes to replicas connecting on that port
+ * (see {@link ReplicationPrimary}), keeping "bk.replication.backlog" recent changes for them (default 100000),
+ * and listening on the address "bk.replication.bind" (default the loopback address, "0.0.0.0" for all addresses).
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class ClubberStorage {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final String DEFAULT_FILE = "BKCustomers.dat"; // Default data file.
+
+    private final File file; // The data file.
+    private final ClubberRepository repository; // The clubbers repository.
+    private final ClubberStore store; // The store of the repository.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 3 Parameters.
+     * @param file The data file.
+     * @param repository The clubbers repository.
+     * @param store The store of the repository.
+     */
+    public ClubberStorage(File file, ClubberRepository repository, ClubberStore store) {
+        this.file = file;
+        this.repository = repository;
+        this.store = store;
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Creates the repository and store configured by the system properties.
+     * Nothing is loaded yet.
+     * @return The configured storage.
+     */
+    public static ClubberStorage fromSystemProperties() {
+        ClubberStorage storage = fromFileProperties();
+        Integer replicationPort = Integer.getInteger("bk.replication.port");
+        if (replicationPort == null)
+            return storage;
+        String bind = System.getProperty("bk.replication.bind");
+        InetAddress bindAddress;
+        try {
+            bindAddress = (bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind));
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown replication address: " + bind, e);
+        }
+        return new ClubberStorage(storage.file, storage.repository, new ReplicationPrimary(storage.store, replicationPort,
+                bindAddress, Integer.getInteger("bk.replication.backlog", 100000)));
+    }
+
+    /**
+     * Creates the repository and store of the data file configured by the system properties, without replication.
+     * Used by the command line tools, which must not listen as a primary.
+     * @return The configured storage.
+     */
+    static ClubberStorage fromFileProperties() {
+        File file = new File(System.getProperty("bk.file", DEFAULT_FILE));
+        String mode = System.getProperty("bk.store", "snapshot");
+        if ("lazy".equals(mode)) {
+            LazyClubberRepository lazyClubbers = new LazyClubberRepository(file, Integer.getInteger("bk.cache.size", 10000));
+            return new ClubberStorage(file, lazyClubbers, new LazyClubberStore(lazyClubbers));
+        }
+        if ("journal".equals(mode))
+            return new ClubberStorage(file, new InMemoryClubberRepository(), new JournalClubberStore(file,
+                    JournalClubberStore.FsyncPolicy.valueOf(System.getProperty("bk.fsync", "always").toUpperCase()),
+                    Long.getLong("bk.fsync.interval", 1000),
+                    Integer.getInteger("bk.compact.threshold", 10000)));
+        if ("sharded".equals(mode))
+            return new ClubberStorage(file, new InMemoryClubberRepository(),
+                    new ShardedClubberStore(file, Integer.getInteger("bk.shards", 16)));
+        return new ClubberStorage(file, new InMemoryClubberRepository(), new SnapshotClubberStore(file));
+    }
+
+    /**
+     * Streams the members of a saved data file, as the store configured by "bk.store" keeps it:
+     * it's shard files in sharded mode (see {@link ShardedClubberStore#readShards(File, LegacyClubberReader.Sink)}),
+     * the data file itself otherwise. Changes still only in a journal (see {@link JournalClubberStore}) are not read.
+     * @param file The data file.
+     * @param sink Receives the members.
+     * @throws IOException If a file cannot be read, or the sink fails.
+     */
+    public static void readDataFile(File file, LegacyClubberReader.Sink sink) throws IOException {
+        if ("sharded".equals(System.getProperty("bk.store", "snapshot")))
+            ShardedClubberStore.readShards(file, sink);
+        else
+            readFile(file, sink);
+    }
+
+    /**
+     * Streams the members of a single file, if it exists. Files in {@link ClubberFileFormat} are read through
+     * mapped windows, and files serialized by older versions through {@link LegacyClubberReader},
+     * so memory doesn't depend on their size.
+     * @param file The file.
+     * @param sink Receives the members.
+     * @throws IOException If the file cannot be read, or the sink fails.
+     */
+    static void readFile(File file, LegacyClubberReader.Sink sink) throws IOException {
+        if (!file.exists())
+            return; // Nothing saved yet.
+        if (!ClubberFileFormat.isFormatOf(file)) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+                new LegacyClubberReader(in).read(sink);
+            }
+            return;
+        }
+        try (ClubberFileFormat.Reader reader = new ClubberFileFormat.Reader(file)) {
+            while (reader.next())
+                sink.accept(reader.record());
+        }
+    }
+
+    /**
+     * @return The data file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The clubbers repository.
+     */
+    public ClubberRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * @return The store of the repository.
+     */
+    public ClubberStore getStore() {
+        return store;
+    }
+
+} // ClubberStorage - End of class definition.
@@ -0,0 +1,59 @@
+import java.io.IOException;
+
+/**
+ * Interface for the persistent storage of the clubbers repository.
+ * The club manager loads the repository from a store at startup, tells the store about every
+ * committed change and asks it to save when data must be made durable.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public interface ClubberStore {
+
+    /**
+     * Loads all the stored members into the given repository.
+     * A store that doesn't exist yet (first run) loads nothing.
+     * @param repository The repository to load the members into.
+     * @throws IOException If the stored data cannot be read.
+     */
+    void load(ClubberRepository repository) throws IOException;
+
+    /**
+     * Called after a member's data was committed to the repository.
+     * Changes must reach the store in the order the repository took them, as they are replayed in that order:
+     * callers committing from several threads hold one lock across the change to the repository and this call.
+     * @param old The member's data before the commit, null for a new member.
+     * @param updated The member's committed data.
+     * @throws IOException If the change cannot be stored.
+     */
+    void committed(ClubberRecord old, ClubberRecord updated) throws IOException;
+
+    /**
+     * Makes all the committed members durable.
+     * @param repository The repository holding the members.
+     * @throws IOException If the members cannot be written.
+     */
+    void save(ClubberRepository repository) throws IOException;
+
+    /**
+     * Rewrites all the members in the most compact form of the store: files in the current format,
+     * holding every member once and no change still to be replayed. Returns once they are written.
+     * Should be called by the thread committing changes.
+     * @param repository The repository holding the members.
+     * @throws IOException If the members cannot be written.
+     */
+    void compact(ClubberRepository repository) throws IOException;
+
+    /**
+     * Reports a background save that failed since the last one was reported, for stores saving in the background.
+     * Called while nothing is left to save, so the members can be saved again.
+     * @throws IOException If a background save failed.
+     */
+    default void checkSaved() throws IOException {
+    }
+
+    /**
+     * Releases the resources held by the store. Called when the application exits.
+     * @throws IOException If pending data cannot be written.
+     */
+    void close() throws IOException;
+
+} // ClubberStore - End of interface definition.
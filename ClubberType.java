@@ -0,0 +1,48 @@
+/**
+ * The types of members the club keeps.
+ * Each type has it's own editor frame: {@link Person}, {@link Soldier} or {@link Student}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public enum ClubberType {
+
+    PERSON("Person"),
+    SOLDIER("Soldier"),
+    STUDENT("Student");
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final String displayName; // Name of the type as shown to the club's staff.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * @param displayName Name of the type as shown to the club's staff.
+     */
+    ClubberType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Returns the name of this type as shown to the club's staff.
+     * @return The display name of this type.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Finds the type with given display name.
+     * @param displayName The display name of the type, such as "Soldier".
+     * @return The matching type, or {@link #PERSON} if no type has this name.
+     */
+    public static ClubberType fromDisplayName(String displayName) {
+        for (ClubberType type : values())
+            if (type.displayName.equals(displayName))
+                return type;
+        return PERSON;
+    }
+
+} // ClubberType - End of enum definition.
@@ -0,0 +1,276 @@
+/**
+ * Validation rules of the clubbers' fields.
+ * The rules of every member type are set up once, and each field format is checked
+ * character by character, so validating allocates nothing. Used by the editor frames
+ * as well as by bulk paths which validate many records.
+ * The formats are:
+ * ID - {@code \d-\d{7}[|][1-9]},
+ * name - {@code [A-Z][a-z]+},
+ * surname - {@code ([A-Z][a-z]*['-]?)+},
+ * telephone - {@code \+[(][1-9]\d{0,2}[)][1-9]\d{0,2}-[1-9]\d{6}},
+ * personal number - {@code [ROC]/[1-9]\d{6}},
+ * student ID - {@code [A-Z]{3}/[1-9]\d{4}}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class ClubberValidator {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final Field[] PERSON_RULES = { Field.ID, Field.NAME, Field.SURNAME, Field.TEL };
+    private static final Field[] SOLDIER_RULES = { Field.ID, Field.NAME, Field.SURNAME, Field.TEL, Field.PERSONAL_NUM };
+    private static final Field[] STUDENT_RULES = { Field.ID, Field.NAME, Field.SURNAME, Field.TEL, Field.STUDENT_ID };
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Private constructor - utility class.
+     */
+    private ClubberValidator() {
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Returns the fields validated for a member type, in validation order.
+     * The returned array is shared and must not be changed.
+     * @param type The member type.
+     * @return The fields of the type.
+     */
+    public static Field[] rules(ClubberType type) {
+        switch (type) {
+            case SOLDIER:
+                return SOLDIER_RULES;
+            case STUDENT:
+                return STUDENT_RULES;
+            default:
+                return PERSON_RULES;
+        }
+    }
+
+    /**
+     * Finds the first field of a member that fails validation.
+     * @param type The member type.
+     * @param id Member's ID number.
+     * @param name Member's first name.
+     * @param surname Member's last name.
+     * @param tel Member's telephone number.
+     * @param credential Soldier's personal number or student's id. Ignored for a person.
+     * @return The first invalid field, or null if validation passed.
+     */
+    public static Field firstInvalid(ClubberType type, CharSequence id, CharSequence name, CharSequence surname, CharSequence tel, CharSequence credential) {
+        long start = ClubMetrics.VALIDATION.start();
+        try {
+            return firstInvalidField(type, id, name, surname, tel, credential);
+        }
+        finally {
+            ClubMetrics.VALIDATION.stop(start);
+        }
+    }
+
+    /**
+     * Finds the first field of a member that fails validation, without measuring it.
+     * @param type Type of member, which sets the fields to validate.
+     * @param id Member's id.
+     * @param name Member's first name.
+     * @param surname Member's last name.
+     * @param tel Member's telephone number.
+     * @param credential Soldier's personal number or student's id. Ignored for a person.
+     * @return The first invalid field, or null if validation passed.
+     */
+    private static Field firstInvalidField(ClubberType type, CharSequence id, CharSequence name, CharSequence surname, CharSequence tel, CharSequence credential) {
+        for (Field field : rules(type)) {
+            CharSequence value;
+            switch (field) {
+                case ID:      value = id;      break;
+                case NAME:    value = name;    break;
+                case SURNAME: value = surname; break;
+                case TEL:     value = tel;     break;
+                default:      value = credential;
+            }
+            if (!isValid(field, value)) {
+                ClubMetrics.countValidationFailure();
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first field of a record that fails validation.
+     * @param record The member's record.
+     * @return The first invalid field, or null if validation passed.
+     */
+    public static Field firstInvalid(ClubberRecord record) {
+        String credential = (record.getType() == ClubberType.SOLDIER ? record.getPersonalNum() : record.getStudentId());
+        return firstInvalid(record.getType(), record.getId(), record.getName(), record.getSurname(), record.getTel(), credential);
+    }
+
+    /**
+     * Validates a single field.
+     * @param field The field.
+     * @param s The field's value, null is invalid.
+     * @return True if the value is valid for the field, false otherwise.
+     */
+    public static boolean isValid(Field field, CharSequence s) {
+        if (s == null)
+            return false;
+        switch (field) {
+            case ID:
+                return isValidId(s);
+            case NAME:
+                return isValidName(s);
+            case SURNAME:
+                return isValidSurname(s);
+            case TEL:
+                return isValidTel(s);
+            case PERSONAL_NUM:
+                return isValidPersonalNum(s);
+            default:
+                return isValidStudentId(s);
+        }
+    }
+
+    /**
+     * Checks an ID number: {@code \d-\d{7}[|][1-9]}.
+     * @param s The ID number.
+     * @return True if valid, false otherwise.
+     */
+    private static boolean isValidId(CharSequence s) {
+        return s.length() == 11 && isDigit(s.charAt(0)) && s.charAt(1) == '-' && digits(s, 2, 9)
+                && s.charAt(9) == '|' && isNonZeroDigit(s.charAt(10));
+    }
+
+    /**
+     * Checks a first name: {@code [A-Z][a-z]+}.
+     * @param s The name.
+     * @return True if valid, false otherwise.
+     */
+    private static boolean isValidName(CharSequence s) {
+        if (s.length() < 2 || !isUpper(s.charAt(0)))
+            return false;
+        for (int i = 1; i < s.length(); i++)
+            if (!isLower(s.charAt(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Checks a last name: {@code ([A-Z][a-z]*['-]?)+}.
+     * That is, capitalized parts, each optionally followed by an apostrophe or hyphen.
+     * @param s The surname.
+     * @return True if valid, false otherwise.
+     */
+    private static boolean isValidSurname(CharSequence s) {
+        int n = s.length(), i = 0;
+        if (n == 0)
+            return false;
+        while (i < n) {
+            if (!isUpper(s.charAt(i++))) // Every part starts with a capital letter.
+                return false;
+            while (i < n && isLower(s.charAt(i)))
+                i++;
+            if (i < n && (s.charAt(i) == '\'' || s.charAt(i) == '-'))
+                i++;
+        }
+        return true;
+    }
+
+    /**
+     * Checks a telephone number: {@code \+[(][1-9]\d{0,2}[)][1-9]\d{0,2}-[1-9]\d{6}}.
+     * @param s The telephone number.
+     * @return True if valid, false otherwise.
+     */
+    private static boolean isValidTel(CharSequence s) {
+        int n = s.length();
+        if (n < 13 || s.charAt(0) != '+' || s.charAt(1) != '(')
+            return false;
+        int i = numberEnd(s, 2, 3); // Country code.
+        if (i < 0 || i >= n || s.charAt(i) != ')')
+            return false;
+        i = numberEnd(s, i + 1, 3); // Area code.
+        if (i < 0 || i >= n || s.charAt(i) != '-')
+            return false;
+        i++;
+        return n - i == 7 && isNonZeroDigit(s.charAt(i)) && digits(s, i + 1, n); // Subscriber number.
+    }
+
+    /**
+     * Checks a soldier's personal number: {@code [ROC]/[1-9]\d{6}}.
+     * @param s The personal number.
+     * @return True if valid, false otherwise.
+     */
+    private static boolean isValidPersonalNum(CharSequence s) {
+        if (s.length() != 9)
+            return false;
+        char c = s.charAt(0);
+        return (c == 'R' || c == 'O' || c == 'C') && s.charAt(1) == '/' && isNonZeroDigit(s.charAt(2)) && digits(s, 3, 9);
+    }
+
+    /**
+     * Checks a student's id: {@code [A-Z]{3}/[1-9]\d{4}}.
+     * @param s The student id.
+     * @return True if valid, false otherwise.
+     */
+    private static boolean isValidStudentId(CharSequence s) {
+        return s.length() == 9 && isUpper(s.charAt(0)) && isUpper(s.charAt(1)) && isUpper(s.charAt(2))
+                && s.charAt(3) == '/' && isNonZeroDigit(s.charAt(4)) && digits(s, 5, 9);
+    }
+
+    /**
+     * Finds the end of a number of 1 to max digits that doesn't start with zero.
+     * @param s The checked string.
+     * @param start Index of the number's first digit.
+     * @param max Maximal number of digits.
+     * @return The index after the number's last digit, or -1 if there is no such number.
+     */
+    private static int numberEnd(CharSequence s, int start, int max) {
+        if (start >= s.length() || !isNonZeroDigit(s.charAt(start)))
+            return -1;
+        int i = start + 1;
+        while (i < s.length() && i - start < max && isDigit(s.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /**
+     * @return True if all characters in [from, to) are digits.
+     */
+    private static boolean digits(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (!isDigit(s.charAt(i)))
+                return false;
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNonZeroDigit(char c) {
+        return c >= '1' && c <= '9';
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * The validated fields of a member.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public enum Field {
+        ID,
+        NAME,
+        SURNAME,
+        TEL,
+        PERSONAL_NUM,
+        STUDENT_ID
+    }
+
+} // ClubberValidator - End of class definition.
@@ -0,0 +1,99 @@
+/**
+ * The kinds of identification credentials a member can be matched by.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public enum CredentialKind {
+
+    NATIONAL_ID,     // Every member's ID number.
+    PERSONAL_NUMBER, // A soldier's personal number.
+    STUDENT_NUMBER;  // The number part of a student's id.
+
+    public static final long PERSONAL_NUMBER_BASE = 1000000000L; // Code of the first personal number, above all ID numbers.
+    public static final long STUDENT_NUMBER_BASE = 1030000000L; // Code of the first student number, above all personal numbers.
+    private static final String PERSONAL_NUMBER_LETTERS = "ROC"; // Letters a personal number may start with.
+
+    /**
+     * Guesses the kind of a credential by it's format, without looking it up.
+     * ID numbers hold a hyphen, personal numbers a slash, and student numbers only digits.
+     * @param key The credential.
+     * @return The kind the credential would be, or null if it fits no kind.
+     */
+    public static CredentialKind of(String key) {
+        if (key.indexOf('-') >= 0)
+            return NATIONAL_ID;
+        if (key.indexOf('/') >= 0)
+            return PERSONAL_NUMBER;
+        if (key.isEmpty())
+            return null;
+        for (int i = 0; i < key.length(); i++)
+            if (key.charAt(i) < '0' || key.charAt(i) > '9')
+                return null;
+        return STUDENT_NUMBER;
+    }
+
+    /**
+     * Encodes a credential of the exact width of it's kind as a number, so it can be indexed without a string.
+     * Every such credential gets a different number below 2^31: ID numbers ({@code d-ddddddd|d}) their nine digits,
+     * personal numbers ({@code [ROC]/ddddddd}) the digits after {@link #PERSONAL_NUMBER_BASE} plus ten million
+     * per letter, and student numbers ({@code ddddd}) the digits after {@link #STUDENT_NUMBER_BASE}.
+     * @param key The credential.
+     * @return The credential's code, or -1 if the credential has some other format.
+     */
+    public static long encode(String key) {
+        switch (key.length()) {
+            case 11: // ID number.
+                if (key.charAt(1) != '-' || key.charAt(9) != '|')
+                    return -1;
+                long middle = digits(key, 2, 9);
+                long ends = digits(key, 0, 1) * 10 + digits(key, 10, 11);
+                return (middle < 0 || ends < 0 ? -1 : ends / 10 * 100000000 + middle * 10 + ends % 10);
+            case 9: // Personal number.
+                int letter = PERSONAL_NUMBER_LETTERS.indexOf(key.charAt(0));
+                long number = digits(key, 2, 9);
+                if (letter < 0 || key.charAt(1) != '/' || number < 0)
+                    return -1;
+                return PERSONAL_NUMBER_BASE + letter * 10000000L + number;
+            case 5: // Student number.
+                long studentNumber = digits(key, 0, 5);
+                return (studentNumber < 0 ? -1 : STUDENT_NUMBER_BASE + studentNumber);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Decodes the code of a credential, as returned by {@link #encode(String)}.
+     * @param code The credential's code.
+     * @return The credential.
+     * @throws IllegalArgumentException If the number is no credential's code.
+     */
+    public static String decode(long code) {
+        if (code < 0 || code >= STUDENT_NUMBER_BASE + 100000)
+            throw new IllegalArgumentException("Not a credential code: " + code);
+        if (code < PERSONAL_NUMBER_BASE)
+            return String.format("%d-%07d|%d", code / 100000000, code / 10 % 10000000, code % 10);
+        if (code < STUDENT_NUMBER_BASE)
+            return String.format("%c/%07d", PERSONAL_NUMBER_LETTERS.charAt((int)((code - PERSONAL_NUMBER_BASE) / 10000000)),
+                    (code - PERSONAL_NUMBER_BASE) % 10000000);
+        return String.format("%05d", code - STUDENT_NUMBER_BASE);
+    }
+
+    /**
+     * Reads a number, checking all the digits at once rather than one by one.
+     * @param key A credential.
+     * @param from Index of the first character.
+     * @param to Index after the last character.
+     * @return The number written by the characters, or -1 if one of them isn't a digit.
+     */
+    private static long digits(String key, int from, int to) {
+        long number = 0;
+        int outOfRange = 0; // Negative once a character isn't a digit.
+        for (int i = from; i < to; i++) {
+            int digit = key.charAt(i) - '0';
+            outOfRange |= digit | (9 - digit);
+            number = number * 10 + digit;
+        }
+        return (outOfRange < 0 ? -1 : number);
+    }
+
+} // CredentialKind - End of enum definition.
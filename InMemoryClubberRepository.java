@@ -0,0 +1,227 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe repository that keeps all the members in memory.
+ * Members are kept in slots and indexed by their credentials with a {@link ClubberIndex}.
+ * Lookups take no lock, so they scale across door terminals. Adding and replacing members
+ * claim their credentials atomically, and slot writes are ordered by striped locks.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class InMemoryClubberRepository implements ClubberRepository {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int CHUNK_BITS = 12; // Slots are allocated in chunks of 2^CHUNK_BITS.
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int STRIPES = 64; // Number of locks ordering slot writes.
+
+    private volatile AtomicReferenceArray<ClubberIndex.Entry>[] chunks; // Members' entries, by slot.
+    private final AtomicInteger nextSlot; // The next free slot.
+    private final AtomicInteger size; // Number of members.
+    private final LongAdder[] typeCounts; // Number of members of each type, by ordinal.
+    private final Object[] stripes; // Locks ordering the writes of a slot.
+    private final ClubberIndex index; // Credential to member index.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - Parameterless.
+     * Creates an empty repository.
+     */
+    public InMemoryClubberRepository() {
+        chunks = newChunks(16);
+        nextSlot = new AtomicInteger();
+        size = new AtomicInteger();
+        typeCounts = new LongAdder[ClubberType.values().length];
+        for (int i = 0; i < typeCounts.length; i++)
+            typeCounts[i] = new LongAdder();
+        stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Object();
+        index = new ClubberIndex(this::entry);
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param length Length of the array.
+     * @return A new array for slot chunks.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array creation.
+    private static AtomicReferenceArray<ClubberIndex.Entry>[] newChunks(int length) {
+        return new AtomicReferenceArray[length];
+    }
+
+    /**
+     * Returns the chunk holding a slot, allocating it if needed.
+     * @param slot The slot.
+     * @return The slot's chunk.
+     */
+    private AtomicReferenceArray<ClubberIndex.Entry> chunk(int slot) {
+        int c = slot >>> CHUNK_BITS;
+        AtomicReferenceArray<ClubberIndex.Entry>[] current = chunks;
+        if (c < current.length && current[c] != null)
+            return current[c];
+        synchronized (this) {
+            current = chunks;
+            if (c >= current.length) {
+                AtomicReferenceArray<ClubberIndex.Entry>[] grown = newChunks(Math.max(current.length * 2, c + 1));
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            if (current[c] == null)
+                current[c] = new AtomicReferenceArray<ClubberIndex.Entry>(1 << CHUNK_BITS);
+            chunks = current;
+            return current[c];
+        }
+    }
+
+    /**
+     * Returns the member in a slot.
+     * @param slot The slot.
+     * @return The member, or null if the slot is empty.
+     */
+    public ClubberRecord get(int slot) {
+        ClubberIndex.Entry entry = entry(slot);
+        return (entry == null ? null : entry.getRecord());
+    }
+
+    /**
+     * Returns the entry in a slot.
+     * @param slot The slot.
+     * @return The entry, or null if the slot is empty.
+     */
+    private ClubberIndex.Entry entry(int slot) {
+        AtomicReferenceArray<ClubberIndex.Entry>[] current = chunks;
+        int c = slot >>> CHUNK_BITS;
+        return (c < current.length && current[c] != null ? current[c].get(slot & CHUNK_MASK) : null);
+    }
+
+    /**
+     * @return The number of slots in use, including slots still being filled.
+     */
+    public int slotCount() {
+        return nextSlot.get();
+    }
+
+    /**
+     * Writes an entry to it's slot, unless the entry has meanwhile been replaced.
+     * @param entry The entry.
+     */
+    private void writeSlot(ClubberIndex.Entry entry) {
+        int slot = entry.getSlot();
+        synchronized (stripes[slot % STRIPES]) {
+            if (!entry.isRetired())
+                chunk(slot).set(slot & CHUNK_MASK, entry);
+        }
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int count(ClubberType type) {
+        return typeCounts[type.ordinal()].intValue();
+    }
+
+    @Override
+    public ClubberRecord find(String key) {
+        ClubberIndex.Entry entry = index.get(key);
+        return (entry == null ? null : entry.getRecord());
+    }
+
+    @Override
+    public boolean duplicateKeyCheck(String key, ClubberRecord owner) {
+        ClubberRecord clubber = find(key);
+        return clubber != null && clubber != owner;
+    }
+
+    @Override
+    public boolean add(ClubberRecord clubber) {
+        int slot = nextSlot.getAndIncrement();
+        ClubberIndex.Entry entry = new ClubberIndex.Entry(clubber, slot);
+        if (!index.claim(entry, null)) {
+            nextSlot.compareAndSet(slot + 1, slot); // Give the slot back, unless a later one was taken.
+            return false;
+        }
+        writeSlot(entry);
+        size.incrementAndGet();
+        typeCounts[clubber.getType().ordinal()].increment();
+        return true;
+    }
+
+    @Override
+    public boolean replace(ClubberRecord old, ClubberRecord updated) {
+        ClubberIndex.Entry previous = index.get(old.getId());
+        if (previous == null || previous.getRecord() != old)
+            return false; // Changed meanwhile.
+        ClubberIndex.Entry entry = new ClubberIndex.Entry(updated, previous.getSlot());
+        if (!index.claim(entry, previous))
+            return false;
+        writeSlot(entry);
+        if (old.getType() != updated.getType()) {
+            typeCounts[old.getType().ordinal()].decrement();
+            typeCounts[updated.getType().ordinal()].increment();
+        }
+        return true;
+    }
+
+    /**
+     * Must not be called while other threads use the repository.
+     */
+    @Override
+    public synchronized void clear() {
+        index.clear();
+        chunks = newChunks(16);
+        nextSlot.set(0);
+        size.set(0);
+        for (LongAdder count : typeCounts)
+            count.reset();
+    }
+
+    /**
+     * @return A read-only iterator over the members, by slot.
+     * Members added or replaced during the iteration may or may not be seen.
+     */
+    @Override
+    public Iterator<ClubberRecord> iterator() {
+        return new Iterator<ClubberRecord>() {
+
+            private final int end = nextSlot.get(); // Slots in use when the iteration started.
+            private int slot = -1; // Slot of the next member.
+
+            {
+                advance();
+            }
+
+            private void advance() {
+                do
+                    slot++;
+                while (slot < end && get(slot) == null);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < end;
+            }
+
+            @Override
+            public ClubberRecord next() {
+                if (slot >= end)
+                    throw new NoSuchElementException();
+                ClubberRecord current = get(slot);
+                advance();
+                return current;
+            }
+        };
+    }
+
+} // InMemoryClubberRepository - End of class definition.
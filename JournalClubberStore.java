@@ -0,0 +1,400 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Store that appends every committed change to a write-ahead journal,
+ * instead of rewriting the whole repository on every save.
+ * On load the snapshot file is read and the journal is replayed on top of it.
+ * Once the journal grows past a threshold it is compacted in the background:
+ * the journal is rotated, a new snapshot is written and the rotated journal is deleted.
+ * Each journal entry is length-prefixed, checksummed and numbered, so a torn entry left by a crash
+ * is dropped on replay and entries already folded into the snapshot are skipped.
+ * Records are encoded as in {@link ClubberFileFormat}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class JournalClubberStore implements ClubberStore {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final SnapshotClubberStore snapshot; // The snapshot the journal is replayed on.
+    private final File journalFile, rotatedFile; // Active journal, and journal being compacted.
+    private final FsyncPolicy fsyncPolicy; // When the journal is forced to disk.
+    private final int compactionThreshold; // Number of journal entries that triggers a compaction.
+    private final ScheduledExecutorService background; // Runs interval fsyncs and compactions.
+    private ClubberRepository repository; // The repository this store was loaded into.
+    private FileChannel journal; // Channel of the active journal.
+    private long sequence; // Sequence number of the last journaled change.
+    private int entries; // Number of entries in the active journal.
+    private volatile boolean compacting; // Is a compaction in progress?
+    private volatile IOException backgroundError; // Last error of a background task, reported on the next save.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 4 Parameters.
+     * @param snapshotFile The snapshot file.
+     * @param fsyncPolicy When the journal is forced to disk.
+     * @param fsyncIntervalMillis Interval between forces, for {@link FsyncPolicy#INTERVAL}.
+     * @param compactionThreshold Number of journal entries that triggers a compaction.
+     */
+    public JournalClubberStore(File snapshotFile, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, int compactionThreshold) {
+        this.snapshot = new SnapshotClubberStore(snapshotFile);
+        this.journalFile = new File(snapshotFile.getPath() + ".log");
+        this.rotatedFile = new File(snapshotFile.getPath() + ".log.old");
+        this.fsyncPolicy = fsyncPolicy;
+        this.compactionThreshold = compactionThreshold;
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BK journal");
+            t.setDaemon(true);
+            return t;
+        });
+        if (fsyncPolicy == FsyncPolicy.INTERVAL)
+            background.scheduleWithFixedDelay(this::force, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Replays a journal file on the repository.
+     * Entries already included in the snapshot are skipped.
+     * Replay stops at the first torn or corrupted entry.
+     * @param file The journal file.
+     * @param fromSequence Sequence number of the last change included in the snapshot.
+     * @return The length of the valid part of the journal.
+     * @throws IOException If the journal cannot be read.
+     */
+    private long replay(File file, long fromSequence) throws IOException {
+        if (!file.exists())
+            return 0;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > file.length())
+                        break; // Corrupted length.
+                    payload = new byte[length];
+                    in.readFully(payload);
+                }
+                catch (EOFException e) {
+                    break; // End of journal, or an entry torn by a crash.
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int)crc.getValue() != checksum)
+                    break;
+                ByteBuffer entry = ByteBuffer.wrap(payload);
+                long entrySequence = entry.getLong();
+                String oldId = ClubberFileFormat.readString(entry);
+                ClubberRecord updated = ClubberFileFormat.readRecord(entry);
+                if (entrySequence > fromSequence) {
+                    if (!apply(repository, oldId, updated))
+                        ClubMetrics.error("Journal entry " + entrySequence + " of member " + updated.getId()
+                                + " conflicts with the loaded members and is skipped", null);
+                    sequence = Math.max(sequence, entrySequence);
+                }
+                valid += 8 + payload.length;
+                entries++;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Applies a journaled change to the repository, as well as a change shipped to a {@link ClubberReplica}.
+     * Applying a change the repository already holds leaves it as it is.
+     * @param repository The repository to change.
+     * @param oldId The member's id before the change, null for a new member.
+     * @param updated The member's committed data.
+     * @return True if the repository now holds the change, false if it was refused,
+     *         as when the repository diverged from the one the change was committed to.
+     */
+    static boolean apply(ClubberRepository repository, String oldId, ClubberRecord updated) {
+        ClubberRecord current = (oldId == null ? null : repository.find(oldId));
+        if (current != null ? repository.replace(current, updated) : repository.add(updated))
+            return true;
+        return sameData(repository.find(updated.getId()), updated);
+    }
+
+    /**
+     * @param a A member, may be null.
+     * @param b Another member.
+     * @return True if both members have the same data, false otherwise.
+     */
+    private static boolean sameData(ClubberRecord a, ClubberRecord b) {
+        return a != null && a.getType() == b.getType() && a.getId().equals(b.getId())
+                && Objects.equals(a.getName(), b.getName()) && Objects.equals(a.getSurname(), b.getSurname())
+                && Objects.equals(a.getTel(), b.getTel()) && Objects.equals(a.getPersonalNum(), b.getPersonalNum())
+                && Objects.equals(a.getStudentId(), b.getStudentId());
+    }
+
+    /**
+     * Opens the active journal for appending, dropping anything after it's valid part.
+     * @param validLength The length of the valid part of the journal.
+     * @throws IOException If the journal cannot be opened.
+     */
+    private void openJournal(long validLength) throws IOException {
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.truncate(validLength);
+        journal.position(validLength);
+    }
+
+    /**
+     * Forces the active journal to disk. Run periodically for {@link FsyncPolicy#INTERVAL}.
+     */
+    private synchronized void force() {
+        try {
+            if (journal != null && journal.isOpen())
+                journal.force(false);
+        }
+        catch (IOException e) {
+            ClubMetrics.error("Journal cannot be forced to disk", e);
+            backgroundError = e;
+        }
+    }
+
+    /**
+     * Starts a compaction if the journal grew past the threshold and no compaction is running.
+     * The journal is rotated right away, and a copy of the repository is written
+     * as the new snapshot in the background.
+     * @throws IOException If the journal cannot be rotated.
+     */
+    private synchronized void compactIfNeeded() throws IOException {
+        if (entries < compactionThreshold || compacting)
+            return;
+        final List<ClubberRecord> records = SnapshotClubberStore.copyOf(repository);
+        final long snapshotSequence = sequence;
+        rotateJournal();
+        compacting = true;
+        background.execute(() -> {
+            try {
+                writeSnapshot(records, snapshotSequence);
+            }
+            catch (IOException e) {
+                ClubMetrics.error("Journal cannot be compacted", e);
+                backgroundError = e;
+            }
+            finally {
+                compacting = false;
+            }
+        });
+    }
+
+    /**
+     * Moves the active journal aside and starts a new, empty one.
+     * If a journal moved aside before is still there, as when it's snapshot could not be written,
+     * the active journal is appended to it instead, so the changes no snapshot holds yet stay on disk.
+     * @throws IOException If the journal cannot be rotated.
+     */
+    private synchronized void rotateJournal() throws IOException {
+        journal.force(false);
+        if (rotatedFile.exists()) {
+            appendToRotated();
+            journal.truncate(0);
+            journal.position(0);
+            journal.force(false);
+            entries = 0;
+            return;
+        }
+        journal.close();
+        Files.move(journalFile.toPath(), rotatedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        entries = 0;
+        openJournal(0);
+    }
+
+    /**
+     * Appends the active journal to the rotated journal and forces it to disk.
+     * If the append fails, the rotated journal is cut back to it's former length. The monitor must be held.
+     * @throws IOException If the journal cannot be appended.
+     */
+    private void appendToRotated() throws IOException {
+        try (FileChannel rotated = FileChannel.open(rotatedFile.toPath(), StandardOpenOption.WRITE);
+             FileChannel active = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+            long former = rotated.size();
+            try {
+                long length = active.size();
+                for (long copied = 0; copied < length; )
+                    copied += active.transferTo(copied, length - copied, rotated.position(former + copied));
+                rotated.force(false);
+            }
+            catch (IOException e) {
+                rotated.truncate(former);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes a new snapshot through a temporary file which then atomically replaces the old one,
+     * and deletes the rotated journal which is now included in the snapshot.
+     * @param records The members to be written.
+     * @param snapshotSequence The sequence number of the last change included in the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private void writeSnapshot(Iterable<ClubberRecord> records, long snapshotSequence) throws IOException {
+        SnapshotClubberStore.replaceSnapshot(records, snapshotSequence, snapshot.getFile());
+        Files.deleteIfExists(rotatedFile.toPath());
+    }
+
+    /**
+     * Reads the snapshot, replays the journals and finishes an interrupted compaction.
+     * @param repository The repository to load the members into.
+     * @throws IOException If the snapshot or a journal cannot be read.
+     */
+    private void replayAll(ClubberRepository repository) throws IOException {
+        this.repository = repository;
+        long snapshotSequence = snapshot.readSnapshot(repository);
+        sequence = snapshotSequence;
+        boolean interrupted = rotatedFile.exists();
+        replay(rotatedFile, snapshotSequence);
+        entries = 0;
+        openJournal(replay(journalFile, snapshotSequence));
+        if (interrupted) // Finish the interrupted compaction before going on. The active journal's entries are then skipped.
+            writeSnapshot(repository, sequence);
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    /**
+     * Reads the snapshot, then replays the rotated journal (left by an interrupted compaction)
+     * and the active journal on top of it.
+     */
+    @Override
+    public void load(ClubberRepository repository) throws IOException {
+        long start = ClubMetrics.LOAD.start();
+        try {
+            replayAll(repository);
+        }
+        finally {
+            ClubMetrics.LOAD.stop(start);
+        }
+    }
+
+    /**
+     * Appends the change to the journal, and forces it to disk if the policy says so.
+     * The change is numbered, written and counted under the store's lock, so concurrent commits
+     * get distinct numbers in the order of their entries. That order is the repository's only if
+     * the caller holds one lock across the change and this call (see {@link ClubberStore#committed}).
+     */
+    @Override
+    public void committed(ClubberRecord old, ClubberRecord updated) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ClubberFileFormat.writeString(out, (old == null ? null : old.getId()));
+        ClubberFileFormat.writeRecord(out, updated);
+        byte[] change = bytes.toByteArray();
+        ByteBuffer entry = ByteBuffer.allocate(16 + change.length);
+        synchronized (this) {
+            entry.putInt(8 + change.length).putInt(0).putLong(sequence + 1).put(change);
+            CRC32 crc = new CRC32();
+            crc.update(entry.array(), 8, 8 + change.length);
+            entry.putInt(4, (int)crc.getValue()).flip();
+            while (entry.hasRemaining())
+                journal.write(entry);
+            ClubMetrics.countBytesWritten(entry.limit());
+            if (fsyncPolicy == FsyncPolicy.ALWAYS)
+                journal.force(false);
+            sequence++;
+            entries++;
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Changes are already in the journal, so saving only forces it to disk.
+     */
+    @Override
+    public void save(ClubberRepository repository) throws IOException {
+        IOException error = backgroundError;
+        backgroundError = null;
+        if (error != null)
+            throw error;
+        long start = ClubMetrics.SAVE.start();
+        synchronized (this) {
+            journal.force(false);
+        }
+        ClubMetrics.SAVE.stop(start);
+    }
+
+    /**
+     * Waits for a running compaction, then rotates the journal and writes a new snapshot right away.
+     */
+    @Override
+    public void compact(ClubberRepository repository) throws IOException {
+        List<ClubberRecord> records = null;
+        long snapshotSequence = 0;
+        while (records == null) {
+            try {
+                background.submit(() -> { }).get(); // Let a running compaction finish.
+            }
+            catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compacting");
+            }
+            synchronized (this) {
+                if (compacting)
+                    continue; // Another compaction started meanwhile.
+                records = SnapshotClubberStore.copyOf(repository);
+                snapshotSequence = sequence;
+                rotateJournal();
+                compacting = true; // No other rotation until the rotated journal is in a snapshot.
+            }
+        }
+        try {
+            writeSnapshot(records, snapshotSequence);
+        }
+        finally {
+            compacting = false;
+        }
+    }
+
+    /**
+     * Stops background work and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES); // Let a running compaction finish.
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (journal != null && journal.isOpen()) {
+                journal.force(false);
+                journal.close();
+            }
+        }
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Policies for forcing the journal to disk.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public enum FsyncPolicy {
+        ALWAYS,   // Force after every committed change.
+        INTERVAL, // Force periodically in the background.
+        NEVER     // Leave it to the operating system.
+    }
+
+} // JournalClubberStore - End of class definition.
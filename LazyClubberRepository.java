@@ -0,0 +1,340 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repository that reads members from a {@link ClubberFileFormat} file on demand.
+ * Opening the repository only builds an index from every credential to the offset of it's record
+ * in the file. Records are read from the file when they are looked up, and kept in a cache
+ * of bounded size from which the least recently used records are evicted.
+ * Members committed since the file was opened are kept in memory until the next {@link #rewrite()}.
+ * A {@link ClubberBloomFilter} over all the credentials, rebuilt when the file is opened or rewritten
+ * and updated by commits, answers most lookups of credentials that belong to no member, such as
+ * duplicate checks of new members, without taking the lock or looking at the index.
+ * Access to the index and the cache is synchronized.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class LazyClubberRepository implements ClubberRepository {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final File file; // The data file.
+    private final int cacheSize; // Maximal number of file records kept in memory.
+    private final HashMap<String, Long> offsets; // Credential to offset of it's record in the file.
+    private final Set<Long> replaced; // Offsets of file records replaced by committed members.
+    private final LinkedHashMap<Long, ClubberRecord> cache; // Recently read file records, by offset.
+    private final InMemoryClubberRepository committed; // Members committed since the file was opened.
+    private volatile ClubberBloomFilter filter; // Filter over the credentials of all the members, null while none is built.
+    private ClubberFileFormat.Reader reader; // Reader of the data file, null if there is no file.
+    private int fileCount; // Number of records in the data file.
+    private final int[] fileTypeCounts; // Number of records of each type in the data file, by ordinal.
+    private final int[] replacedTypeCounts; // Number of replaced file records of each type, by ordinal.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * Creates an empty repository, see {@link #open()} for reading the file.
+     * @param file The data file.
+     * @param cacheSize Maximal number of file records kept in memory.
+     */
+    public LazyClubberRepository(File file, final int cacheSize) {
+        this.file = file;
+        this.cacheSize = cacheSize;
+        offsets = new HashMap<String, Long>();
+        replaced = ConcurrentHashMap.newKeySet(); // Also read by iterators.
+        cache = new LinkedHashMap<Long, ClubberRecord>(16, 0.75f, true) { // Access order, for LRU eviction.
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ClubberRecord> eldest) {
+                return size() > LazyClubberRepository.this.cacheSize;
+            }
+        };
+        committed = new InMemoryClubberRepository();
+        fileTypeCounts = new int[ClubberType.values().length];
+        replacedTypeCounts = new int[fileTypeCounts.length];
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Opens the data file and indexes the credentials of it's records.
+     * A file in the serialized format of older versions is loaded into memory instead,
+     * and is converted on the next {@link #rewrite()}, keeping a copy of the old file
+     * (see {@link SnapshotClubberStore#keepLegacyCopy(File)}).
+     * @throws IOException If the file cannot be read.
+     */
+    public synchronized void open() throws IOException {
+        clear();
+        if (!file.exists())
+            return; // If first run, file shouldn't exist anyway.
+        if (!ClubberFileFormat.isFormatOf(file)) {
+            SnapshotClubberStore.keepLegacyCopy(file);
+            SnapshotClubberStore.readSerializedSnapshot(file, committed);
+            ClubberBloomFilter newFilter = new ClubberBloomFilter(2L * committed.size());
+            for (ClubberRecord record : committed)
+                addKeys(newFilter, record);
+            filter = newFilter;
+            return;
+        }
+        try (ClubberFileFormat.Reader scan = new ClubberFileFormat.Reader(file)) { // Members seen only for their keys stay out of the shared dictionary.
+            fileCount = scan.getCount();
+            ClubberBloomFilter newFilter = new ClubberBloomFilter(2L * fileCount);
+            while (scan.next()) {
+                Long offset = scan.offset();
+                ClubberRecord record = scan.record();
+                for (String key : record.keys())
+                    offsets.put(key, offset);
+                addKeys(newFilter, record);
+                fileTypeCounts[record.getType().ordinal()]++;
+            }
+            filter = newFilter;
+        }
+        reader = new ClubberFileFormat.Reader(file, ClubberDictionary.SHARED);
+    }
+
+    /**
+     * Writes all the members to a new data file which then atomically replaces the old one,
+     * and reopens the repository on it. The committed members are moved from memory to the file.
+     * Nothing is written if no member was committed since the file was opened.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void rewrite() throws IOException {
+        if (committed.size() == 0)
+            return;
+        File temp = new File(file.getPath() + ".tmp");
+        HashMap<String, Long> newOffsets = new HashMap<String, Long>();
+        ClubberBloomFilter newFilter = new ClubberBloomFilter(2L * size()); // Drops credentials of replaced members.
+        int count = 0;
+        int[] typeCounts = new int[fileTypeCounts.length];
+        try (ClubberFileFormat.Writer writer = new ClubberFileFormat.Writer(temp, 0)) {
+            for (ClubberRecord record : this) {
+                Long offset = writer.append(record);
+                for (String key : record.keys())
+                    newOffsets.put(key, offset);
+                addKeys(newFilter, record);
+                typeCounts[record.getType().ordinal()]++;
+                count++;
+            }
+        }
+        closeReader();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        clear();
+        offsets.putAll(newOffsets);
+        filter = newFilter;
+        fileCount = count;
+        System.arraycopy(typeCounts, 0, fileTypeCounts, 0, typeCounts.length);
+        reader = new ClubberFileFormat.Reader(file, ClubberDictionary.SHARED);
+    }
+
+    /**
+     * Closes the data file.
+     * @throws IOException If the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        closeReader();
+    }
+
+    /**
+     * @return The number of file records currently kept in memory.
+     */
+    public synchronized int cachedCount() {
+        return cache.size();
+    }
+
+    /**
+     * Closes the reader of the data file, if open.
+     * @throws IOException If the file cannot be closed.
+     */
+    private void closeReader() throws IOException {
+        if (reader != null)
+            reader.close();
+        reader = null;
+    }
+
+    /**
+     * Adds the credentials of a member to a filter.
+     * @param filter The filter.
+     * @param record The member.
+     */
+    private static void addKeys(ClubberBloomFilter filter, ClubberRecord record) {
+        for (String key : record.keys())
+            filter.add(key);
+    }
+
+    /**
+     * Finds the member matching the given key in the committed members and the index.
+     * @param key The identification credential to look for.
+     * @return The matching member, or null if no member matches the key.
+     */
+    private synchronized ClubberRecord findIndexed(String key) {
+        ClubberRecord record = committed.find(key);
+        if (record != null)
+            return record;
+        Long offset = offsets.get(key);
+        return (offset == null ? null : fault(offset));
+    }
+
+    /**
+     * Returns the file record at the given offset, reading it from the file if it isn't cached.
+     * @param offset Offset of the record in the file.
+     * @return The record.
+     */
+    private ClubberRecord fault(long offset) {
+        ClubberRecord record = cache.get(offset);
+        if (record == null) {
+            try {
+                record = reader.readAt(offset);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cache.put(offset, record);
+        }
+        return record;
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public synchronized int size() {
+        return fileCount - replaced.size() + committed.size();
+    }
+
+    @Override
+    public synchronized int count(ClubberType type) {
+        return fileTypeCounts[type.ordinal()] - replacedTypeCounts[type.ordinal()] + committed.count(type);
+    }
+
+    /**
+     * Credentials ruled out by the filter are answered without taking the lock.
+     */
+    @Override
+    public ClubberRecord find(String key) {
+        ClubberBloomFilter current = filter;
+        if (current == null)
+            return findIndexed(key);
+        if (!current.mightContain(key)) {
+            ClubMetrics.countFilterNegative();
+            return null;
+        }
+        ClubberRecord record = findIndexed(key);
+        if (record == null)
+            ClubMetrics.countFilterFalsePositive();
+        return record;
+    }
+
+    /**
+     * Records read again after eviction are new instances, so the owner is recognized by it's id.
+     */
+    @Override
+    public boolean duplicateKeyCheck(String key, ClubberRecord owner) {
+        ClubberRecord clubber = find(key);
+        return clubber != null && (owner == null || !clubber.getId().equals(owner.getId()));
+    }
+
+    @Override
+    public synchronized boolean add(ClubberRecord clubber) {
+        for (String key : clubber.keys())
+            if (find(key) != null)
+                return false;
+        if (filter != null)
+            addKeys(filter, clubber); // Before the member can be found.
+        return committed.add(clubber);
+    }
+
+    /**
+     * A replaced file record is dropped from the index, and the new data is kept in memory.
+     * A committed member is replaced only if it is still the given old record, as in {@link InMemoryClubberRepository}.
+     * Either way the new credentials are checked against the file records as well as the committed members.
+     */
+    @Override
+    public synchronized boolean replace(ClubberRecord old, ClubberRecord updated) {
+        ClubberRecord current = committed.find(old.getId());
+        Long offset = (current == null ? offsets.get(old.getId()) : null);
+        if (current == null ? offset == null : current != old)
+            return false; // Changed meanwhile.
+        for (String key : updated.keys()) {
+            ClubberRecord owner = find(key);
+            if (owner != null && !owner.getId().equals(old.getId()))
+                return false;
+        }
+        if (filter != null)
+            addKeys(filter, updated); // Kept even if the replacement fails, which only costs a false positive.
+        if (current != null)
+            return committed.replace(old, updated);
+        ClubberRecord fileRecord = fault(offset);
+        for (String key : fileRecord.keys())
+            if (offset.equals(offsets.get(key)))
+                offsets.remove(key);
+        replaced.add(offset);
+        replacedTypeCounts[fileRecord.getType().ordinal()]++;
+        cache.remove(offset);
+        return committed.add(updated);
+    }
+
+    /**
+     * Forgets all members. The data file itself isn't changed.
+     */
+    @Override
+    public synchronized void clear() {
+        offsets.clear();
+        replaced.clear();
+        cache.clear();
+        committed.clear();
+        filter = null; // Until rebuilt, lookups wait for the lock.
+        fileCount = 0;
+        Arrays.fill(fileTypeCounts, 0);
+        Arrays.fill(replacedTypeCounts, 0);
+    }
+
+    /**
+     * Iterates over the members by reading through the data file, then over the committed members.
+     * Iterated file records aren't cached.
+     */
+    @Override
+    public synchronized Iterator<ClubberRecord> iterator() {
+        final ClubberFileFormat.Reader scan;
+        try {
+            scan = (reader == null ? null : new ClubberFileFormat.Reader(file));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final Iterator<ClubberRecord> rest = committed.iterator();
+        return new Iterator<ClubberRecord>() {
+
+            private ClubberRecord next = advance(); // Next member, null at the end.
+
+            private ClubberRecord advance() {
+                try {
+                    while (scan != null && scan.next())
+                        if (!replaced.contains(scan.offset()))
+                            return scan.record();
+                    if (scan != null)
+                        scan.close();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return (rest.hasNext() ? rest.next() : null);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ClubberRecord next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                ClubberRecord current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+} // LazyClubberRepository - End of class definition.
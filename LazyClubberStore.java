@@ -0,0 +1,73 @@
+import java.io.IOException;
+
+/**
+ * Store for a {@link LazyClubberRepository}, which reads members from it's data file on demand.
+ * Loading only indexes the file, and saving rewrites the file with the committed members.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class LazyClubberStore implements ClubberStore {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final LazyClubberRepository repository; // The repository over the data file.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * @param repository The repository over the data file.
+     */
+    public LazyClubberStore(LazyClubberRepository repository) {
+        this.repository = repository;
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    /**
+     * Opens the data file of the lazy repository. Other repositories can't be loaded by this store.
+     */
+    @Override
+    public void load(ClubberRepository repository) throws IOException {
+        if (repository != this.repository)
+            throw new IllegalArgumentException("A lazy store loads only it's own repository");
+        long start = ClubMetrics.LOAD.start();
+        try {
+            this.repository.open();
+        }
+        finally {
+            ClubMetrics.LOAD.stop(start);
+        }
+    }
+
+    /**
+     * Nothing to do, committed members are kept in memory until the next save.
+     */
+    @Override
+    public void committed(ClubberRecord old, ClubberRecord updated) {
+    }
+
+    @Override
+    public void save(ClubberRepository repository) throws IOException {
+        long start = ClubMetrics.SAVE.start();
+        try {
+            this.repository.rewrite();
+        }
+        finally {
+            ClubMetrics.SAVE.stop(start);
+        }
+    }
+
+    /**
+     * Same as a save, which rewrites the whole file.
+     */
+    @Override
+    public void compact(ClubberRepository repository) throws IOException {
+        save(repository);
+    }
+
+    @Override
+    public void close() throws IOException {
+        repository.close();
+    }
+
+} // LazyClubberStore - End of class definition.
@@ -0,0 +1,478 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads the members out of a data file written with Java serialization by older versions, without deserializing it.
+ * Such a file holds a list of members, followed by the sequence number of the last change included (a long), if known.
+ * The first versions wrote the members themselves, as frames ({@code Person}, {@code Soldier} and {@code Student}
+ * with all their components, and through them the application's frame); later versions wrote {@link ClubberRecord}s.
+ * <p>
+ * The stream is parsed by the grammar of the serialization protocol, and none of it's classes is loaded or
+ * instantiated, so frames are read without a display, and classes that changed since don't matter.
+ * Of each member only it's fields are kept (id, name, surname, tel and the personal number or student id),
+ * and the member is passed on as soon as it has been read. Everything else is skipped as it is read:
+ * only class descriptions, enum constants, the most recent strings and a bounded number of strings referred to
+ * more than once (which later references may point to) are remembered, so memory doesn't depend on the stream's size.
+ * Members without an id are dropped, as loading the first versions' files dropped their empty entries.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class LegacyClubberReader {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int RECENT_STRINGS = 1 << 16; // Number of recent strings remembered, a power of 2.
+    private static final int SHARED_STRINGS = 1 << 16; // Most strings referred to again remembered.
+    private static final Object UNRESOLVED = new Object(); // Value of a string no longer remembered, or too long to be kept.
+    private static final List<String> MEMBER_CLASSES = Arrays.asList("Person", "Soldier", "Student", "ClubberRecord");
+
+    private final DataInputStream in; // The serialized stream.
+    private final HashMap<Integer, ClassDesc> classes; // Class descriptions, by handle.
+    private final HashMap<Integer, String> enums; // Names of enum constants, by handle.
+    private final String[] recentStrings; // The most recent strings, by handle modulo their number.
+    private final int[] recentHandles; // Handle of each remembered string.
+    private final HashMap<Integer, String> shared; // Strings referred to again, by handle, as they are likely to be referred to once more.
+    private final boolean streaming; // Is the dictionary the reader's own?
+    private ClubberDictionary dictionary; // The dictionary the read members' strings are kept in.
+    private int nextHandle; // Handle of the next object of the stream.
+    private long read, dropped, unresolved; // Members read, dropped without an id, and dropped with a field that wasn't remembered.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * Reads the stream for streaming it, keeping the members' strings in dictionaries of the reader's own.
+     * @param in The serialized stream, which should be buffered.
+     */
+    public LegacyClubberReader(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * Constructor - 2 Parameters.
+     * @param in The serialized stream, which should be buffered.
+     * @param dictionary The dictionary to keep the members' strings in, {@link ClubberDictionary#SHARED} for loading
+     *                   the live repository, or null for dictionaries of the reader's own
+     *                   (see {@link ClubberDictionary#forStreaming(ClubberDictionary)}).
+     */
+    public LegacyClubberReader(InputStream in, ClubberDictionary dictionary) {
+        this.in = new DataInputStream(in);
+        this.streaming = (dictionary == null);
+        this.dictionary = (streaming ? new ClubberDictionary() : dictionary);
+        classes = new HashMap<Integer, ClassDesc>();
+        enums = new HashMap<Integer, String>();
+        recentStrings = new String[RECENT_STRINGS];
+        recentHandles = new int[RECENT_STRINGS];
+        shared = new HashMap<Integer, String>();
+        nextHandle = ObjectStreamConstants.baseWireHandle;
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Reads the stream to it's end, passing on each member as it is read.
+     * @param sink Receives the members.
+     * @return The sequence number of the last change included in the file, 0 if unknown.
+     * @throws IOException If the stream cannot be read, isn't a serialized stream, or the sink fails.
+     */
+    public long read(Sink sink) throws IOException {
+        if (in.readShort() != ObjectStreamConstants.STREAM_MAGIC || in.readShort() != ObjectStreamConstants.STREAM_VERSION)
+            throw new StreamCorruptedException("Not a serialized clubbers file");
+        long sequence = 0;
+        int sequenceBytes = 0; // Bytes of the sequence number read so far.
+        int tc;
+        while ((tc = in.read()) >= 0) {
+            if (tc == ObjectStreamConstants.TC_BLOCKDATA || tc == ObjectStreamConstants.TC_BLOCKDATALONG) {
+                long length = (tc == ObjectStreamConstants.TC_BLOCKDATA ? in.readUnsignedByte() : in.readInt());
+                for (; length > 0 && sequenceBytes < 8; length--, sequenceBytes++)
+                    sequence = (sequence << 8) | in.readUnsignedByte();
+                skip(length);
+            }
+            else
+                content(tc, sink);
+        }
+        return (sequenceBytes == 8 ? sequence : 0);
+    }
+
+    /**
+     * @return Number of members read and passed on.
+     */
+    public long getRead() {
+        return read;
+    }
+
+    /**
+     * @return Number of members dropped because they had no id.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return Number of members dropped because a field referred to a string no longer remembered.
+     */
+    public long getUnresolved() {
+        return unresolved;
+    }
+
+    /**
+     * Reads an object, or any other content of the stream, whose type code was read.
+     * @param tc The type code.
+     * @param sink Receives the members read.
+     * @return The content's value if it is a string (or enum constant, by name), a class description or
+     *         {@link #UNRESOLVED}, null otherwise.
+     * @throws IOException If the stream cannot be read or is malformed.
+     */
+    private Object content(int tc, Sink sink) throws IOException {
+        switch (tc) {
+            case ObjectStreamConstants.TC_NULL:
+                return null;
+            case ObjectStreamConstants.TC_REFERENCE:
+                return reference(in.readInt());
+            case ObjectStreamConstants.TC_STRING: {
+                int handle = newHandle();
+                return remember(handle, in.readUTF());
+            }
+            case ObjectStreamConstants.TC_LONGSTRING:
+                newHandle();
+                skip(in.readLong()); // Strings beyond 64K hold no member field.
+                return UNRESOLVED;
+            case ObjectStreamConstants.TC_CLASSDESC:
+            case ObjectStreamConstants.TC_PROXYCLASSDESC:
+                return classDesc(tc, sink);
+            case ObjectStreamConstants.TC_CLASS:
+                classDesc(in.readUnsignedByte(), sink);
+                newHandle();
+                return null;
+            case ObjectStreamConstants.TC_ENUM: {
+                classDesc(in.readUnsignedByte(), sink);
+                int handle = newHandle();
+                Object name = content(in.readUnsignedByte(), sink);
+                if (name instanceof String)
+                    enums.put(handle, (String)name);
+                return name;
+            }
+            case ObjectStreamConstants.TC_ARRAY:
+                array(sink);
+                return null;
+            case ObjectStreamConstants.TC_OBJECT:
+                object(sink);
+                return null;
+            case ObjectStreamConstants.TC_RESET:
+                reset();
+                return null;
+            case ObjectStreamConstants.TC_EXCEPTION:
+                throw new WriteAbortedException("Writing the file failed, it ends with the exception", null);
+            default:
+                throw new StreamCorruptedException(String.format("Invalid type code: %02X", tc));
+        }
+    }
+
+    /**
+     * Reads a class description, whose type code was read.
+     * @param tc The type code.
+     * @param sink Receives the members read.
+     * @return The class description, null for none.
+     * @throws IOException If the stream cannot be read or is malformed.
+     */
+    private ClassDesc classDesc(int tc, Sink sink) throws IOException {
+        ClassDesc desc;
+        switch (tc) {
+            case ObjectStreamConstants.TC_NULL:
+                return null;
+            case ObjectStreamConstants.TC_REFERENCE: {
+                Object referred = reference(in.readInt());
+                if (!(referred instanceof ClassDesc))
+                    throw new StreamCorruptedException("Reference to a class description expected");
+                return (ClassDesc)referred;
+            }
+            case ObjectStreamConstants.TC_CLASSDESC: {
+                String name = in.readUTF();
+                in.readLong(); // serialVersionUID.
+                desc = new ClassDesc(name);
+                classes.put(newHandle(), desc);
+                desc.flags = in.readUnsignedByte();
+                int count = in.readShort();
+                for (int i = 0; i < count; i++) {
+                    char type = (char)in.readUnsignedByte();
+                    desc.types.append(type);
+                    desc.names.add(in.readUTF());
+                    if (type == 'L' || type == '[')
+                        content(in.readUnsignedByte(), sink); // The field's class name.
+                }
+                break;
+            }
+            case ObjectStreamConstants.TC_PROXYCLASSDESC: {
+                desc = new ClassDesc(null);
+                classes.put(newHandle(), desc);
+                desc.flags = ObjectStreamConstants.SC_SERIALIZABLE;
+                for (int i = in.readInt(); i > 0; i--)
+                    in.readUTF(); // Interface names.
+                break;
+            }
+            default:
+                throw new StreamCorruptedException(String.format("Invalid class description type code: %02X", tc));
+        }
+        annotation(sink);
+        desc.superDesc = classDesc(in.readUnsignedByte(), sink);
+        return desc;
+    }
+
+    /**
+     * Reads an ordinary object, after it's type code, and passes it on if it is a member.
+     * The data of each class of the object is read from the top serializable superclass down.
+     * A class with a writeObject method is assumed to have written it's fields first, as all do.
+     * @param sink Receives the members read.
+     * @throws IOException If the stream cannot be read or is malformed.
+     */
+    private void object(Sink sink) throws IOException {
+        ClassDesc desc = classDesc(in.readUnsignedByte(), sink);
+        if (desc == null)
+            throw new StreamCorruptedException("Object without a class description");
+        newHandle();
+        boolean member = MEMBER_CLASSES.contains(desc.name);
+        HashMap<String, Object> fields = (member ? new HashMap<String, Object>() : null);
+        ArrayList<ClassDesc> hierarchy = new ArrayList<ClassDesc>();
+        for (ClassDesc d = desc; d != null; d = d.superDesc)
+            hierarchy.add(d);
+        for (int level = hierarchy.size() - 1; level >= 0; level--) {
+            ClassDesc d = hierarchy.get(level);
+            if ((d.flags & ObjectStreamConstants.SC_EXTERNALIZABLE) != 0) {
+                if ((d.flags & ObjectStreamConstants.SC_BLOCK_DATA) == 0)
+                    throw new StreamCorruptedException("Externalized data of " + d.name + " cannot be skipped");
+                annotation(sink);
+                continue;
+            }
+            HashMap<String, Object> kept = (member && MEMBER_CLASSES.contains(d.name) ? fields : null);
+            for (int i = 0; i < d.types.length(); i++) {
+                char type = d.types.charAt(i);
+                if (type == 'L' || type == '[') {
+                    Object value = content(in.readUnsignedByte(), sink);
+                    if (kept != null)
+                        kept.put(d.names.get(i), value);
+                }
+                else
+                    skip(primitiveLength(type));
+            }
+            if ((d.flags & ObjectStreamConstants.SC_WRITE_METHOD) != 0)
+                annotation(sink);
+        }
+        if (member)
+            member(desc.name, fields, sink);
+    }
+
+    /**
+     * Passes on a member read, unless it has no id or one of it's fields was lost.
+     * @param className The member's class.
+     * @param fields The fields of the member's classes, by name.
+     * @param sink Receives the member.
+     * @throws IOException If the member's type is unknown, or the sink fails.
+     */
+    private void member(String className, HashMap<String, Object> fields, Sink sink) throws IOException {
+        ClubberType type;
+        String credentialField;
+        if (className.equals("ClubberRecord")) {
+            type = null;
+            for (ClubberType t : ClubberType.values())
+                if (t.name().equals(fields.get("type")))
+                    type = t;
+            if (type == null && fields.get("type") != UNRESOLVED)
+                throw new InvalidClassException("Unknown clubber type: " + fields.get("type"));
+            credentialField = "credential";
+        }
+        else {
+            type = (className.equals("Soldier") ? ClubberType.SOLDIER : className.equals("Student") ? ClubberType.STUDENT : ClubberType.PERSON);
+            credentialField = (type == ClubberType.SOLDIER ? "personalNum" : "studentId");
+        }
+        boolean lost = (type == null);
+        for (String name : new String[] { "id", "name", "surname", "tel", credentialField })
+            lost |= (fields.get(name) == UNRESOLVED);
+        if (lost) {
+            unresolved++;
+            return;
+        }
+        if (fields.get("id") == null) { // Was an empty entry.
+            dropped++;
+            return;
+        }
+        read++;
+        if (streaming)
+            dictionary = ClubberDictionary.forStreaming(dictionary);
+        sink.accept(new ClubberRecord(dictionary, type, (String)fields.get("id"), (String)fields.get("name"), (String)fields.get("surname"),
+                (String)fields.get("tel"), (type == ClubberType.PERSON ? null : (String)fields.get(credentialField))));
+    }
+
+    /**
+     * Reads an array, after it's type code.
+     * @param sink Receives the members read.
+     * @throws IOException If the stream cannot be read or is malformed.
+     */
+    private void array(Sink sink) throws IOException {
+        ClassDesc desc = classDesc(in.readUnsignedByte(), sink);
+        if (desc == null || desc.name == null || desc.name.length() < 2 || desc.name.charAt(0) != '[')
+            throw new StreamCorruptedException("Array without an array class description");
+        newHandle();
+        int length = in.readInt();
+        char type = desc.name.charAt(1);
+        if (type == 'L' || type == '[')
+            for (int i = 0; i < length; i++)
+                content(in.readUnsignedByte(), sink);
+        else
+            skip((long)length * primitiveLength(type));
+    }
+
+    /**
+     * Reads the annotation of a class description or the data written by a writeObject method:
+     * block data, which is skipped, and objects, up to the end of the block.
+     * @param sink Receives the members read.
+     * @throws IOException If the stream cannot be read or is malformed.
+     */
+    private void annotation(Sink sink) throws IOException {
+        int tc;
+        while ((tc = in.readUnsignedByte()) != ObjectStreamConstants.TC_ENDBLOCKDATA) {
+            if (tc == ObjectStreamConstants.TC_BLOCKDATA)
+                skip(in.readUnsignedByte());
+            else if (tc == ObjectStreamConstants.TC_BLOCKDATALONG)
+                skip(in.readInt() & 0xFFFFFFFFL);
+            else
+                content(tc, sink);
+        }
+    }
+
+    /**
+     * @return The handle of the next object of the stream.
+     */
+    private int newHandle() {
+        return nextHandle++;
+    }
+
+    /**
+     * Remembers a string, in place of the least recent one.
+     * @param handle The string's handle.
+     * @param s The string.
+     * @return The string.
+     */
+    private String remember(int handle, String s) {
+        recentStrings[handle & (RECENT_STRINGS - 1)] = s;
+        recentHandles[handle & (RECENT_STRINGS - 1)] = handle;
+        return s;
+    }
+
+    /**
+     * Resolves a reference to an earlier object of the stream.
+     * @param handle The handle referred to.
+     * @return The class description, enum constant name or string referred to, {@link #UNRESOLVED} for any other object.
+     * @throws StreamCorruptedException If no object has the handle.
+     */
+    private Object reference(int handle) throws StreamCorruptedException {
+        if (handle < ObjectStreamConstants.baseWireHandle || handle >= nextHandle)
+            throw new StreamCorruptedException(String.format("Invalid handle: %08X", handle));
+        ClassDesc desc = classes.get(handle);
+        if (desc != null)
+            return desc;
+        String name = enums.get(handle);
+        if (name != null)
+            return name;
+        String s = shared.get(handle);
+        if (s != null)
+            return s;
+        int slot = handle & (RECENT_STRINGS - 1);
+        if (recentHandles[slot] != handle)
+            return UNRESOLVED;
+        if (shared.size() < SHARED_STRINGS)
+            shared.put(handle, recentStrings[slot]); // Keep it past the recent strings.
+        return recentStrings[slot];
+    }
+
+    /**
+     * Forgets all the objects of the stream, as the writer did.
+     */
+    private void reset() {
+        classes.clear();
+        enums.clear();
+        shared.clear();
+        Arrays.fill(recentStrings, null);
+        Arrays.fill(recentHandles, 0);
+        nextHandle = ObjectStreamConstants.baseWireHandle;
+    }
+
+    /**
+     * @param type The type code of a primitive field.
+     * @return The length of the field in bytes.
+     * @throws StreamCorruptedException If the type code is invalid.
+     */
+    private static int primitiveLength(char type) throws StreamCorruptedException {
+        switch (type) {
+            case 'B': case 'Z':
+                return 1;
+            case 'C': case 'S':
+                return 2;
+            case 'I': case 'F':
+                return 4;
+            case 'J': case 'D':
+                return 8;
+            default:
+                throw new StreamCorruptedException("Invalid field type code: " + type);
+        }
+    }
+
+    /**
+     * Skips bytes of the stream.
+     * @param n Number of bytes.
+     * @throws IOException If the stream ends before.
+     */
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                in.readByte(); // Throws at the end of the stream.
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * Receives the members read.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    public interface Sink {
+
+        /**
+         * Receives a member.
+         * @param record The member.
+         * @throws IOException If the member cannot be kept.
+         */
+        void accept(ClubberRecord record) throws IOException;
+
+    } // Sink - End of interface definition.
+
+    /**
+     * Description of a serialized class: what is needed to skip it's objects.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class ClassDesc {
+
+        private final String name; // The class name, null for a proxy class.
+        private final StringBuilder types; // Type code of each serialized field.
+        private final ArrayList<String> names; // Name of each serialized field.
+        private int flags; // The class's serialization flags.
+        private ClassDesc superDesc; // Description of the serializable superclass, null if none.
+
+        /**
+         * Constructor - 1 Parameter.
+         * @param name The class name, null for a proxy class.
+         */
+        private ClassDesc(String name) {
+            this.name = name;
+            types = new StringBuilder();
+            names = new ArrayList<String>();
+        }
+
+    } // ClassDesc - End of class definition.
+
+} // LegacyClubberReader - End of class definition.
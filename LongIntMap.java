@@ -0,0 +1,204 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Open-addressing hash map from non negative long keys below 2^31 to non negative int values,
+ * with no object per entry: each entry is packed in a single long of one array (key in the high half,
+ * value in the low half), so a lookup is a few reads of one array.
+ * Reads take no lock and always see a whole entry. Writes are serialized by the map's monitor.
+ * Removed entries leave a tombstone, so concurrent reads never miss an entry moved by a removal.
+ * The table is rebuilt, twice as large if needed, once entries and tombstones fill half of it.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class LongIntMap {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final int NO_VALUE = -1; // Returned for a key with no value.
+    public static final long MAX_KEY = Integer.MAX_VALUE; // Highest key the map can hold.
+
+    private static final long EMPTY = -1L; // A slot that was never used.
+    private static final long TOMBSTONE = -2L; // A slot whose entry was removed.
+
+    private volatile AtomicLongArray table; // Packed entries, EMPTY or TOMBSTONE.
+    private int size; // Number of entries.
+    private int used; // Number of entries and tombstones.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * @param expectedSize Number of entries the map is expected to hold.
+     */
+    public LongIntMap(int expectedSize) {
+        table = newTable(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) * 2);
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param capacity Number of slots, a power of two.
+     * @return A table of empty slots.
+     */
+    private static AtomicLongArray newTable(int capacity) {
+        AtomicLongArray newTable = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            newTable.lazySet(i, EMPTY);
+        return newTable;
+    }
+
+    /**
+     * @param key A key.
+     * @param mask Number of slots minus one.
+     * @return The first slot probed for the key.
+     */
+    private static int home(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @param key A key.
+     * @param value A value.
+     * @return The entry of the key and value, packed in a long.
+     */
+    private static long pack(long key, int value) {
+        return (key << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Checks a key is in range.
+     * @param key The key.
+     */
+    private static void checkKey(long key) {
+        if (key < 0 || key > MAX_KEY)
+            throw new IllegalArgumentException("Key out of range: " + key);
+    }
+
+    /**
+     * Returns the value of a key.
+     * @param key The key.
+     * @return The key's value, or {@link #NO_VALUE} if the map doesn't hold the key.
+     */
+    public int get(long key) {
+        AtomicLongArray current = table;
+        int mask = current.length() - 1;
+        for (int i = home(key, mask); ; i = (i + 1) & mask) {
+            long entry = current.get(i);
+            if (entry == EMPTY)
+                return NO_VALUE;
+            if (entry != TOMBSTONE && (entry >>> 32) == key)
+                return (int)entry;
+        }
+    }
+
+    /**
+     * Finds the slot of a key in the table. The monitor must be held.
+     * @param key The key.
+     * @return The key's slot, or -1 if the map doesn't hold the key.
+     */
+    private int find(long key) {
+        int mask = table.length() - 1;
+        for (int i = home(key, mask); ; i = (i + 1) & mask) {
+            long entry = table.get(i);
+            if (entry == EMPTY)
+                return -1;
+            if (entry != TOMBSTONE && (entry >>> 32) == key)
+                return i;
+        }
+    }
+
+    /**
+     * Maps a key to a value, unless the key already has a value.
+     * @param key The key, from 0 to {@link #MAX_KEY}.
+     * @param value The value, not negative.
+     * @return The key's current value, or {@link #NO_VALUE} if the value was set.
+     */
+    public synchronized int putIfAbsent(long key, int value) {
+        checkKey(key);
+        int slot = find(key);
+        if (slot >= 0)
+            return (int)table.get(slot);
+        if ((used + 1) * 2 > table.length())
+            rehash();
+        int mask = table.length() - 1;
+        int i = home(key, mask);
+        while (table.get(i) != EMPTY && table.get(i) != TOMBSTONE)
+            i = (i + 1) & mask;
+        if (table.get(i) == EMPTY)
+            used++;
+        table.set(i, pack(key, value));
+        size++;
+        return NO_VALUE;
+    }
+
+    /**
+     * Replaces the value of a key, if it is the expected one.
+     * @param key The key.
+     * @param expected The expected current value.
+     * @param value The new value, not negative.
+     * @return True if the value was replaced, false otherwise.
+     */
+    public synchronized boolean replace(long key, int expected, int value) {
+        int slot = find(key);
+        if (slot < 0 || (int)table.get(slot) != expected)
+            return false;
+        table.set(slot, pack(key, value));
+        return true;
+    }
+
+    /**
+     * Removes a key, if it's value is the expected one.
+     * @param key The key.
+     * @param expected The expected current value.
+     * @return True if the key was removed, false otherwise.
+     */
+    public synchronized boolean remove(long key, int expected) {
+        int slot = find(key);
+        if (slot < 0 || (int)table.get(slot) != expected)
+            return false;
+        table.set(slot, TOMBSTONE);
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+        table = newTable(16);
+        size = 0;
+        used = 0;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Copies the entries to a new table, dropping tombstones, and publishes it. The monitor must be held.
+     * Readers still probing the old table see the entries as they were before the copy.
+     */
+    private void rehash() {
+        AtomicLongArray old = table;
+        int capacity = old.length();
+        while ((size + 1) * 4L > capacity) // Keep the new table at most a quarter full.
+            capacity *= 2;
+        AtomicLongArray rehashed = newTable(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.length(); j++) {
+            long entry = old.get(j);
+            if (entry == EMPTY || entry == TOMBSTONE)
+                continue;
+            int i = home(entry >>> 32, mask);
+            while (rehashed.get(i) != EMPTY)
+                i = (i + 1) & mask;
+            rehashed.lazySet(i, entry);
+        }
+        used = size;
+        table = rehashed; // Volatile write publishes the copied entries.
+    }
+
+} // LongIntMap - End of class definition.
@@ -13,19 +13,41 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
     
     //------------------------------------------- Fields ------------------------------------------
 
-    private ArrayList<ClubAbstractEntity> clubbers; // Night-Club Regular Customers Repository
+    private static final long serialVersionUID = 1L;
+    private final ClubberRepository clubbers; // Night-Club Regular Customers Repository
+    private final ClubberStore store; // Persistent storage of the repository.
+    private final ClubberSearchIndex searchIndex; // Finds clubbers by name, surname or phone.
+    private final ClubEditorPool editors; // Reusable editor frames.
+    private final CheckInLog checkIns; // Log of the clubbers' check-ins, null if it cannot be opened.
+    private final boolean indexOnLoad; // Is the search index built on load, rather than on first use?
+    private ClubBrowser browser; // Frame browsing all the clubbers, null until first opened.
+    private boolean unsaved; // Were clubbers committed since the last save?
+    private final Object commitLock = new Object(); // Held across a change to the repository and it's store call, to keep their order.
     private final JComboBox<String> memberTpyesCmb; // Combo box of member types for addition.
-    private final JButton searchButton, addButton, exitButton; // Search and add members buttons.
+    private final JButton searchButton, findButton, browseButton, addButton, exitButton; // Search, find, browse and add members buttons.
 
     //------------------------------------------- Constructors ------------------------------------
 
     /**
      * Constructor - Parameterless.
      * loads clubber list from file using {@link #loadClubbersDBFromFile()}.
+     * The kind of storage is chosen by system properties, see {@link ClubberStorage}.
+     * Committed clubbers are saved automatically every "bk.autosave" milliseconds (default 60000, 0 to disable).
+     * Clubbers found by key are checked in to a {@link CheckInLog}: the data file with ".checkins" appended,
+     * at the door "bk.door" (default 1).
+     * The search index is built on load if "bk.index" is "load", or on the first find or browse if "demand";
+     * the default is "load", but "demand" in lazy mode, where building reads the whole file.
      */
     public NightClubMgmtApp() {
-        clubbers = new ArrayList<ClubAbstractEntity>();
+        ClubberStorage storage = ClubberStorage.fromSystemProperties();
+        clubbers = storage.getRepository();
+        store = storage.getStore();
+        searchIndex = new ClubberSearchIndex(clubbers);
+        indexOnLoad = "load".equals(System.getProperty("bk.index", (clubbers instanceof LazyClubberRepository ? "demand" : "load")));
+        editors = new ClubEditorPool(this, 4);
+        ClubMetrics.start(storage);
         loadClubbersDBFromFile();
+        checkIns = openCheckInLog(storage.getFile());
         
         String[] memberTypes = { "Person", "Soldier", "Student" }; // List of member types for combo box.
 
@@ -33,6 +55,10 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
 
         JLabel SearchLbl = new JLabel("Search club member by ID:");
         searchButton = new JButton("Search");
+        JLabel findLbl = new JLabel("Find by name or phone:");
+        findButton = new JButton("Find");
+        JLabel browseLbl = new JLabel("Browse all club members:");
+        browseButton = new JButton("Browse");
         JLabel addMemberLbl = new JLabel("Add a new club member:");
         memberTpyesCmb = new JComboBox<String>(memberTypes);
         addButton = new JButton("Add");
@@ -40,7 +66,7 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
         exitButton = new JButton("Save & exit");       
         
         // Some componenets are to be set to the same dimensions
-        Component[] guiComponents = {SearchLbl, searchButton, addMemberLbl, closeAppLbl, exitButton};
+        Component[] guiComponents = {SearchLbl, searchButton, findLbl, findButton, browseLbl, browseButton, addMemberLbl, closeAppLbl, exitButton};
         for(Component c : guiComponents) {
             c.setPreferredSize(new Dimension(160,25));
         }
@@ -48,6 +74,10 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
         // Can't add in loop, because some coponenets are to be in certain order in a different size.
         add(SearchLbl);
         add(searchButton);
+        add(findLbl);
+        add(findButton);
+        add(browseLbl);
+        add(browseButton);
         add(addMemberLbl);
         memberTpyesCmb.setPreferredSize(new Dimension(80,25));
         add(memberTpyesCmb);
@@ -56,7 +86,7 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
         add(closeAppLbl);    
         add(exitButton);
 
-        JButton[] buttons = {searchButton, addButton, exitButton};
+        JButton[] buttons = {searchButton, findButton, browseButton, addButton, exitButton};
         for(JButton b : buttons) {
             b.addActionListener(this);
         }
@@ -64,26 +94,107 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
         setTitle("BK Club manager");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); // Prevents closing of the frame. Force save of club data to file.
         setResizable(false); // Prevents resizing of the frame.
-        setSize(400, 140);
+        setSize(400, 210);
         setLocationRelativeTo(null); // Open window at center of screen
         setVisible(true);
+
+        int autosaveMillis = Integer.getInteger("bk.autosave", 60000);
+        if (autosaveMillis > 0) // Runs on the event thread, which commits the clubbers, so the saved copy is consistent.
+            new javax.swing.Timer(autosaveMillis, e -> {
+                if (unsaved)
+                    writeClubbersDBtoFile();
+                else
+                    checkSaved();
+            }).start();
     }
 
     //------------------------------------------- Methods -----------------------------------------
 
     /**
      * Checks if a different clubber with same credential exists.
-     * Iterates over polymporphic instances of {@link ClubAbstractEntity} and uses
-     * {@link ClubAbstractEntity#match(String key)} impliminations of each instance.
+     * Looks the credential up in the clubbers repository, which is indexed by every key accepted by
+     * {@link ClubberRecord#match(String key)}.
      * @param key The credential which to check with.
-     * @param c The newly created entity who wants to use given credential.
+     * @param c The data of the entity who wants to use given credential, null for a new entity.
      * @return True if a different clubber with same credential exists, false otherwise.
      */
-    public boolean duplicateKeyCheck(String key, ClubAbstractEntity c) {
-        for (ClubAbstractEntity clubber : clubbers)
-            if (clubber != c &&  clubber.match(key)) // Does a different club member with same key credential exists?
-                return true;
-        return false; // No clubber with same id was found.
+    public boolean duplicateKeyCheck(String key, ClubberRecord c) {
+        return clubbers.duplicateKeyCheck(key, c); // Does a different club member with same key credential exists?
+    }
+
+    /**
+     * Stores the newly committed data of a clubber in the repository.
+     * Called by {@link ClubAbstractEntity} right after a successful commit.
+     * The commit is refused if another terminal took one of the credentials since they were checked.
+     * @param old The clubber's data before the commit, null for a new clubber.
+     * @param updated The clubber's committed data.
+     * @return True if the data was stored, false if it was refused.
+     */
+    public boolean commitClubber(ClubberRecord old, ClubberRecord updated) {
+        long start = ClubMetrics.COMMIT.start();
+        try {
+            return storeClubber(old, updated);
+        }
+        finally {
+            ClubMetrics.COMMIT.stop(start);
+        }
+    }
+
+    /**
+     * Stores the newly committed data of a clubber in the repository, the search index and the store.
+     * @param old The clubber's data before the commit, null for a new clubber.
+     * @param updated The clubber's committed data.
+     * @return True if the data was stored, false if it was refused.
+     */
+    private boolean storeClubber(ClubberRecord old, ClubberRecord updated) {
+        boolean stored;
+        IOException error = null;
+        synchronized (commitLock) { // The index and the store take the changes in the repository's order.
+            stored = (old == null ? clubbers.add(updated) : clubbers.replace(old, updated));
+            if (stored) {
+                unsaved = true;
+                searchIndex.replace(old, updated);
+                try {
+                    store.committed(old, updated);
+                }
+                catch(IOException e) {
+                    error = e;
+                }
+            }
+        }
+        if (!stored) {
+            JOptionPane.showMessageDialog(null, String.format("Clubber's credentials were just taken, or the clubber was changed.%nCheck the data and try again.%n", JOptionPane.INFORMATION_MESSAGE));
+            return false;
+        }
+        if (browser != null && browser.isVisible())
+            browser.refresh();
+        if (error != null) {
+            ClubMetrics.error("Change cannot be written", error);
+            JOptionPane.showMessageDialog (null, String.format("Error. Change cannot be written.\n" + error, JOptionPane.ERROR_MESSAGE));
+        }
+        return true;
+    }
+
+    /**
+     * Opens an existing clubber in an editor frame taken from the pool, according to it's type:
+     * one of the following: {@link Person}, {@link Soldier} or {@link Student}.
+     * @param record The clubber's data.
+     */
+    public void showClubber(ClubberRecord record) {
+        ClubAbstractEntity clubber = editors.acquire(record.getType(), record);
+        clubber.setLocationRelativeTo(null);
+        clubber.setVisible(true);
+        clubber.toFront();
+        clubber.requestFocus();
+    }
+
+    /**
+     * Returns a closed editor frame to the pool.
+     * Called by {@link ClubAbstractEntity} when it's OK or Cancel button closes it.
+     * @param editor The closed frame.
+     */
+    public void releaseEditor(ClubAbstractEntity editor) {
+        editors.release(editor);
     }
 
     /**
@@ -98,15 +209,17 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
                 writeClubbersDBtoFile();
                 return;
             }
-            for (ClubAbstractEntity clubber : clubbers)
-                if (clubber.match(inputStr)) {
-                    found = true;
-                    clubber.setLocationRelativeTo(null);
-                    clubber.setVisible(true);
-                    clubber.toFront();
-                    clubber.requestFocus();
-                    break;
-                }
+            long start = ClubMetrics.LOOKUP.start();
+            ClubberRecord record = clubbers.find(inputStr);
+            ClubMetrics.LOOKUP.stop(start);
+            if (record == null)
+                ClubMetrics.countLookupMiss();
+            else {
+                found = true;
+                if (checkIns != null)
+                    checkIns.checkIn(record);
+                showClubber(record);
+            }
             if (!found)
                 JOptionPane.showMessageDialog(null,  String.format("Clubber with key %s does not exist%n" , inputStr, JOptionPane.INFORMATION_MESSAGE));
             else {
@@ -117,81 +230,139 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
     } // End of method - manipulateDB
 
     /**
-     * Load clubbers list from a binary file save to clubbers arrayList. 
-     * Uses {@link #cleanEmptyEntries()} to remove faulty (empty) entities after file load.
+     * Finds clubbers by name, surname or phone with the {@link ClubberSearchIndex},
+     * and opens the one chosen from the results, a page at a time.
+     */
+    private void findClubbers() {
+        final int pageSize = 20;
+        final String more = "More results...";
+        String query = JOptionPane.showInputDialog("Please Enter Names, Surnames Or Phone Digits ");
+        if (query == null) // If input dialog button "cancel" was pressed.
+            return;
+        buildSearchIndex();
+        int offset = 0;
+        while (true) {
+            ClubberSearchIndex.Page page = searchIndex.search(query, offset, pageSize);
+            if (page.getTotal() == 0) {
+                JOptionPane.showMessageDialog(null, String.format("No clubber matches %s%n", query), "Find", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            java.util.List<Object> choices = new ArrayList<Object>(page.getMembers());
+            if (page.hasMore())
+                choices.add(more);
+            Object choice = JOptionPane.showInputDialog(null,
+                    String.format("%d clubbers found, showing %d-%d:", page.getTotal(), offset + 1, offset + page.getMembers().size()),
+                    "Find", JOptionPane.QUESTION_MESSAGE, null, choices.toArray(), choices.get(0));
+            if (choice == null)
+                return;
+            if (choice == more) {
+                offset += pageSize;
+                continue;
+            }
+            showClubber((ClubberRecord)choice);
+            return;
+        }
+    }
+
+    /**
+     * Load clubbers list from the store into the clubbers repository, and index it for finding clubbers
+     * unless the index is built on first use.
      */
-    @SuppressWarnings("unchecked") // Suppresses readObject cast safety warning for cmd compilation.
     private void loadClubbersDBFromFile() {
-        // Read data from file, create the corresponding objects and put them.
         try {
-            FileInputStream fis = new FileInputStream("BKCustomers.dat");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            clubbers = (ArrayList<ClubAbstractEntity>)ois.readObject();
-            cleanEmptyEntries(); // Delete empty entries.
-            ois.close();
-            fis.close();
-        }
-        catch(FileNotFoundException e) {
-            return; // If first run, file shouldn't exist anyway.
+            store.load(clubbers);
+            if (indexOnLoad)
+                searchIndex.build();
         }
         catch(IOException e) {
+            ClubMetrics.error("File cannot be read", e);
             JOptionPane.showMessageDialog (null, String.format("Error. File cannot be read, or clubbers format was changed.\n" + e, JOptionPane.ERROR_MESSAGE));
         }
-        catch(ClassNotFoundException e) {
-            JOptionPane.showMessageDialog (null, String.format("Error. Class cannot be found.\n" + e, JOptionPane.ERROR_MESSAGE));
+    }
+
+    /**
+     * Opens the log of the clubbers' check-ins.
+     * @param dataFile The data file, whose path the log's extends.
+     * @return The log, or null if it cannot be opened.
+     */
+    private static CheckInLog openCheckInLog(File dataFile) {
+        try {
+            return new CheckInLog(new File(dataFile.getPath() + ".checkins"), Integer.getInteger("bk.door", 1));
+        }
+        catch(IOException e) {
+            ClubMetrics.error("Check-in log cannot be opened", e);
+            JOptionPane.showMessageDialog (null, String.format("Error. Check-ins cannot be logged.\n" + e, JOptionPane.ERROR_MESSAGE));
+            return null;
         }
     }
 
     /**
-     * Write clubbers list to a binary file save from clubbers arrayList.
+     * Write clubbers list from clubbers repository to the store.
+     * A snapshot store writes the file in the background, so this doesn't wait for the disk;
+     * a background save that failed is reported by the next save, and the clubbers are then saved again.
      */
     private void writeClubbersDBtoFile() {
-        // Write all the objects’ data in clubbers ArrayList into the file
         try {
-            FileOutputStream fos = new FileOutputStream("BKCustomers.dat");
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(clubbers);
-            oos.close();
-            fos.close();
-        }
-        catch(FileNotFoundException e) {
-            JOptionPane.showMessageDialog (null, String.format("Error. File does not exist.\n" + e, JOptionPane.ERROR_MESSAGE));
+            unsaved = false;
+            store.save(clubbers);
         }
         catch(IOException e) {
+            unsaved = true; // Retried by the next autosave.
+            ClubMetrics.error("File cannot be written", e);
             JOptionPane.showMessageDialog (null, String.format("Error. File cannot be written.\n" + e, JOptionPane.ERROR_MESSAGE));
         }
     }
 
     /**
-     * If previously application was closed in the middle of adding new memebers and didn't pass validation for any of them,
-     * They will be added as empty objects - and so must be removed with application's next bootup.
-     * Uses {@link java.util.ArrayList#listIterator()} to manipulate list during iteration.
+     * Checks the last background save of the clubbers succeeded, and marks them to be saved again if it failed.
+     */
+    private void checkSaved() {
+        try {
+            store.checkSaved();
+        }
+        catch(IOException e) {
+            unsaved = true; // Retried by the next autosave.
+            ClubMetrics.error("File cannot be written", e);
+        }
+    }
+
+    /**
+     * Builds the search index if it wasn't built on load, showing a wait cursor meanwhile.
      */
-    private void cleanEmptyEntries() {
-        ListIterator<ClubAbstractEntity> iter = clubbers.listIterator();
-        while(iter.hasNext())
-            if(iter.next().isEmpty())
-                iter.remove();
+    private void buildSearchIndex() {
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            searchIndex.buildIfNeeded();
+        }
+        finally {
+            setCursor(Cursor.getDefaultCursor());
+        }
     }
 
     /**
-     * Add a new clubber to clubbers arrayList.
-     * Creates an instance of one of the following: {@link Person}, {@link Soldier} or {@link Student}.
+     * Opens the {@link ClubBrowser} of all the clubbers, creating it on first use.
+     */
+    private void browseClubbers() {
+        buildSearchIndex();
+        if (browser == null)
+            browser = new ClubBrowser(this, searchIndex, clubbers);
+        else
+            browser.refresh();
+        browser.setVisible(true);
+        browser.toFront();
+    }
+
+    /**
+     * Opens a frame for a new clubber.
+     * Takes one of the following from the pool: {@link Person}, {@link Soldier} or {@link Student}.
+     * The clubber is added to the repository only once it's data is committed
+     * (see {@link #commitClubber(ClubberRecord, ClubberRecord)}), so no empty entries are kept.
      * @param memberType Type of member to add as represented by a string.
      */
     private void addNewMember(String memberType) {
-        switch (memberType) {
-            default:                     
-            case "Person":
-                clubbers.add(new Person(this));
-                break;
-            case "Soldier":
-                clubbers.add(new Soldier(this));
-                break;
-            case "Student":
-                clubbers.add(new Student(this));
-                break;
-        }
+        ClubAbstractEntity clubber = editors.acquire(ClubberType.fromDisplayName(memberType), null);
+        clubber.setLocationRelativeTo(null);
+        clubber.setVisible(true);
     }
 
     //------------------------------------------- Overridden Methods ------------------------------
@@ -206,8 +377,27 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
             addNewMember(String.valueOf(memberTpyesCmb.getSelectedItem()));
         else if (e.getSource() == searchButton)
             manipulateDB();
+        else if (e.getSource() == findButton)
+            findClubbers();
+        else if (e.getSource() == browseButton)
+            browseClubbers();
         else if (e.getSource() == exitButton) {
             writeClubbersDBtoFile();
+            try {
+                store.close();
+            }
+            catch(IOException ex) {
+                ClubMetrics.error("File cannot be written", ex);
+                JOptionPane.showMessageDialog (null, String.format("Error. File cannot be written.\n" + ex, JOptionPane.ERROR_MESSAGE));
+            }
+            try {
+                if (checkIns != null)
+                    checkIns.close();
+            }
+            catch(IOException ex) {
+                ClubMetrics.error("Check-ins cannot be written", ex);
+                JOptionPane.showMessageDialog (null, String.format("Error. Check-ins cannot be written.\n" + ex, JOptionPane.ERROR_MESSAGE));
+            }
             dispose();
             System.exit(0);
         }
@@ -217,9 +407,15 @@ public class NightClubMgmtApp extends JFrame implements ActionListener {
 
     /**
      * Main method for this application.
-     * @param args arguments (unused).
+     * With "--serve", runs the headless {@link ClubLookupService} instead of the GUI.
+     * @param args arguments: nothing, or "--serve".
+     * @throws IOException If the lookup service cannot be started.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--serve")) {
+            ClubLookupService.main(args);
+            return;
+        }
         NightClubMgmtApp appliction = new NightClubMgmtApp();
     }
 
@@ -8,31 +8,25 @@ public class Person extends ClubAbstractEntity {
 
     //------------------------------------------- Fields ------------------------------------------
 
-    private String id, name, surname, tel; // Clubber's personal information.
+    private static final long serialVersionUID = 1L;
     private final JTextField idTxtF, nameTxtF, surnameTxtF, telTxtF; // Text fields for personal information.
     private final JPanel idPnl, namePnl, surnamePnl, telPnl; // Panels for every data field.
 
     //------------------------------------------- Constructors ------------------------------------
 
     /**
-     * Constructor - 4 Parameters.
+     * Constructor - 1 Parameter.
+     * Creates the frame and binds it to the given clubber's data.
      * Uses an overloaded version of {@link #setTitle(String)} to name it's frame.
-     * @param id Person's ID number.
-     * @param name Person's first name.
-     * @param surname Person's last name.
-     * @param tel Person's telephone number.
+     * @param record The clubber's data, null for a new clubber.
      */
-    public Person(String id, String name, String surname, String tel) {
+    public Person(ClubberRecord record) {
+        setRecord(record);
 
-        this.id = id;
-        this.name = name;
-        this.surname = surname;
-        this.tel = tel;
-
-        idTxtF = new JTextField(id, 30);
-        nameTxtF = new JTextField(name, 30);
-        surnameTxtF = new JTextField(surname, 30);
-        telTxtF = new JTextField(tel, 30);
+        idTxtF = new JTextField((record == null ? null : record.getId()), 30);
+        nameTxtF = new JTextField((record == null ? null : record.getName()), 30);
+        surnameTxtF = new JTextField((record == null ? null : record.getSurname()), 30);
+        telTxtF = new JTextField((record == null ? null : record.getTel()), 30);
 
         idPnl = new JPanel();
         namePnl = new JPanel();
@@ -53,7 +47,7 @@ public class Person extends ClubAbstractEntity {
      * on newly created Person clubber.
      */
     public Person() {
-        this(null,null,null,null);
+        this((ClubberRecord)null);
         toggleCancelButton(false);
         setVisible(true); // It is called when creating a new member, so an empty frame shall popup.
     }
@@ -70,19 +64,18 @@ public class Person extends ClubAbstractEntity {
         setClubManager(clubManager);
     }
 
-    //------------------------------------------- Methods -----------------------------------------
-
     /**
-     * Checks if this class is considered empty.
-     * Since all fields need to be validated and commited at the same time,
-     * it's enough to check the id
-     * @return True if this instance is considered empty, false otherwise.
+     * Constructor for club manager, for opening an existing clubber.
+     * @param clubManager The manager who opened this clubber.
+     * @param record The clubber's data.
      */
-    @Override
-    public boolean isEmpty() {
-        return id == null;
+    public Person(NightClubMgmtApp clubManager, ClubberRecord record) {
+        this(record);
+        setClubManager(clubManager);
     }
 
+    //------------------------------------------- Methods -----------------------------------------
+
     /**
      * Create panels with labels for each text field and add to the center panel of the frame.
      * Places each panel in the center panel using {@link ClubAbstractEntity#addToCenter(Component guiComponent)}.
@@ -98,6 +91,24 @@ public class Person extends ClubAbstractEntity {
         }
     }
 
+    /**
+     * Returns the panel of a personal information field.
+     * @param field The field.
+     * @return The field's panel.
+     */
+    private JPanel fieldPanel(ClubberValidator.Field field) {
+        switch (field) {
+            case NAME:
+                return namePnl;
+            case SURNAME:
+                return surnamePnl;
+            case TEL:
+                return telPnl;
+            default:
+                return idPnl;
+        }
+    }
+
     //------------------------------------------- Overridden Methods ------------------------------
 
     /**
@@ -115,68 +126,68 @@ public class Person extends ClubAbstractEntity {
     }
 
     /**
-     * Returns true if given value of key matches id value.
-     * Uses {@link java.lang.String#equals(Object anObject)} for checking key matching id.
-     * @param key Key to be matched with id.
-     * @return True if key matches the id.
-     */
-    @Override
-    public boolean match(String key) {
-        return key.equals(id);
-    }
-
-    /**
-     * Validates the JTextField data values using regex pattern matching.
-     * Uses {@link java.lang.String#matches(String regex)} for comparing string content with given regex patterns.
+     * Validates the JTextField data values using the person rules of {@link ClubberValidator}.
      * Uses {@link ClubAbstractEntity#addAsterisk(JPanel jp)} to mark faulty fields.
      * @return True if validation passed, false otherwise.
      */
     @Override
     protected boolean validateData() {
         removeAsterisk(); // Remove previous red asterisk of error before revalidation.
-        String[] pattern = { "\\d-\\d{7}[|][1-9]",
-                "[A-Z][a-z]+",
-                "([A-Z][a-z]*['-]?)+",
-                "\\+[(][1-9]\\d{0,2}[)][1-9]\\d{0,2}-[1-9]\\d{6}" };
-        String[] textFidData = { idTxtF.getText(),
-                nameTxtF.getText(),
-                surnameTxtF.getText(),
-                telTxtF.getText() };
-        JPanel[] panels = { idPnl, namePnl, surnamePnl, telPnl };      
-        for(int i = 0; i < pattern.length; i++)
-            if (!textFidData[i].matches(pattern[i])) {
-                addAsterisk(panels[i]); // Sets asterisk at given error location.
-                return false;
-            }
+        ClubberValidator.Field invalid = ClubberValidator.firstInvalid(ClubberType.PERSON,
+                idTxtF.getText(), nameTxtF.getText(), surnameTxtF.getText(), telTxtF.getText(), null);
+        if (invalid != null) {
+            addAsterisk(fieldPanel(invalid)); // Sets asterisk at given error location.
+            return false;
+        }
         return true;
     }
 
     /**
-     * Sets the string data according to JtextField inputs.
+     * Creates the record of this clubber from given personal information.
+     * Overridden by inheritors to add their own credential to the record.
+     * @param id Clubber's ID number.
+     * @param name Clubber's first name.
+     * @param surname Clubber's last name.
+     * @param tel Clubber's telephone number.
+     * @return A new person record.
+     */
+    protected ClubberRecord createRecord(String id, String name, String surname, String tel) {
+        return new ClubberRecord(ClubberType.PERSON, id, name, surname, tel, null);
+    }
+
+    /**
+     * Sets a new record according to JtextField inputs.
+     * Uses {@link #createRecord(String, String, String, String)} so inheritors' records are created.
      * Uses {@link ClubAbstractEntity#toggleCancelButton(boolean safeToEnable)}
      * to enable cancel button after successful commit.
      */
     @Override
     protected void commit() {
         toggleCancelButton(true); // After first commit cancel button can be enabled.
-        id = idTxtF.getText();
-        name = nameTxtF.getText();
-        surname = surnameTxtF.getText();
-        tel = telTxtF.getText();
+        setRecord(createRecord(idTxtF.getText(), nameTxtF.getText(), surnameTxtF.getText(), telTxtF.getText()));
     }
 
     /**
-     * Resets the JtextField inputs according to string data.
+     * Resets the JtextField inputs according to the record.
      * Uses {@link ClubAbstractEntity#removeAsterisk()} to remove faulty field mark
      * (if exists).
      */
     @Override
     protected void rollBack() {
         removeAsterisk();
-        idTxtF.setText(id);
-        nameTxtF.setText(name);
-        surnameTxtF.setText(surname);
-        telTxtF.setText(tel);
+        ClubberRecord record = getRecord();
+        idTxtF.setText(record == null ? null : record.getId());
+        nameTxtF.setText(record == null ? null : record.getName());
+        surnameTxtF.setText(record == null ? null : record.getSurname());
+        telTxtF.setText(record == null ? null : record.getTel());
+    }
+
+    /**
+     * @return {@link ClubberType#PERSON}.
+     */
+    @Override
+    public ClubberType getClubberType() {
+        return ClubberType.PERSON;
     }
 
     /**
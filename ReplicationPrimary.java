@@ -0,0 +1,302 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store that ships every committed change to read replicas over TCP (see {@link ClubberReplica}),
+ * on top of the store that persists the repository, which it wraps.
+ * <p>
+ * Changes are numbered, encoded once as journal entries are (the member's old id and new data, in
+ * {@link ClubberFileFormat}), and kept in a backlog of the most recent changes. Each replica is served
+ * by it's own thread, which sends the changes as soon as they are committed, and a heartbeat when there are none.
+ * A replica connects with the last change it applied. If the backlog still holds the changes after it,
+ * they are sent; otherwise, as on first connection or once the primary restarted (a new run of the primary
+ * numbers it's changes anew), the replica gets a snapshot of all the members first, then the changes after it.
+ * A replica that falls further behind than the backlog is disconnected, and catches up from a snapshot.
+ * <p>
+ * Protocol, all numbers big-endian: the replica sends {@link #MAGIC} (int), {@link #VERSION} (short),
+ * the run of the primary it replicates (long, 0 for none) and the last change it applied (long).
+ * The primary then sends messages, each a type byte followed by:
+ * {@link #SNAPSHOT} - run (long), last change included (long), number of members (int), and each member's length (int) and data;
+ * {@link #CHANGE} - change number (long), commit time in milliseconds (long), length (int) and the change;
+ * {@link #HEARTBEAT} - last change number (long) and the time in milliseconds (long).
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ReplicationPrimary implements ClubberStore {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final int MAGIC = 0x424B5250; // "BKRP"
+    public static final short VERSION = 1; // Current protocol version.
+    public static final byte SNAPSHOT = 'S', CHANGE = 'C', HEARTBEAT = 'H'; // Types of the primary's messages.
+    public static final int HEARTBEAT_MILLIS = 500; // Longest time the primary stays silent.
+
+    private final ClubberStore store; // The store persisting the repository.
+    private final int port; // The port replicas connect to.
+    private final InetAddress bindAddress; // The address listened on.
+    private final long run; // Number of this run of the primary, which change numbers belong to.
+    private final Change[] backlog; // The most recent changes, by number modulo their count.
+    private long sequence; // Number of the last change.
+    private ClubberRepository repository; // The repository, once loaded.
+    private ServerSocket server; // The listening socket, once loaded.
+    private ExecutorService replicas; // Runs a thread per replica.
+    private volatile boolean running; // Are replicas served?
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 3 Parameters.
+     * Listens on the loopback address only, for replicas on the same host.
+     * @param store The store persisting the repository.
+     * @param port The port replicas connect to, 0 for any free port.
+     * @param backlog Number of recent changes kept for replicas that reconnect.
+     */
+    public ReplicationPrimary(ClubberStore store, int port, int backlog) {
+        this(store, port, InetAddress.getLoopbackAddress(), backlog);
+    }
+
+    /**
+     * Constructor - 4 Parameters.
+     * @param store The store persisting the repository.
+     * @param port The port replicas connect to, 0 for any free port.
+     * @param bindAddress The address to listen on, null for all addresses. Replicas aren't authenticated,
+     *                    so listening beyond the loopback address exposes every member's data to the network.
+     * @param backlog Number of recent changes kept for replicas that reconnect.
+     */
+    public ReplicationPrimary(ClubberStore store, int port, InetAddress bindAddress, int backlog) {
+        if (backlog < 1)
+            throw new IllegalArgumentException("Backlog must be positive: " + backlog);
+        this.store = store;
+        this.port = port;
+        this.bindAddress = bindAddress;
+        this.run = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        this.backlog = new Change[backlog];
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @return The port replicas connect to, once loaded.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts replicas until closed.
+     */
+    private void acceptReplicas() {
+        while (running) {
+            try {
+                final Socket socket = server.accept();
+                replicas.execute(() -> serve(socket));
+            }
+            catch (IOException e) {
+                if (running)
+                    ClubMetrics.error("Replication cannot accept a replica", e);
+            }
+        }
+    }
+
+    /**
+     * Serves a replica until it disconnects, falls behind the backlog or the primary is closed.
+     * @param socket The replica's connection.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16))) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(10 * HEARTBEAT_MILLIS);
+            if (in.readInt() != MAGIC || in.readShort() != VERSION)
+                throw new StreamCorruptedException("Not a replica of this version: " + s.getRemoteSocketAddress());
+            long replicaRun = in.readLong();
+            long next = in.readLong() + 1;
+            if (replicaRun != run || !inBacklog(next))
+                next = sendSnapshot(out) + 1;
+            while (running) {
+                Change change;
+                long last;
+                synchronized (this) {
+                    if (sequence < next && running)
+                        wait(HEARTBEAT_MILLIS);
+                    last = sequence;
+                    if (next <= last && !inBacklog(next))
+                        return; // Fell behind, let it catch up from a snapshot.
+                    change = (next <= last ? backlog[(int)(next % backlog.length)] : null);
+                }
+                if (change == null) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(last);
+                    out.writeLong(System.currentTimeMillis());
+                    out.flush();
+                    continue;
+                }
+                out.writeByte(CHANGE);
+                out.writeLong(change.sequence);
+                out.writeLong(change.time);
+                out.writeInt(change.payload.length);
+                out.write(change.payload);
+                next++;
+                if (next > last) // Flush once the changes already committed are sent.
+                    out.flush();
+            }
+        }
+        catch (SocketException | EOFException e) {
+            // Replica went away, or the primary was closed.
+        }
+        catch (IOException e) {
+            ClubMetrics.error("Replication to a replica failed", e);
+        }
+        catch (InterruptedException e) {
+            // The primary was closed.
+        }
+    }
+
+    /**
+     * @param next Number of a change.
+     * @return True if the backlog holds all the changes from that one on, false otherwise.
+     */
+    private synchronized boolean inBacklog(long next) {
+        return next > 0 && next > sequence - backlog.length;
+    }
+
+    /**
+     * Sends a snapshot of all the members.
+     * @param out The replica's connection.
+     * @return The number of the last change included in the snapshot.
+     * @throws IOException If the snapshot cannot be sent.
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        List<ClubberRecord> records;
+        long last;
+        synchronized (this) { // A change committed meanwhile may be in the copy and sent after it, applying it is idempotent.
+            last = sequence;
+            records = SnapshotClubberStore.copyOf(repository);
+        }
+        out.writeByte(SNAPSHOT);
+        out.writeLong(run);
+        out.writeLong(last);
+        out.writeInt(records.size());
+        ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        for (ClubberRecord record : records) {
+            body.reset();
+            ClubberFileFormat.writeRecord(bodyOut, record);
+            out.writeInt(body.size());
+            body.writeTo(out);
+        }
+        out.flush();
+        return last;
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    /**
+     * Loads the repository from the wrapped store, then starts serving replicas.
+     */
+    @Override
+    public void load(ClubberRepository repository) throws IOException {
+        store.load(repository);
+        this.repository = repository;
+        server = new ServerSocket(port, 64, bindAddress);
+        replicas = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "BK replication");
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        replicas.execute(this::acceptReplicas);
+    }
+
+    /**
+     * Passes the change to the wrapped store, then ships it to the replicas.
+     */
+    @Override
+    public void committed(ClubberRecord old, ClubberRecord updated) throws IOException {
+        store.committed(old, updated);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ClubberFileFormat.writeString(out, (old == null ? null : old.getId()));
+        ClubberFileFormat.writeRecord(out, updated);
+        byte[] payload = bytes.toByteArray();
+        synchronized (this) {
+            sequence++;
+            backlog[(int)(sequence % backlog.length)] = new Change(sequence, System.currentTimeMillis(), payload);
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void save(ClubberRepository repository) throws IOException {
+        store.save(repository);
+    }
+
+    @Override
+    public void compact(ClubberRepository repository) throws IOException {
+        store.compact(repository);
+    }
+
+    @Override
+    public void checkSaved() throws IOException {
+        store.checkSaved();
+    }
+
+    /**
+     * Disconnects the replicas, then closes the wrapped store.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            if (server != null) {
+                server.close();
+                replicas.shutdownNow();
+                replicas.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            store.close();
+        }
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * A committed change, as shipped to replicas.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class Change {
+
+        private final long sequence; // Number of the change.
+        private final long time; // Commit time, in milliseconds.
+        private final byte[] payload; // The member's old id and new data.
+
+        /**
+         * Constructor - 3 Parameters.
+         * @param sequence Number of the change.
+         * @param time Commit time, in milliseconds.
+         * @param payload The member's old id and new data.
+         */
+        private Change(long sequence, long time, byte[] payload) {
+            this.sequence = sequence;
+            this.time = time;
+            this.payload = payload;
+        }
+
+    } // Change - End of class definition.
+
+} // ReplicationPrimary - End of class definition.
@@ -0,0 +1,324 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Store that splits the clubbers repository into shard files, by a hash of the members' ids,
+ * so they are loaded on all cores at once and a save rewrites only the shards that changed.
+ * Shard i of data file "BKCustomers.dat" is the file "BKCustomers.dat.i", a snapshot in {@link ClubberFileFormat}.
+ * <p>
+ * Loading reads the shards in parallel on the common fork-join pool, each straight into the repository,
+ * whose index takes concurrent additions. Without shard files, the unsharded data file is loaded instead,
+ * and the next save splits it's members into shards; once they are all written, the unsharded file is renamed
+ * by appending ".unsharded", so it isn't read again in place of the shards. Shards found in a different
+ * number than configured are likewise all rewritten by the next save, and surplus shard files deleted.
+ * <p>
+ * Commits mark the shards of the changed members. A save copies the members of the marked shards and
+ * writes them in the background, the shards in parallel, each to a temporary file which then atomically
+ * replaces the shard. A shard that failed to be written is marked again, and the error is thrown
+ * by the next save, or by {@link #close()}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ShardedClubberStore implements ClubberStore {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final File file; // The data file, whose path the shard files extend.
+    private final int shards; // Number of shards.
+    private final AtomicIntegerArray changed; // For each shard, 1 if it changed since it was last written.
+    private volatile boolean migrating; // Were the members loaded from the unsharded data file, which the shards replace?
+    private ExecutorService saver; // Writes shards in the background, created on the first save.
+    private volatile IOException backgroundError; // Last error of a background save.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 2 Parameters.
+     * @param file The data file, whose path the shard files extend.
+     * @param shards Number of shards.
+     */
+    public ShardedClubberStore(File file, int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException("Number of shards must be positive: " + shards);
+        this.file = file;
+        this.shards = shards;
+        this.changed = new AtomicIntegerArray(shards);
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param shard A shard.
+     * @return The shard's file.
+     */
+    public File shardFile(int shard) {
+        return new File(file.getPath() + "." + shard);
+    }
+
+    /**
+     * Streams the members of a sharded data file: it's shard files, or the unsharded data file if it has none yet.
+     * @param file The data file, whose path the shard files extend.
+     * @param sink Receives the members.
+     * @throws IOException If a file cannot be read, or the sink fails.
+     */
+    public static void readShards(File file, LegacyClubberReader.Sink sink) throws IOException {
+        int found = 0;
+        while (new File(file.getPath() + "." + found).exists())
+            found++;
+        if (found == 0)
+            ClubberStorage.readFile(file, sink);
+        for (int i = 0; i < found; i++)
+            ClubberStorage.readFile(new File(file.getPath() + "." + i), sink);
+    }
+
+    /**
+     * Returns the shard of a member, by it's id, so the member stays in it's shard while it's id is kept.
+     * @param record The member.
+     * @return The member's shard.
+     */
+    public int shardOf(ClubberRecord record) {
+        int h = record.getId().hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    /**
+     * Marks all the shards as changed, so the next save rewrites them all.
+     */
+    private void changeAll() {
+        for (int i = 0; i < shards; i++)
+            changed.set(i, 1);
+    }
+
+    /**
+     * Runs tasks on the common fork-join pool and waits for all of them.
+     * @param tasks The tasks.
+     * @return For each task, the error it threw, or null if it succeeded.
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    private static List<Exception> runInParallel(List<Callable<Void>> tasks) throws InterruptedIOException {
+        List<Exception> errors = new ArrayList<Exception>(tasks.size());
+        List<Future<Void>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+                errors.add(null);
+            }
+            catch (ExecutionException e) {
+                errors.add(e.getCause() instanceof Exception ? (Exception)e.getCause() : e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the shards");
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * @param e An error of a shard task.
+     * @return The error, as an IOException.
+     */
+    private static IOException asIOException(Exception e) {
+        if (e instanceof IOException)
+            return (IOException)e;
+        if (e instanceof UncheckedIOException)
+            return ((UncheckedIOException)e).getCause();
+        return new IOException(e);
+    }
+
+    /**
+     * Writes the given shards, in parallel, and deletes surplus shard files.
+     * Shards that fail to be written are marked as changed again.
+     * Once all the shards are written after loading the unsharded data file, that file is renamed.
+     * @param contents For each shard, it's members, or null if it isn't written.
+     * @throws IOException The first error writing a shard.
+     */
+    private void writeShards(List<List<ClubberRecord>> contents) throws IOException {
+        List<Callable<Void>> writes = new ArrayList<Callable<Void>>();
+        List<Integer> written = new ArrayList<Integer>();
+        for (int i = 0; i < shards; i++) {
+            final List<ClubberRecord> records = contents.get(i);
+            final File target = shardFile(i);
+            if (records != null) {
+                writes.add(() -> {
+                    SnapshotClubberStore.replaceSnapshot(records, 0, target);
+                    return null;
+                });
+                written.add(i);
+            }
+        }
+        List<Exception> errors = runInParallel(writes);
+        IOException error = null;
+        for (int i = 0; i < errors.size(); i++)
+            if (errors.get(i) != null) {
+                changed.set(written.get(i), 1); // Write it with the next save.
+                if (error == null)
+                    error = asIOException(errors.get(i));
+            }
+        if (error != null)
+            throw error;
+        for (int i = shards; shardFile(i).exists(); i++)
+            if (!shardFile(i).delete())
+                throw new IOException("Surplus shard cannot be deleted: " + shardFile(i));
+        if (migrating && written.size() == shards && file.exists()) {
+            Files.move(file.toPath(), new File(file.getPath() + ".unsharded").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            migrating = false;
+        }
+    }
+
+    /**
+     * @return The executor of background saves, created on first use.
+     */
+    private synchronized ExecutorService saver() {
+        if (saver == null)
+            saver = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "BK shards");
+                t.setDaemon(true);
+                return t;
+            });
+        return saver;
+    }
+
+    /**
+     * Waits for the pending background saves, however long they take, so no committed member is lost on exit.
+     * @throws IOException If the last background save failed, or the wait was interrupted.
+     */
+    private void awaitSaves() throws IOException {
+        ExecutorService pending;
+        synchronized (this) {
+            pending = saver;
+            saver = null;
+        }
+        if (pending != null) {
+            pending.shutdown();
+            try {
+                while (!pending.awaitTermination(1, TimeUnit.MINUTES))
+                    ClubMetrics.error("Members are still being saved, waiting", null);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the members to be saved");
+            }
+        }
+        checkSaved();
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public void load(ClubberRepository repository) throws IOException {
+        long start = ClubMetrics.LOAD.start();
+        try {
+            int found = 0;
+            while (shardFile(found).exists())
+                found++;
+            if (found == 0) {
+                new SnapshotClubberStore(file).readSnapshot(repository); // Members of the unsharded store, if any.
+                if (repository.size() > 0) {
+                    changeAll();
+                    migrating = true;
+                }
+                return;
+            }
+            List<Callable<Void>> reads = new ArrayList<Callable<Void>>(found);
+            for (int i = 0; i < found; i++) {
+                final SnapshotClubberStore shard = new SnapshotClubberStore(shardFile(i));
+                reads.add(() -> {
+                    shard.readSnapshot(repository);
+                    return null;
+                });
+            }
+            for (Exception error : runInParallel(reads))
+                if (error != null)
+                    throw asIOException(error);
+            if (found != shards)
+                changeAll(); // Sharded differently, split the members again.
+        }
+        finally {
+            ClubMetrics.LOAD.stop(start);
+        }
+    }
+
+    /**
+     * Marks the shards of the member's old and new data as changed.
+     */
+    @Override
+    public void committed(ClubberRecord old, ClubberRecord updated) {
+        if (old != null)
+            changed.set(shardOf(old), 1);
+        changed.set(shardOf(updated), 1);
+    }
+
+    /**
+     * Copies the members of the changed shards and writes them in the background.
+     * @throws IOException If the previous background save failed.
+     */
+    @Override
+    public void save(ClubberRepository repository) throws IOException {
+        List<List<ClubberRecord>> contents = new ArrayList<List<ClubberRecord>>(shards);
+        boolean any = false;
+        for (int i = 0; i < shards; i++) {
+            boolean write = (changed.getAndSet(i, 0) == 1);
+            contents.add(write ? new ArrayList<ClubberRecord>() : null);
+            any |= write;
+        }
+        if (any) {
+            for (ClubberRecord record : repository) {
+                List<ClubberRecord> shard = contents.get(shardOf(record));
+                if (shard != null)
+                    shard.add(record);
+            }
+            saver().execute(() -> {
+                try {
+                    writeShards(contents);
+                }
+                catch (IOException e) {
+                    ClubMetrics.error("Shards cannot be saved", e);
+                    backgroundError = e;
+                }
+            });
+        }
+        checkSaved();
+    }
+
+    /**
+     * Writes all the shards, and waits for them.
+     */
+    @Override
+    public void compact(ClubberRepository repository) throws IOException {
+        changeAll();
+        save(repository);
+        awaitSaves();
+    }
+
+    /**
+     * Waits for the pending background saves, however long they take, so no committed member is lost on exit.
+     * @throws IOException If the last background save failed, or the wait was interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        awaitSaves();
+    }
+
+    /**
+     * @throws IOException If a background save failed since the last one was reported.
+     */
+    @Override
+    public void checkSaved() throws IOException {
+        IOException error = backgroundError;
+        backgroundError = null;
+        if (error != null)
+            throw error;
+    }
+
+} // ShardedClubberStore - End of class definition.
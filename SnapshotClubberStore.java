@@ -0,0 +1,271 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store that keeps the whole clubbers repository in a single snapshot file.
+ * Every save rewrites the file with all the members, in {@link ClubberFileFormat}.
+ * Snapshots written by older versions with Java serialization can still be loaded, and are kept beside the new file.
+ * <p>
+ * Saving doesn't wait for the file to be written: the members are copied (records are immutable,
+ * so copying their references is a consistent snapshot) and written by a background thread
+ * to a temporary file, which then atomically replaces the snapshot file. A crash while writing
+ * leaves the previous snapshot intact. A save still waiting when a newer one is requested is skipped.
+ * Errors of a background save are thrown by the next save, or by {@link #close()}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class SnapshotClubberStore implements ClubberStore {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private final File file; // The snapshot file.
+    private final AtomicLong requested; // Number of the latest requested save.
+    private ExecutorService saver; // Writes snapshots in the background, created on the first save.
+    private volatile IOException backgroundError; // Last error of a background save.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Constructor - 1 Parameter.
+     * @param file The snapshot file.
+     */
+    public SnapshotClubberStore(File file) {
+        this.file = file;
+        this.requested = new AtomicLong();
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Reads the members from the snapshot file into the given repository.
+     * @param repository The repository to load the members into.
+     * @return The sequence number of the last change included in the snapshot, 0 if unknown.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public long readSnapshot(ClubberRepository repository) throws IOException {
+        if (!file.exists())
+            return 0; // If first run, file shouldn't exist anyway.
+        if (!ClubberFileFormat.isFormatOf(file)) {
+            keepLegacyCopy(file);
+            return readSerializedSnapshot(file, repository);
+        }
+        try (ClubberFileFormat.Reader reader = new ClubberFileFormat.Reader(file, ClubberDictionary.SHARED)) {
+            while (reader.next())
+                repository.add(reader.record());
+            return reader.getSequence();
+        }
+    }
+
+    /**
+     * Reads the members from a snapshot file written with Java serialization by older versions,
+     * either lists of records or the first versions' lists of member frames (see {@link LegacyClubberReader}).
+     * Members that cannot be loaded (without an id, with a lost field, or with the credentials of a member read before them)
+     * are counted and logged as an error.
+     * @param file The snapshot file.
+     * @param repository The repository to load the members into.
+     * @return The sequence number of the last change included in the snapshot, 0 if unknown.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public static long readSerializedSnapshot(File file, ClubberRepository repository) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            LegacyClubberReader reader = new LegacyClubberReader(in, ClubberDictionary.SHARED);
+            long[] refused = new long[1];
+            long sequence = reader.read(record -> {
+                if (!repository.add(record))
+                    refused[0]++;
+            });
+            if (reader.getDropped() > 0 || reader.getUnresolved() > 0 || refused[0] > 0)
+                ClubMetrics.error(String.format("%s: %d empty entries dropped, %d unresolved, %d duplicates refused",
+                        file, reader.getDropped(), reader.getUnresolved(), refused[0]), null);
+            return sequence;
+        }
+    }
+
+    /**
+     * Copies a serialized snapshot file to a file beside it, with ".legacy" appended to it's name,
+     * before it is loaded and then replaced by the first save in the new format (as {@link ClubberMigrator} keeps it).
+     * Nothing is copied if the copy exists, so the copy is of the file as it was first converted.
+     * @param file The serialized snapshot file.
+     * @throws IOException If the file cannot be copied.
+     */
+    public static void keepLegacyCopy(File file) throws IOException {
+        File kept = new File(file.getPath() + ".legacy");
+        if (!kept.exists())
+            Files.copy(file.toPath(), kept.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    /**
+     * Writes the given members to a snapshot file.
+     * @param records The members to be written.
+     * @param sequence The sequence number of the last change included in the snapshot.
+     * @param target The file to write to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeSnapshot(Iterable<ClubberRecord> records, long sequence, File target) throws IOException {
+        try (ClubberFileFormat.Writer writer = new ClubberFileFormat.Writer(target, sequence)) {
+            for (ClubberRecord record : records)
+                writer.append(record);
+        }
+    }
+
+    /**
+     * Writes the given members to a temporary file, which then atomically replaces the target file.
+     * @param records The members to be written.
+     * @param sequence The sequence number of the last change included in the snapshot.
+     * @param target The file to replace.
+     * @throws IOException If the file cannot be written or replaced.
+     */
+    public static void replaceSnapshot(Iterable<ClubberRecord> records, long sequence, File target) throws IOException {
+        long start = ClubMetrics.SAVE.start();
+        try {
+            File temp = new File(target.getPath() + ".tmp");
+            writeSnapshot(records, sequence, temp);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            ClubMetrics.SAVE.stop(start);
+        }
+    }
+
+    /**
+     * Copies the members of a repository, as a snapshot which later changes of the repository don't affect.
+     * Should be called by the thread committing changes, so no change is half seen.
+     * @param repository The repository.
+     * @return The members.
+     */
+    public static List<ClubberRecord> copyOf(ClubberRepository repository) {
+        ArrayList<ClubberRecord> records = new ArrayList<ClubberRecord>(repository.size());
+        for (ClubberRecord record : repository)
+            records.add(record);
+        return records;
+    }
+
+    /**
+     * @return The executor of background saves, created on first use.
+     */
+    private synchronized ExecutorService saver() {
+        if (saver == null)
+            saver = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "BK snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+        return saver;
+    }
+
+    /**
+     * @return The snapshot file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public void load(ClubberRepository repository) throws IOException {
+        long start = ClubMetrics.LOAD.start();
+        try {
+            readSnapshot(repository);
+        }
+        finally {
+            ClubMetrics.LOAD.stop(start);
+        }
+    }
+
+    /**
+     * Nothing to do, changes are written on the next save.
+     */
+    @Override
+    public void committed(ClubberRecord old, ClubberRecord updated) {
+    }
+
+    /**
+     * Copies the members and writes them in the background.
+     * @throws IOException If the previous background save failed.
+     */
+    @Override
+    public void save(ClubberRepository repository) throws IOException {
+        final List<ClubberRecord> records = copyOf(repository);
+        final long request = requested.incrementAndGet();
+        saver().execute(() -> {
+            if (request != requested.get())
+                return; // A newer save will write the members.
+            try {
+                replaceSnapshot(records, 0, file);
+            }
+            catch (IOException e) {
+                ClubMetrics.error("Snapshot cannot be saved", e);
+                backgroundError = e;
+            }
+        });
+        checkSaved();
+    }
+
+    /**
+     * Writes the members after the pending background saves, and waits for it.
+     * @throws IOException If the members cannot be written.
+     */
+    @Override
+    public void compact(ClubberRepository repository) throws IOException {
+        final List<ClubberRecord> records = copyOf(repository);
+        requested.incrementAndGet(); // Saves still waiting are older, skip them.
+        try {
+            saver().submit(() -> {
+                replaceSnapshot(records, 0, file);
+                return null;
+            }).get();
+        }
+        catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause()));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compacting");
+        }
+    }
+
+    /**
+     * Waits for the pending background save, however long it takes, so no committed member is lost on exit.
+     * @throws IOException If the last background save failed, or the wait was interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        ExecutorService pending;
+        synchronized (this) {
+            pending = saver;
+            saver = null;
+        }
+        if (pending != null) {
+            pending.shutdown();
+            try {
+                while (!pending.awaitTermination(1, TimeUnit.MINUTES))
+                    ClubMetrics.error("Members are still being saved, waiting", null);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the members to be saved");
+            }
+        }
+        checkSaved();
+    }
+
+    /**
+     * @throws IOException If a background save failed since the last one was reported.
+     */
+    @Override
+    public void checkSaved() throws IOException {
+        IOException error = backgroundError;
+        backgroundError = null;
+        if (error != null)
+            throw error;
+    }
+
+} // SnapshotClubberStore - End of class definition.
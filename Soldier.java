@@ -8,26 +8,21 @@ public class Soldier extends Person {
 
     //------------------------------------------- Fields ------------------------------------------
 
-    private String personalNum; // Personal number of soldier.
+    private static final long serialVersionUID = 1L;
     private final JTextField personalNumTxtF; // Text field for sodlier's personal number.
     private final JPanel personalNumPnl; // Panel for soldier's personal number.
 
     //------------------------------------------- Constructors ------------------------------------
 
     /**
-     * Constructor - 5 Parameters.
-     * @param id Soldier's ID number.
-     * @param name Soldier's first name.
-     * @param surname Soldier's last name.
-     * @param tel Soldier's telephone number.
-     * @param personalNum Soldier's personal number.
+     * Constructor - 1 Parameter.
+     * Creates the frame and binds it to the given soldier's data.
+     * @param record The soldier's data, null for a new soldier.
      */
-    public Soldier(String id, String name, String surname, String tel, String personalNum) {
-        super(id, name, surname, tel);
+    public Soldier(ClubberRecord record) {
+        super(record);
 
-        this.personalNum = personalNum;
-
-        personalNumTxtF = new JTextField(personalNum, 30);
+        personalNumTxtF = new JTextField((record == null ? null : record.getPersonalNum()), 30);
         personalNumPnl = new JPanel();
         personalNumPnl.add(new JLabel("Personal NO.", JLabel.TRAILING));
         personalNumPnl.add(personalNumTxtF);
@@ -43,7 +38,7 @@ public class Soldier extends Person {
      * Used for creating a blank clubber entity.
      */
     public Soldier() {
-        this(null, null, null, null, null);
+        this((ClubberRecord)null);
         toggleCancelButton(false);
         setVisible(true); // It is called when creating a new member, so an empty frame shall popup.
     }
@@ -59,6 +54,16 @@ public class Soldier extends Person {
         setClubManager(clubManager);
     }
 
+    /**
+     * Constructor for club manager, for opening an existing soldier.
+     * @param clubManager The manager who opened this soldier.
+     * @param record The soldier's data.
+     */
+    public Soldier(NightClubMgmtApp clubManager, ClubberRecord record) {
+        this(record);
+        setClubManager(clubManager);
+    }
+
     //------------------------------------------- Methods -----------------------------------------
     //------------------------------------------- Overridden Methods ------------------------------
 
@@ -80,24 +85,14 @@ public class Soldier extends Person {
     }
 
     /**
-     * Checks for matching key according to certain ID parameters.
-     * Extends {@link Person#match(String key)} functions for personal number.
-     * @return True if key matches either id or personal number.
-     */
-    @Override
-    public boolean match(String key) {
-        return super.match(key) || key.equals(personalNum);
-    }
-
-    /**
-     * Does a regex validation for the text fields.
+     * Validates the text fields with the rules of {@link ClubberValidator}.
      * Extends {@link Person#validateData() } functions for personal number.
      * @return True if validation passed, false otherwise.
      */
     @Override
     protected boolean validateData() {
         if(super.validateData()) { // First, validate native fields.
-            if (!personalNumTxtF.getText().matches("[ROC]/[1-9]\\d{6}")) { // If passed, validate special field.
+            if (!ClubberValidator.isValid(ClubberValidator.Field.PERSONAL_NUM, personalNumTxtF.getText())) { // If passed, validate special field.
                 addAsterisk(personalNumPnl);
                 return false; // Validation failed at special field.
             }
@@ -107,23 +102,32 @@ public class Soldier extends Person {
     }
 
     /**
-     * Resets textfields according to internal data.
+     * Resets textfields according to the record.
      * Extends {@link Person#rollBack()} for personal number.
      */
     @Override
     protected void rollBack() {
         super.rollBack();
-        personalNumTxtF.setText(personalNum);
+        ClubberRecord record = getRecord();
+        personalNumTxtF.setText(record == null ? null : record.getPersonalNum());
+    }
+
+    /**
+     * Creates a soldier record, with the personal number from it's text field.
+     * Overrides {@link Person#createRecord(String, String, String, String)}.
+     * @return A new soldier record.
+     */
+    @Override
+    protected ClubberRecord createRecord(String id, String name, String surname, String tel) {
+        return new ClubberRecord(ClubberType.SOLDIER, id, name, surname, tel, personalNumTxtF.getText());
     }
 
     /**
-     * Replaces internal data according to text fields.
-     * Extends {@link Person#commit()} for personal number.
+     * @return {@link ClubberType#SOLDIER}.
      */
     @Override
-    protected void commit() {
-        super.commit();
-        personalNum = personalNumTxtF.getText();
+    public ClubberType getClubberType() {
+        return ClubberType.SOLDIER;
     }
 
 } // Soldier - End of class definition. 
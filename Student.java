@@ -8,26 +8,21 @@ public class Student extends Person {
 
     //------------------------------------------- Fields ------------------------------------------
 
-    private String studentId; // Student Id information field.
+    private static final long serialVersionUID = 1L;
     private final JTextField studentIdTxtF; // Text field for student's id.
     private final JPanel studentIdPnl; // Panel for student id.
 
     //------------------------------------------- Constructors ------------------------------------
 
     /**
-     * Constructor - 5 Parameters.
-     * @param id Student's ID number.
-     * @param name Student's first name.
-     * @param surname Student's last name.
-     * @param tel Student's telephone number.
-     * @param studentId Student's student ID number.
+     * Constructor - 1 Parameter.
+     * Creates the frame and binds it to the given student's data.
+     * @param record The student's data, null for a new student.
      */
-    public Student(String id, String name, String surname,String tel ,String studentId) {
-        super(id, name, surname, tel);
+    public Student(ClubberRecord record) {
+        super(record);
 
-        this.studentId = studentId;
-
-        studentIdTxtF = new JTextField(studentId, 30);
+        studentIdTxtF = new JTextField((record == null ? null : record.getStudentId()), 30);
         studentIdPnl = new JPanel();
         studentIdPnl.add(new JLabel("Student ID", JLabel.TRAILING));
         studentIdPnl.add(studentIdTxtF);
@@ -43,7 +38,7 @@ public class Student extends Person {
      * Used for creating a blank clubber entity.
      */
     public Student() {
-        this(null, null, null, null, null);
+        this((ClubberRecord)null);
         toggleCancelButton(false);
         setVisible(true);
     }
@@ -59,6 +54,16 @@ public class Student extends Person {
         setClubManager(clubManager);
     }
 
+    /**
+     * Constructor for club manager, for opening an existing student.
+     * @param clubManager The manager who opened this student.
+     * @param record The student's data.
+     */
+    public Student(NightClubMgmtApp clubManager, ClubberRecord record) {
+        this(record);
+        setClubManager(clubManager);
+    }
+
     //------------------------------------------- Methods -----------------------------------------
     //------------------------------------------- Overridden Methods ------------------------------
 
@@ -70,7 +75,7 @@ public class Student extends Person {
     @Override
     protected boolean duplicateCredentialCheck() {
         boolean idCheck = super.duplicateCredentialCheck();
-        if(duplicateCredentialCheck(studentIdTxtF.getText().substring(4))) {
+        if(duplicateCredentialCheck(ClubberRecord.studentNumber(studentIdTxtF.getText()))) {
             JOptionPane.showMessageDialog(null,  String.format("Clubber with student id %s already exists.%nType a different one.%n", studentIdTxtF.getText(), JOptionPane.INFORMATION_MESSAGE));
             return true;
         }
@@ -80,24 +85,14 @@ public class Student extends Person {
     }
 
     /**
-     * Checks for matching key according to certain ID parameters.
-     * Extends {@link Person#match(String key)} functions for student id.
-     * @return True if key matches either id or student id.
-     */
-    @Override
-    public boolean match(String key) {
-        return super.match(key) || key.equals(studentId.substring(4));
-    }
-
-    /**
-     * Does a regex validation for the text fields.
+     * Validates the text fields with the rules of {@link ClubberValidator}.
      * Extends {@link Person#validateData() } functions for student id.
      * @return True if validation passed, false otherwise.
      */
     @Override
     protected boolean validateData() {
         if(super.validateData()) { // First, validate native fields.
-            if (!studentIdTxtF.getText().matches("[A-Z]{3}/[1-9]\\d{4}")) { // If passed, validate special field.
+            if (!ClubberValidator.isValid(ClubberValidator.Field.STUDENT_ID, studentIdTxtF.getText())) { // If passed, validate special field.
                 addAsterisk(studentIdPnl);
                 return false; // Validation failed at special field.
             }
@@ -107,23 +102,32 @@ public class Student extends Person {
     }
 
     /**
-     * Resets textfields according to internal data.
+     * Resets textfields according to the record.
      * Extends {@link Person#rollBack()} for student id.
      */
     @Override
     protected void rollBack() {
         super.rollBack();
-        studentIdTxtF.setText(studentId);
+        ClubberRecord record = getRecord();
+        studentIdTxtF.setText(record == null ? null : record.getStudentId());
+    }
+
+    /**
+     * Creates a student record, with the student id from it's text field.
+     * Overrides {@link Person#createRecord(String, String, String, String)}.
+     * @return A new student record.
+     */
+    @Override
+    protected ClubberRecord createRecord(String id, String name, String surname, String tel) {
+        return new ClubberRecord(ClubberType.STUDENT, id, name, surname, tel, studentIdTxtF.getText());
     }
 
     /**
-     * Replaces internal data according to text fields.
-     * Extends {@link Person#commit()} for student id.
+     * @return {@link ClubberType#STUDENT}.
      */
     @Override
-    protected void commit() {
-        super.commit();
-        studentId = studentIdTxtF.getText();
+    public ClubberType getClubberType() {
+        return ClubberType.STUDENT;
     }
 
 } // Student - End of class definition. 
@@ -0,0 +1,56 @@
+/**
+ * Synthetic club members, valid by the rules of {@link ClubberValidator}, for benchmarks, tests and load testing
+ * (see bk.jmh.ClubBenchmark, and {@link ClubLookupClient}). Members are derived from their index alone,
+ * so separate processes create the same members.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public final class SyntheticClubbers {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    public static final int STUDENTS = 90000; // Number of student numbers ([1-9]\d{4}), and so of synthetic students.
+
+    //------------------------------------------- Constructors ------------------------------------
+
+    /**
+     * Private constructor - utility class.
+     */
+    private SyntheticClubbers() {
+    }
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Creates a valid synthetic member. Types rotate between person, soldier and student
+     * until there are {@link #STUDENTS} students, and between person and soldier after that.
+     * Ids, personal numbers and student numbers are unique per index, below 27 million members.
+     * @param i Index of the member.
+     * @return The member's record.
+     */
+    public static ClubberRecord clubber(int i) {
+        String id = String.format("%d-%07d|%d", (i / 10000000) % 10, i % 10000000, 1 + i % 9);
+        String name = (char)('A' + i % 26) + "ri";
+        String surname = "Co" + (char)('a' + (i / 26) % 26) + "en";
+        String tel = String.format("+(%d)%d-%d", 1 + i % 999, 1 + i % 99, 1000000 + i % 9000000);
+        ClubberType type = (i < 3 * STUDENTS ? ClubberType.values()[i % 3] : i % 2 == 0 ? ClubberType.PERSON : ClubberType.SOLDIER);
+        String credential = null;
+        if (type == ClubberType.SOLDIER)
+            credential = String.format("%c/%d", "ROC".charAt(i % 3), 1000000 + (i / 3) % 9000000);
+        else if (type == ClubberType.STUDENT)
+            credential = String.format("%c%c%c/%d", 'A' + i % 26, 'B', 'C', 10000 + i / 3);
+        return new ClubberRecord(type, id, name, surname, tel, credential);
+    }
+
+    /**
+     * Creates a repository of synthetic members.
+     * @param members Number of synthetic members to create.
+     * @return The repository.
+     */
+    public static InMemoryClubberRepository repository(int members) {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        for (int i = 0; i < members; i++)
+            repository.add(clubber(i));
+        return repository;
+    }
+
+} // SyntheticClubbers - End of class definition.
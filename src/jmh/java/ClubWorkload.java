@@ -0,0 +1,192 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The work measured by the JMH benchmarks of the repository, persistence and validation paths
+ * (see bk.jmh.ClubBenchmark), on a repository of synthetic members of mixed types (see {@link SyntheticClubbers}).
+ * Lookups cycle through prepared keys of random members, of all credential kinds, and validations through
+ * the members of those keys.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubWorkload implements bk.jmh.Workload {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int KEYS = 1 << 16; // Number of prepared lookup keys, a power of 2.
+    private static final String[] REGEX_RULES = { "\\d-\\d{7}[|][1-9]", "[A-Z][a-z]+", "([A-Z][a-z]*['-]?)+",
+            "\\+[(][1-9]\\d{0,2}[)][1-9]\\d{0,2}-[1-9]\\d{6}" }; // Validation of older versions.
+
+    private InMemoryClubberRepository repository; // The members.
+    private byte[][] hitBytes, missBytes; // Keys of members and keys of no member, as a terminal sends them.
+    private ClubberRecord[] sample; // Members of the hit keys.
+    private File binaryFile, serializedFile; // The members saved in the current format and serialized.
+    private int next; // Index of the next key or sample member.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @return Index of the next key or sample member, cycling through them.
+     */
+    private int next() {
+        return next++ & (KEYS - 1);
+    }
+
+    /**
+     * Writes members the way older versions did, as one serialized ArrayList.
+     * @param repository The members.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeSerialized(ClubberRepository repository, File file) throws IOException {
+        ArrayList<ClubberRecord> list = new ArrayList<ClubberRecord>(repository.size());
+        for (ClubberRecord record : repository)
+            list.add(record);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            oos.writeObject(list);
+        }
+    }
+
+    /**
+     * Validates a record the way older versions did, with String.matches.
+     * @param record The record.
+     * @return True if validation passed, false otherwise.
+     */
+    private static boolean validateWithRegex(ClubberRecord record) {
+        String[] values = { record.getId(), record.getName(), record.getSurname(), record.getTel() };
+        for (int i = 0; i < REGEX_RULES.length; i++)
+            if (!values[i].matches(REGEX_RULES[i]))
+                return false;
+        if (record.getType() == ClubberType.SOLDIER)
+            return record.getPersonalNum().matches("[ROC]/[1-9]\\d{6}");
+        if (record.getType() == ClubberType.STUDENT)
+            return record.getStudentId().matches("[A-Z]{3}/[1-9]\\d{4}");
+        return true;
+    }
+
+    /**
+     * Prepares lookup keys of random members, of all credential kinds.
+     * @param repository The members.
+     * @param miss Whether to prepare keys of no member instead.
+     * @return The keys.
+     */
+    private static String[] lookupKeys(InMemoryClubberRepository repository, boolean miss) {
+        Random random = new Random(42);
+        String[] keys = new String[KEYS];
+        int slots = repository.slotCount();
+        for (int i = 0; i < KEYS; i++) {
+            if (miss) {
+                keys[i] = String.format("%d-%07d|0", random.nextInt(10), random.nextInt(10000000)); // Check digit 0 is never used.
+                continue;
+            }
+            ClubberRecord record = null;
+            while (record == null)
+                record = repository.get(random.nextInt(slots));
+            List<String> credentials = record.keys();
+            keys[i] = credentials.get(random.nextInt(credentials.size()));
+        }
+        return keys;
+    }
+
+    /**
+     * Encodes lookup keys the way a terminal sends them, so every lookup builds and hashes a string of it's own,
+     * as at the door, rather than reusing the member's own string.
+     * @param keys The keys.
+     * @return The keys' bytes.
+     */
+    private static byte[][] bytesOf(String[] keys) {
+        byte[][] bytes = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++)
+            bytes[i] = keys[i].getBytes(StandardCharsets.ISO_8859_1);
+        return bytes;
+    }
+
+    //------------------------------------------- Overridden Methods ------------------------------
+
+    @Override
+    public void setUp(int members) throws IOException {
+        repository = SyntheticClubbers.repository(members);
+        String[] hits = lookupKeys(repository, false);
+        hitBytes = bytesOf(hits);
+        missBytes = bytesOf(lookupKeys(repository, true));
+        sample = new ClubberRecord[KEYS];
+        for (int i = 0; i < KEYS; i++)
+            sample[i] = repository.find(hits[i]);
+        binaryFile = File.createTempFile("bk-binary", ".dat");
+        serializedFile = File.createTempFile("bk-serialized", ".dat");
+        SnapshotClubberStore.writeSnapshot(repository, 0, binaryFile);
+        writeSerialized(repository, serializedFile);
+    }
+
+    @Override
+    public void tearDown() {
+        binaryFile.delete();
+        serializedFile.delete();
+    }
+
+    /**
+     * Every lookup builds and hashes a string of it's own, as at the door.
+     */
+    @Override
+    public Object lookup() {
+        return repository.find(new String(hitBytes[next()], StandardCharsets.ISO_8859_1));
+    }
+
+    @Override
+    public Object lookupMiss() {
+        return repository.find(new String(missBytes[next()], StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Checks a member's credential on behalf of the next sample member, as an editor does before a commit.
+     */
+    @Override
+    public boolean duplicateCheck() {
+        int i = next();
+        return repository.duplicateKeyCheck(new String(hitBytes[i], StandardCharsets.ISO_8859_1), sample[(i + 1) & (KEYS - 1)]);
+    }
+
+    /**
+     * Validates with {@link ClubberValidator}.
+     */
+    @Override
+    public Object validate() {
+        return ClubberValidator.firstInvalid(sample[next()]);
+    }
+
+    @Override
+    public boolean validateRegex() {
+        return validateWithRegex(sample[next()]);
+    }
+
+    /**
+     * Saves in {@link ClubberFileFormat}.
+     */
+    @Override
+    public void save() throws IOException {
+        SnapshotClubberStore.writeSnapshot(repository, 0, binaryFile);
+    }
+
+    /**
+     * Loads from {@link ClubberFileFormat}.
+     */
+    @Override
+    public Object load() throws IOException {
+        InMemoryClubberRepository loaded = new InMemoryClubberRepository();
+        new SnapshotClubberStore(binaryFile).readSnapshot(loaded);
+        return loaded;
+    }
+
+    @Override
+    public void saveSerialized() throws IOException {
+        writeSerialized(repository, serializedFile);
+    }
+
+    @Override
+    public Object loadSerialized() throws IOException {
+        InMemoryClubberRepository loaded = new InMemoryClubberRepository();
+        SnapshotClubberStore.readSerializedSnapshot(serializedFile, loaded);
+        return loaded;
+    }
+
+} // ClubWorkload - End of class definition.
@@ -0,0 +1,159 @@
+package bk.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the repository, persistence and validation paths.
+ * Every benchmark runs on a repository of synthetic members of mixed types (see SyntheticClubbers),
+ * at each size of {@link #members}. The work itself is done by ClubWorkload (see {@link Workload}).
+ * <p>
+ * Benchmarks: lookup (finding members by random credentials of all kinds), lookupMiss,
+ * duplicateCheck, validate (ClubberValidator), validateRegex (the String.matches validation
+ * of older versions), save and load (ClubberFileFormat), and saveSerialized and loadSerialized
+ * (the Java serialization of older versions). Lookups and validations are timed per operation,
+ * saves and loads per whole file.
+ * <p>
+ * Built by the "jmh" Maven profile: mvn -Pjmh package, then java -jar target/benchmarks.jar [JMH options],
+ * such as "lookup -p members=10000" for one benchmark and size. Results are written as JMH JSON
+ * to jmh-result.json unless "-rf" or "-rff" choose otherwise, so runs of different versions can be compared.
+ * 10M members need a heap of about 8GB.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ClubBenchmark {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int members; // Number of synthetic members.
+
+    private Workload workload; // Does the measured work.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Creates the workload, once per size.
+     * @throws Exception If the workload cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload)Class.forName("ClubWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(members);
+    }
+
+    /**
+     * Deletes the workload's files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workload.tearDown();
+    }
+
+    /**
+     * See {@link Workload#lookup()}.
+     */
+    @Benchmark
+    public Object lookup() {
+        return workload.lookup();
+    }
+
+    /**
+     * See {@link Workload#lookupMiss()}.
+     */
+    @Benchmark
+    public Object lookupMiss() {
+        return workload.lookupMiss();
+    }
+
+    /**
+     * See {@link Workload#duplicateCheck()}.
+     */
+    @Benchmark
+    public boolean duplicateCheck() {
+        return workload.duplicateCheck();
+    }
+
+    /**
+     * See {@link Workload#validate()}.
+     */
+    @Benchmark
+    public Object validate() {
+        return workload.validate();
+    }
+
+    /**
+     * See {@link Workload#validateRegex()}.
+     */
+    @Benchmark
+    public boolean validateRegex() {
+        return workload.validateRegex();
+    }
+
+    /**
+     * See {@link Workload#save()}.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void save() throws Exception {
+        workload.save();
+    }
+
+    /**
+     * See {@link Workload#load()}.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object load() throws Exception {
+        return workload.load();
+    }
+
+    /**
+     * See {@link Workload#saveSerialized()}.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void saveSerialized() throws Exception {
+        workload.saveSerialized();
+    }
+
+    /**
+     * See {@link Workload#loadSerialized()}.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object loadSerialized() throws Exception {
+        return workload.loadSerialized();
+    }
+
+    /**
+     * Runs the benchmarks, writing the results as JMH JSON to jmh-result.json unless the options say otherwise.
+     * @param args JMH command line options, such as a benchmark name pattern and "-p members=10000".
+     * @throws CommandLineOptionException If the options are invalid.
+     * @throws RunnerException If a benchmark fails.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+        if (cli.getIncludes().isEmpty())
+            options.include(ClubBenchmark.class.getName());
+        if (!cli.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!cli.getResult().hasValue())
+            options.result("jmh-result.json");
+        new Runner(options.build()).run();
+    }
+
+} // ClubBenchmark - End of class definition.
@@ -0,0 +1,78 @@
+package bk.jmh;
+
+/**
+ * The work measured by {@link ClubBenchmark}, implemented by ClubWorkload in the default package with the
+ * club manager's classes, which classes of a package cannot refer to, while JMH needs benchmarks in a package.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public interface Workload {
+
+    /**
+     * Creates the members, the lookup keys and the saved files.
+     * @param members Number of synthetic members.
+     * @throws Exception If a file cannot be written.
+     */
+    void setUp(int members) throws Exception;
+
+    /**
+     * Deletes the saved files.
+     */
+    void tearDown();
+
+    /**
+     * Finds a member by a random credential.
+     * @return The member.
+     */
+    Object lookup();
+
+    /**
+     * Looks up a credential of no member.
+     * @return Null.
+     */
+    Object lookupMiss();
+
+    /**
+     * Checks a member's credential on behalf of another member.
+     * @return True.
+     */
+    boolean duplicateCheck();
+
+    /**
+     * Validates a member.
+     * @return Null, as the member is valid.
+     */
+    Object validate();
+
+    /**
+     * Validates a member with String.matches, as older versions did.
+     * @return True, as the member is valid.
+     */
+    boolean validateRegex();
+
+    /**
+     * Saves all the members.
+     * @throws Exception If the file cannot be written.
+     */
+    void save() throws Exception;
+
+    /**
+     * Loads all the members.
+     * @return The loaded members.
+     * @throws Exception If the file cannot be read.
+     */
+    Object load() throws Exception;
+
+    /**
+     * Saves all the members as one serialized ArrayList, as older versions did.
+     * @throws Exception If the file cannot be written.
+     */
+    void saveSerialized() throws Exception;
+
+    /**
+     * Loads all the members from a serialized ArrayList.
+     * @return The loaded members.
+     * @throws Exception If the file cannot be read.
+     */
+    Object loadSerialized() throws Exception;
+
+} // Workload - End of interface definition.
@@ -0,0 +1,170 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link CheckInLog}: check-ins put by many threads at once through it's ring buffer,
+ * and the log replayed after a crash.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class CheckInLogTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int THREADS = 8; // Number of threads checking in at once.
+    private static final int EVENTS = 20000; // Check-ins per thread, many times the ring buffer's capacity.
+    private static final int MEMBERS = 101; // Number of members checking in.
+    private static final LocalDate NIGHT = LocalDate.of(2026, 1, 10); // The night of the check-ins.
+
+    @TempDir
+    File dir; // Holds the log and rollups.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param member Index of a member.
+     * @return The member's id. Every tenth member has an id with no code, written as a string.
+     */
+    private static String id(int member) {
+        return (member % 10 == 0 ? "legacy-" + member : SyntheticClubbers.clubber(member).getId());
+    }
+
+    /**
+     * @param hour An hour of the night, from it's start at noon.
+     * @return The time of a check-in at that hour of the night, in milliseconds.
+     */
+    private static long time(int hour) {
+        return NIGHT.atTime(12, 0).plusHours(hour).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Checks the rollups hold all the check-ins of {@link #checkInConcurrently(CheckInLog)}.
+     * @param log The log.
+     */
+    private static void assertAllCheckedIn(CheckInLog log) {
+        CheckInLog.NightStats night = log.night(NIGHT);
+        assertNotNull(night);
+        assertEquals(THREADS * EVENTS, night.getVisits());
+        int[] expectedVisits = new int[MEMBERS];
+        for (int t = 0; t < THREADS; t++)
+            for (int i = 0; i < EVENTS; i++)
+                expectedVisits[(t * EVENTS + i) % MEMBERS]++;
+        for (int member = 0; member < MEMBERS; member++) {
+            CheckInLog.MemberStats stats = log.member(id(member));
+            assertNotNull(stats, id(member));
+            assertEquals(expectedVisits[member], stats.getVisits(), id(member));
+        }
+        int total = 0;
+        for (int hour = 0; hour < 24; hour++)
+            total += night.getVisits(hour);
+        assertEquals(THREADS * EVENTS, total);
+        assertEquals(time(0), night.getFirst());
+        assertEquals(time(THREADS - 1), night.getLast());
+    }
+
+    /**
+     * Every thread checks in {@link #EVENTS} members, at the hour of the night of it's own number.
+     * @param log The log.
+     * @throws Exception If a check-in failed.
+     */
+    private static void checkInConcurrently(final CheckInLog log) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                tasks.add(pool.submit(() -> {
+                    long time = time(thread);
+                    start.await();
+                    for (int i = 0; i < EVENTS; i++) {
+                        int member = (thread * EVENTS + i) % MEMBERS;
+                        log.checkIn(id(member), ClubberType.values()[member % 3], time);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks)
+                task.get(60, TimeUnit.SECONDS);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Check-ins put by many threads at once, wrapping around the ring buffer many times,
+     * are all written and rolled up once, and are read back the same.
+     */
+    @Test
+    public void concurrentCheckInsAreAllLogged() throws Exception {
+        File file = new File(dir, "checkins.log");
+        CheckInLog log = new CheckInLog(file, 1);
+        checkInConcurrently(log);
+        log.close();
+        assertAllCheckedIn(log);
+
+        CheckInLog reopened = new CheckInLog(file, 1);
+        try {
+            assertAllCheckedIn(reopened);
+        }
+        finally {
+            reopened.close();
+        }
+
+        assertTrue(new File(file.getPath() + ".rollup").delete());
+        CheckInLog replayed = new CheckInLog(file, 1);
+        try {
+            assertAllCheckedIn(replayed);
+        }
+        finally {
+            replayed.close();
+        }
+    }
+
+    /**
+     * A check-in torn at any byte, with no rollups, is dropped and the ones before it are kept.
+     */
+    @Test
+    public void replayDropsATornCheckIn() throws IOException {
+        File file = new File(dir, "checkins.log");
+        File rollupFile = new File(file.getPath() + ".rollup");
+        CheckInLog log = new CheckInLog(file, 1);
+        log.checkIn(id(1), ClubberType.SOLDIER, time(1));
+        log.checkIn(id(10), ClubberType.PERSON, time(2));
+        log.close();
+        long whole = file.length();
+        log = new CheckInLog(file, 1);
+        log.checkIn(id(2), ClubberType.STUDENT, time(3));
+        log.close();
+        long length = file.length();
+        for (long cut = whole; cut < length; cut++) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(cut);
+            }
+            rollupFile.delete();
+            CheckInLog replayed = new CheckInLog(file, 1);
+            assertEquals(2, replayed.night(NIGHT).getVisits(), "cut at " + cut);
+            assertNull(replayed.member(id(2)), "cut at " + cut);
+            assertEquals(1, replayed.member(id(10)).getVisits(), "cut at " + cut);
+            replayed.checkIn(id(2), ClubberType.STUDENT, time(3));
+            replayed.close();
+            assertEquals(length, file.length(), "cut at " + cut);
+        }
+    }
+
+} // CheckInLogTest - End of class definition.
@@ -0,0 +1,185 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link ClubCommandLine}: every command run on a saved data file, it's output and it's exit status.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubCommandLineTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 30; // Number of members saved, as many of each type.
+
+    @TempDir
+    File dir; // Holds the data file and the exported files.
+
+    private File file; // The data file.
+    private PrintStream out, err; // The standard streams, restored after each test.
+    private ByteArrayOutputStream printed, errors; // What the commands print.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = new File(dir, "members.dat");
+        SnapshotClubberStore.writeSnapshot(members(), 0, file);
+        System.setProperty("bk.file", file.getPath());
+        out = System.out;
+        err = System.err;
+        printed = new ByteArrayOutputStream();
+        errors = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, "UTF-8"));
+        System.setErr(new PrintStream(errors, true, "UTF-8"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.setOut(out);
+        System.setErr(err);
+        System.clearProperty("bk.file");
+        System.clearProperty("bk.store");
+    }
+
+    /**
+     * @return The saved members.
+     */
+    private static List<ClubberRecord> members() {
+        List<ClubberRecord> members = new ArrayList<ClubberRecord>();
+        for (int i = 0; i < MEMBERS; i++)
+            members.add(SyntheticClubbers.clubber(i));
+        return members;
+    }
+
+    /**
+     * @return The lines the commands printed.
+     */
+    private List<String> printed() {
+        List<String> lines = new ArrayList<String>();
+        for (String line : new String(printed.toByteArray(), StandardCharsets.UTF_8).split("\\R"))
+            if (!line.isEmpty())
+                lines.add(line);
+        return lines;
+    }
+
+    @Test
+    public void lookupPrintsTheMatchedMembers() throws IOException {
+        ClubberRecord soldier = SyntheticClubbers.clubber(1), student = SyntheticClubbers.clubber(2);
+        String studentNumber = student.keys().get(1); // The student id without it's college prefix.
+        assertEquals(0, ClubCommandLine.run(new String[] { "lookup", soldier.getId(), studentNumber }));
+        List<String> lines = printed();
+        assertEquals(2, lines.size());
+        assertEquals(soldier.getId() + ": " + CredentialKind.NATIONAL_ID + " of " + soldier, lines.get(0));
+        assertEquals(studentNumber + ": " + CredentialKind.STUDENT_NUMBER + " of " + student, lines.get(1));
+    }
+
+    @Test
+    public void lookupOfAnUnknownKeyFails() throws IOException {
+        assertEquals(1, ClubCommandLine.run(new String[] { "lookup", SyntheticClubbers.clubber(0).getId(), "0-0000000|0" }));
+        assertEquals("0-0000000|0: NONE", printed().get(1));
+    }
+
+    @Test
+    public void membersAreCountedByType() throws IOException {
+        assertEquals(0, ClubCommandLine.run(new String[] { "count-by-type" }));
+        List<String> lines = printed();
+        assertEquals(ClubberType.values().length + 1, lines.size());
+        for (int i = 0; i < ClubberType.values().length; i++)
+            assertEquals(ClubberType.values()[i].getDisplayName() + ": " + MEMBERS / 3, lines.get(i));
+        assertEquals("Total: " + MEMBERS, lines.get(ClubberType.values().length));
+    }
+
+    @Test
+    public void validFileIsValidated() throws IOException {
+        assertEquals(0, ClubCommandLine.run(new String[] { "validate-file" }));
+        assertEquals(MEMBERS + " members, 0 problems", printed().get(0));
+    }
+
+    /**
+     * A member holding another member's credential, and an invalid member, are both reported.
+     */
+    @Test
+    public void problemsAreReported() throws IOException {
+        List<ClubberRecord> members = members();
+        ClubberRecord soldier = SyntheticClubbers.clubber(1);
+        members.add(new ClubberRecord(ClubberType.SOLDIER, "0-9999999|9", "Dan", "Levi", "+(972)54-1234567", soldier.getPersonalNum()));
+        members.add(new ClubberRecord(ClubberType.PERSON, "12-34", "Dan", "Levi", "+(972)54-1234567", null));
+        File invalid = new File(dir, "invalid.dat");
+        SnapshotClubberStore.writeSnapshot(members, 0, invalid);
+        assertEquals(1, ClubCommandLine.run(new String[] { "validate-file", invalid.getPath() }));
+        List<String> lines = printed();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("Duplicate " + soldier.getPersonalNum() + ": "), lines.get(0));
+        assertTrue(lines.get(0).endsWith("already held by " + soldier.getId()), lines.get(0));
+        assertTrue(lines.get(1).startsWith("Invalid "), lines.get(1));
+        assertEquals((MEMBERS + 2) + " members, 2 problems", lines.get(2));
+    }
+
+    @Test
+    public void missingFileIsNotValid() throws IOException {
+        assertEquals(1, ClubCommandLine.run(new String[] { "validate-file", new File(dir, "missing.dat").getPath() }));
+    }
+
+    @Test
+    public void membersAreExported() throws IOException {
+        File csv = new File(dir, "members.csv");
+        assertEquals(0, ClubCommandLine.run(new String[] { "export", "csv", csv.getPath() }));
+        assertEquals(MEMBERS + " members exported to " + csv, printed().get(0));
+        List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        assertEquals(MEMBERS + 1, lines.size());
+        assertTrue(lines.get(1).contains(SyntheticClubbers.clubber(0).getId()), lines.get(1));
+    }
+
+    /**
+     * Changes only in the journal are noted by the commands that read, and folded into the data file by compact.
+     */
+    @Test
+    public void compactFoldsTheJournal() throws IOException {
+        System.setProperty("bk.store", "journal");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = new JournalClubberStore(file, JournalClubberStore.FsyncPolicy.ALWAYS, 0, Integer.MAX_VALUE);
+        ClubberRecord added = SyntheticClubbers.clubber(MEMBERS);
+        try {
+            store.load(repository);
+            assertTrue(repository.add(added));
+            store.committed(null, added);
+        }
+        finally {
+            store.close();
+        }
+        File journal = new File(dir, "members.dat.log");
+        assertTrue(journal.length() > 0);
+        assertEquals(1, ClubCommandLine.run(new String[] { "lookup", added.getId() }));
+        assertTrue(new String(errors.toByteArray(), StandardCharsets.UTF_8).startsWith("Note: "));
+        printed.reset();
+        assertEquals(0, ClubCommandLine.run(new String[] { "compact" }));
+        assertTrue(printed().get(0).startsWith((MEMBERS + 1) + " members compacted, "), printed().get(0));
+        assertEquals(0, journal.length());
+        printed.reset();
+        assertEquals(0, ClubCommandLine.run(new String[] { "lookup", added.getId() }));
+    }
+
+    @Test
+    public void wrongUsageIsRefused() throws IOException {
+        assertEquals(2, ClubCommandLine.run(new String[0]));
+        assertEquals(2, ClubCommandLine.run(new String[] { "lookup" }));
+        assertEquals(2, ClubCommandLine.run(new String[] { "count-by-type", "extra" }));
+        assertEquals(2, ClubCommandLine.run(new String[] { "export", "xml", "out.xml" }));
+        assertEquals(2, ClubCommandLine.run(new String[] { "remove" }));
+        assertTrue(printed().isEmpty());
+        assertTrue(new String(errors.toByteArray(), StandardCharsets.UTF_8).startsWith("Usage: "));
+    }
+
+} // ClubCommandLineTest - End of class definition.
@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link ClubberBloomFilter}: no added credential is ever missed, and few others are taken for added ones.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberBloomFilterTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 30000; // Number of members whose credentials are added.
+    private static final int THREADS = 4; // Number of threads adding at once.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Checks the filter holds every credential of the members, and counts the credentials of no member it may hold.
+     * @param filter The filter.
+     */
+    private static void assertHoldsTheMembers(ClubberBloomFilter filter) {
+        for (int i = 0; i < MEMBERS; i++)
+            for (String key : SyntheticClubbers.clubber(i).keys())
+                assertTrue(filter.mightContain(key), key);
+        int falsePositives = 0, checked = 0;
+        for (int i = 0; i < MEMBERS; i++, checked += 3) {
+            if (filter.mightContain(String.format("%d-%07d|0", i % 10, i))) // Check digit 0 is never used.
+                falsePositives++;
+            if (filter.mightContain(String.format("R/%d", 1000000 + i))) // Soldiers' personal numbers start with O.
+                falsePositives++;
+            if (filter.mightContain("no member " + i)) // A credential without a code.
+                falsePositives++;
+        }
+        assertTrue(falsePositives < checked / 50, falsePositives + " false positives of " + checked);
+    }
+
+    @Test
+    public void addedCredentialsAreAlwaysFound() {
+        long credentials = 0;
+        for (int i = 0; i < MEMBERS; i++)
+            credentials += SyntheticClubbers.clubber(i).keys().size();
+        ClubberBloomFilter filter = new ClubberBloomFilter(credentials);
+        for (int i = 0; i < MEMBERS; i++)
+            for (String key : SyntheticClubbers.clubber(i).keys())
+                filter.add(key);
+        assertHoldsTheMembers(filter);
+    }
+
+    @Test
+    public void emptyFilterHoldsNothing() {
+        ClubberBloomFilter filter = new ClubberBloomFilter(0);
+        assertFalse(filter.mightContain("1-2345678|9"));
+        assertFalse(filter.mightContain(""));
+        filter.add("1-2345678|9");
+        assertTrue(filter.mightContain("1-2345678|9"));
+    }
+
+    /**
+     * Threads adding disjoint credentials at once lose none of each other's bits.
+     */
+    @Test
+    public void concurrentAdditionsAreAllKept() throws Exception {
+        final ClubberBloomFilter filter = new ClubberBloomFilter(2L * MEMBERS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = thread; i < MEMBERS; i += THREADS)
+                        for (String key : SyntheticClubbers.clubber(i).keys())
+                            filter.add(key);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks)
+                task.get(60, TimeUnit.SECONDS);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        assertHoldsTheMembers(filter);
+    }
+
+} // ClubberBloomFilterTest - End of class definition.
@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link ClubberDictionary}: strings given codes once, members kept in dictionaries of their own
+ * until committed, and streaming dictionaries replaced once full.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberDictionaryTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int STRINGS = 10000; // Number of strings added, many times a table's initial capacity.
+    private static final int THREADS = 4; // Number of threads adding at once.
+
+    @TempDir
+    File dir; // Holds the imported CSV files.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @Test
+    public void stringsAreGivenCodesOnce() {
+        ClubberDictionary.Table table = new ClubberDictionary().getNames();
+        assertEquals(-1, table.encode(null));
+        assertNull(table.decode(-1));
+        assertEquals(-1, table.lookup("Dana"));
+        for (int i = 0; i < STRINGS; i++)
+            assertEquals(i, table.encode("Name" + i));
+        assertEquals(STRINGS, table.size());
+        for (int i = 0; i < STRINGS; i++) {
+            assertEquals(i, table.encode(new String("Name" + i)));
+            assertEquals(i, table.lookup("Name" + i));
+            assertEquals("Name" + i, table.decode(i));
+        }
+        assertEquals(STRINGS, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.decode(STRINGS));
+    }
+
+    @Test
+    public void tablesAreSeparate() {
+        ClubberDictionary dictionary = new ClubberDictionary();
+        assertEquals(0, dictionary.getNames().encode("Levi"));
+        assertEquals(-1, dictionary.getSurnames().lookup("Levi"));
+        assertEquals(0, dictionary.getSurnames().encode("Cohen"));
+        assertEquals(0, dictionary.getTelPrefixes().size());
+    }
+
+    /**
+     * Threads adding the same strings at once get the same codes, and each other's strings decode.
+     */
+    @Test
+    public void concurrentAdditionsGetTheSameCodes() throws Exception {
+        final ClubberDictionary.Table table = new ClubberDictionary().getSurnames();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<int[]> codes = new ArrayList<int[]>();
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<int[]>> tasks = new ArrayList<Future<int[]>>();
+            for (int t = 0; t < THREADS; t++)
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    int[] added = new int[STRINGS];
+                    for (int i = 0; i < STRINGS; i++) {
+                        added[i] = table.encode("Surname" + i);
+                        assertEquals("Surname" + i, table.decode(added[i]));
+                    }
+                    return added;
+                }));
+            start.countDown();
+            for (Future<int[]> task : tasks)
+                codes.add(task.get(60, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        assertEquals(STRINGS, table.size());
+        for (int[] added : codes)
+            assertArrayEquals(codes.get(0), added);
+    }
+
+    /**
+     * A member of a dictionary of it's own keeps it's strings there, until it's interned into the shared one.
+     */
+    @Test
+    public void membersAreInternedIntoTheSharedDictionary() {
+        ClubberDictionary dictionary = new ClubberDictionary();
+        ClubberRecord member = new ClubberRecord(dictionary, ClubberType.PERSON, "1-2345678|9", "Unshared Name", "Unshared Surname",
+                "+(972)54-1234567", null);
+        assertSame(dictionary, member.getDictionary());
+        assertEquals("Unshared Name", member.getName());
+        assertEquals(-1, ClubberDictionary.SHARED.getNames().lookup("Unshared Name"));
+        ClubberRecord interned = member.intern();
+        assertSame(ClubberDictionary.SHARED, interned.getDictionary());
+        assertSame(interned, interned.intern());
+        assertEquals(member.getName(), interned.getName());
+        assertEquals(member.getSurname(), interned.getSurname());
+        assertEquals(member.getTel(), interned.getTel());
+        assertEquals(interned.getSurnameCode(), ClubberDictionary.SHARED.getSurnames().lookup("Unshared Surname"));
+    }
+
+    @Test
+    public void streamingDictionaryIsReplacedOnceFull() {
+        ClubberDictionary dictionary = new ClubberDictionary();
+        int added = 0;
+        while (ClubberDictionary.forStreaming(dictionary) == dictionary) {
+            dictionary.getNames().encode("Name" + added);
+            added++;
+            assertTrue(added <= 1 << 16, "Dictionary never replaced");
+        }
+        assertEquals(1 << 16, added);
+        ClubberDictionary next = ClubberDictionary.forStreaming(dictionary);
+        assertEquals(0, next.getNames().size());
+        assertSame(next, ClubberDictionary.forStreaming(next));
+        assertEquals("Name0", dictionary.getNames().decode(0)); // Members read before still decode.
+    }
+
+    /**
+     * Strings of rows the importer rejects are never added to the shared dictionary.
+     */
+    @Test
+    public void rejectedRowsStayOutOfTheSharedDictionary() throws IOException {
+        File csv = new File(dir, "members.csv");
+        Files.write(csv.toPath(), ("type,id,name,surname,tel,credential\n"
+                + "Person,1-2345678|9,Imported,Rejectedlast,+(972)54-1234567\n"
+                + "Person,12-34,Rejectedfirst,Rejectedlast,+(972)54-1234567\n").getBytes(StandardCharsets.UTF_8));
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        SnapshotClubberStore store = new SnapshotClubberStore(new File(dir, "members.dat"));
+        try {
+            ClubberImporter.Result result = new ClubberImporter(repository, store, 10).importFile(csv, new File(dir, "rejects.csv"));
+            assertEquals(1, result.getImported());
+            assertEquals(1, result.getRejected());
+        }
+        finally {
+            store.close();
+        }
+        assertSame(ClubberDictionary.SHARED, repository.find("1-2345678|9").getDictionary());
+        assertTrue(ClubberDictionary.SHARED.getNames().lookup("Imported") >= 0);
+        assertEquals(-1, ClubberDictionary.SHARED.getNames().lookup("Rejectedfirst"));
+    }
+
+} // ClubberDictionaryTest - End of class definition.
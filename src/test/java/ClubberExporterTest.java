@@ -0,0 +1,147 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link ClubberExporter}: members written as CSV rows the importer reads back, and as JSON lines.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberExporterTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 5000; // Number of members exported, many buffers' worth.
+
+    @TempDir
+    File dir; // Holds the exported files.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Exports members.
+     * @param records The members.
+     * @param format The export's format.
+     * @return The exported lines.
+     * @throws IOException If the members cannot be written.
+     */
+    private static List<String> export(Iterable<ClubberRecord> records, ClubberExporter.Format format) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClubberExporter exporter = new ClubberExporter(Channels.newChannel(bytes), format);
+        exporter.writeAll(records);
+        exporter.close();
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(text.isEmpty() || text.endsWith("\n"));
+        List<String> lines = new ArrayList<String>();
+        for (String line : text.split("\n"))
+            if (!line.isEmpty())
+                lines.add(line);
+        return lines;
+    }
+
+    /**
+     * Members exported to CSV are imported back the same.
+     */
+    @Test
+    public void csvIsReadBackByTheImporter() throws IOException {
+        InMemoryClubberRepository repository = SyntheticClubbers.repository(MEMBERS);
+        List<String> lines = export(repository, ClubberExporter.Format.CSV);
+        assertEquals(MEMBERS + 1, lines.size());
+        assertEquals("type,id,name,surname,tel,credential", lines.get(0));
+        File csv = new File(dir, "members.csv");
+        Files.write(csv.toPath(), lines, StandardCharsets.UTF_8);
+        InMemoryClubberRepository imported = new InMemoryClubberRepository();
+        ClubberImporter.Result result = new ClubberImporter(imported, new NoStore(), 1000).importFile(csv, new File(dir, "rejects.csv"));
+        assertEquals(MEMBERS, result.getImported());
+        assertEquals(0, result.getRejected());
+        for (ClubberRecord expected : repository) {
+            ClubberRecord actual = imported.find(expected.getId());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getSurname(), actual.getSurname());
+            assertEquals(expected.getTel(), actual.getTel());
+            assertEquals(expected.getPersonalNum(), actual.getPersonalNum());
+            assertEquals(expected.getStudentId(), actual.getStudentId());
+        }
+    }
+
+    @Test
+    public void csvFieldsAreQuotedWhenNeeded() throws IOException {
+        List<ClubberRecord> records = new ArrayList<ClubberRecord>();
+        records.add(new ClubberRecord(ClubberType.PERSON, "1-2345678|9", "Dan, Jr.", "O\"Neil", null, null));
+        records.add(new ClubberRecord(ClubberType.STUDENT, "1-2345678|8", "Noa", "Levi", "+(972)54-1234567", "ABC/12345"));
+        List<String> lines = export(records, ClubberExporter.Format.CSV);
+        assertEquals("Person,1-2345678|9,\"Dan, Jr.\",\"O\"\"Neil\",", lines.get(1));
+        assertEquals("Student,1-2345678|8,Noa,Levi,+(972)54-1234567,ABC/12345", lines.get(2));
+    }
+
+    @Test
+    public void jsonLinesNameTheCredentialByType() throws IOException {
+        List<ClubberRecord> records = new ArrayList<ClubberRecord>();
+        records.add(new ClubberRecord(ClubberType.SOLDIER, "1-2345678|9", "Dan", "Levi", "+(972)54-1234567", "R/1234567"));
+        records.add(new ClubberRecord(ClubberType.STUDENT, "1-2345678|8", "Noa", "Ka\"tz\\", null, "ABC/12345"));
+        records.add(new ClubberRecord(ClubberType.PERSON, "1-2345678|7", "Tab\tbed", "Cohen", "+(1)2-3456789", null));
+        List<String> lines = export(records, ClubberExporter.Format.JSONL);
+        assertEquals(3, lines.size());
+        assertEquals("{\"type\":\"Soldier\",\"id\":\"1-2345678|9\",\"name\":\"Dan\",\"surname\":\"Levi\",\"tel\":\"+(972)54-1234567\","
+                + "\"personalNum\":\"R/1234567\"}", lines.get(0));
+        assertEquals("{\"type\":\"Student\",\"id\":\"1-2345678|8\",\"name\":\"Noa\",\"surname\":\"Ka\\\"tz\\\\\",\"tel\":null,"
+                + "\"studentId\":\"ABC/12345\"}", lines.get(1));
+        assertEquals("{\"type\":\"Person\",\"id\":\"1-2345678|7\",\"name\":\"Tab\\u0009bed\",\"surname\":\"Cohen\",\"tel\":\"+(1)2-3456789\"}",
+                lines.get(2));
+    }
+
+    @Test
+    public void everyMemberIsWrittenOnce() throws IOException {
+        InMemoryClubberRepository repository = SyntheticClubbers.repository(MEMBERS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClubberExporter exporter = new ClubberExporter(Channels.newChannel(bytes), ClubberExporter.Format.JSONL);
+        exporter.writeAll(repository);
+        assertEquals(MEMBERS, exporter.getCount());
+        exporter.close();
+        int lines = 0;
+        for (byte b : bytes.toByteArray())
+            if (b == '\n')
+                lines++;
+        assertEquals(MEMBERS, lines);
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * A store that keeps nothing, for imports into a repository the test checks.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class NoStore implements ClubberStore {
+
+        @Override
+        public void load(ClubberRepository repository) {
+        }
+
+        @Override
+        public void committed(ClubberRecord old, ClubberRecord updated) {
+        }
+
+        @Override
+        public void save(ClubberRepository repository) {
+        }
+
+        @Override
+        public void compact(ClubberRepository repository) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    } // NoStore - End of class definition.
+
+} // ClubberExporterTest - End of class definition.
@@ -0,0 +1,216 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link ClubberFileFormat}: files of both versions read back, and truncated or corrupted files rejected.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberFileFormatTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 50; // Number of members in a file.
+    private static final long SEQUENCE = 42; // Sequence number written to the header.
+
+    @TempDir
+    File dir; // Holds the files.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @return The members written to the files: synthetic ones, and one with no telephone or name.
+     */
+    private static List<ClubberRecord> members() {
+        List<ClubberRecord> members = new ArrayList<ClubberRecord>();
+        for (int i = 0; i < MEMBERS - 1; i++)
+            members.add(SyntheticClubbers.clubber(i));
+        members.add(new ClubberRecord(ClubberType.PERSON, "0-9999999|9", null, "Levi", null, null));
+        return members;
+    }
+
+    /**
+     * Writes a version 2 file.
+     * @param file The file.
+     * @return The offsets of the records.
+     * @throws IOException If the file cannot be written.
+     */
+    private static List<Long> writeVersion2(File file) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        try (ClubberFileFormat.Writer writer = new ClubberFileFormat.Writer(file, SEQUENCE)) {
+            for (ClubberRecord member : members())
+                offsets.add(writer.append(member));
+        }
+        return offsets;
+    }
+
+    /**
+     * Writes a version 1 file: the header without the dictionaries' offset, and version 1 bodies.
+     * @param file The file.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeVersion1(File file) throws IOException {
+        List<ClubberRecord> members = members();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(ClubberFileFormat.MAGIC);
+            out.writeShort(1);
+            out.writeShort(0);
+            out.writeLong(SEQUENCE);
+            out.writeInt(members.size());
+            for (ClubberRecord member : members) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                ClubberFileFormat.writeRecord(new DataOutputStream(body), member);
+                out.writeInt(body.size());
+                body.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Reads all the records of a file.
+     * @param file The file.
+     * @return The records.
+     * @throws IOException If the file cannot be read.
+     */
+    private static List<ClubberRecord> readAll(File file) throws IOException {
+        List<ClubberRecord> read = new ArrayList<ClubberRecord>();
+        try (ClubberFileFormat.Reader reader = new ClubberFileFormat.Reader(file)) {
+            assertEquals(SEQUENCE, reader.getSequence());
+            while (reader.next())
+                read.add(reader.record());
+            assertEquals(reader.getCount(), read.size());
+        }
+        return read;
+    }
+
+    /**
+     * Checks two records hold the same member.
+     * @param expected The written record.
+     * @param actual The read record.
+     */
+    private static void assertSameMember(ClubberRecord expected, ClubberRecord actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSurname(), actual.getSurname());
+        assertEquals(expected.getTel(), actual.getTel());
+        assertEquals(expected.getPersonalNum(), actual.getPersonalNum());
+        assertEquals(expected.getStudentId(), actual.getStudentId());
+    }
+
+    /**
+     * Overwrites the length of a record's body.
+     * @param file The file.
+     * @param offset Offset of the record.
+     * @param length The new length.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void setLength(File file, long offset, int length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(length);
+        }
+    }
+
+    @Test
+    public void version2RoundTrip() throws IOException {
+        File file = new File(dir, "members.dat");
+        List<Long> offsets = writeVersion2(file);
+        assertTrue(ClubberFileFormat.isFormatOf(file));
+        List<ClubberRecord> members = members(), read = readAll(file);
+        assertEquals(members.size(), read.size());
+        for (int i = 0; i < members.size(); i++)
+            assertSameMember(members.get(i), read.get(i));
+        try (ClubberFileFormat.Reader reader = new ClubberFileFormat.Reader(file, new ClubberDictionary())) {
+            for (int i = members.size() - 1; i >= 0; i--)
+                assertSameMember(members.get(i), reader.readAt(offsets.get(i)));
+        }
+    }
+
+    @Test
+    public void version1RoundTrip() throws IOException {
+        File file = new File(dir, "members.dat");
+        writeVersion1(file);
+        assertTrue(ClubberFileFormat.isFormatOf(file));
+        List<ClubberRecord> members = members(), read = readAll(file);
+        assertEquals(members.size(), read.size());
+        for (int i = 0; i < members.size(); i++)
+            assertSameMember(members.get(i), read.get(i));
+    }
+
+    /**
+     * A file cut anywhere after it's header is rejected, whatever it's version, rather than read short.
+     */
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        File whole = new File(dir, "whole.dat"), cut = new File(dir, "cut.dat");
+        for (int version = 1; version <= 2; version++) {
+            if (version == 1)
+                writeVersion1(whole);
+            else
+                writeVersion2(whole);
+            long length = whole.length();
+            for (long at = ClubberFileFormat.HEADER_LENGTH; at < length; at += 7) {
+                Files.copy(whole.toPath(), cut.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                try (RandomAccessFile raf = new RandomAccessFile(cut, "rw")) {
+                    raf.setLength(at);
+                }
+                assertThrows(IOException.class, () -> readAll(cut), "version " + version + " cut at " + at);
+            }
+        }
+    }
+
+    /**
+     * A record length running past the records, or negative, is rejected before the record is mapped.
+     */
+    @Test
+    public void invalidRecordLengthIsRejected() throws IOException {
+        File file = new File(dir, "members.dat");
+        List<Long> offsets = writeVersion2(file);
+        long last = offsets.get(offsets.size() - 1);
+        setLength(file, last, (int)(file.length() - last)); // Runs into the dictionaries.
+        assertThrows(StreamCorruptedException.class, () -> readAll(file));
+        setLength(file, last, -1);
+        assertThrows(StreamCorruptedException.class, () -> readAll(file));
+        try (ClubberFileFormat.Reader reader = new ClubberFileFormat.Reader(file)) {
+            assertThrows(StreamCorruptedException.class, () -> reader.readAt(last));
+        }
+
+        writeVersion1(file);
+        setLength(file, 20, Integer.MAX_VALUE);
+        assertThrows(StreamCorruptedException.class, () -> readAll(file));
+        setLength(file, 20, -5);
+        assertThrows(StreamCorruptedException.class, () -> readAll(file));
+    }
+
+    /**
+     * A record whose body is too short for it's fields is rejected.
+     */
+    @Test
+    public void shortBodyIsRejected() throws IOException {
+        File file = new File(dir, "members.dat");
+        writeVersion1(file);
+        setLength(file, 20, 3);
+        assertThrows(EOFException.class, () -> {
+            try (ClubberFileFormat.Reader reader = new ClubberFileFormat.Reader(file)) {
+                reader.next();
+                reader.record();
+            }
+        });
+    }
+
+} // ClubberFileFormatTest - End of class definition.
@@ -0,0 +1,166 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link ClubberImporter}: rows validated in batches, duplicates and invalid rows rejected,
+ * and the imported members written by one compaction of the store.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberImporterTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 20; // Number of valid rows.
+    private static final int BATCH = 3; // Rows validated together, fewer than the rows so batches follow each other.
+
+    @TempDir
+    File dir; // Holds the CSV files and the data file.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param record A member.
+     * @return The member as a CSV row.
+     */
+    private static String row(ClubberRecord record) {
+        String credential = (record.getType() == ClubberType.SOLDIER ? "," + record.getPersonalNum()
+                : record.getType() == ClubberType.STUDENT ? "," + record.getStudentId() : "");
+        return record.getType().getDisplayName() + "," + record.getId() + "," + record.getName() + "," + record.getSurname()
+                + "," + record.getTel() + credential;
+    }
+
+    /**
+     * Writes a CSV file of members 1 to {@link #MEMBERS}, with rows to be rejected among them:
+     * a malformed row, a row duplicating the credential of the row before it, in the same batch, an invalid id,
+     * a row duplicating the credential of a row of an earlier batch, and a row of a member already in the repository.
+     * @return The CSV file.
+     * @throws IOException If the file cannot be written.
+     */
+    private File csv() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        lines.add("type,id,name,surname,tel,credential");
+        for (int i = 1; i <= MEMBERS; i++) {
+            lines.add(row(SyntheticClubbers.clubber(i)));
+            if (i == 5)
+                lines.add("Soldier,1-2345678|9,Dan");
+            if (i == 8)
+                lines.add("");
+            if (i == 10) // Line 13, so this is line 14, in the same batch.
+                lines.add(row(new ClubberRecord(ClubberType.SOLDIER, "0-9999998|8", "Dan", "Levi", "+(972)54-1234567",
+                        SyntheticClubbers.clubber(10).getPersonalNum())));
+        }
+        ClubberRecord soldier = SyntheticClubbers.clubber(4), existing = SyntheticClubbers.clubber(1 + 3 * MEMBERS);
+        lines.add(row(new ClubberRecord(ClubberType.PERSON, "12-34", "Dan", "Levi", "+(972)54-1234567", null)));
+        lines.add(row(new ClubberRecord(ClubberType.SOLDIER, "0-9999999|9", "Dan", "Levi", "+(972)54-1234567", soldier.getPersonalNum())));
+        lines.add(row(existing));
+        File file = new File(dir, "members.csv");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void rowsAreImportedOrRejected() throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        repository.add(SyntheticClubbers.clubber(1 + 3 * MEMBERS));
+        CountingStore store = new CountingStore();
+        File rejects = new File(dir, "rejects.csv");
+        ClubberImporter.Result result = new ClubberImporter(repository, store, BATCH).importFile(csv(), rejects);
+        assertEquals(MEMBERS + 5, result.getRead());
+        assertEquals(MEMBERS, result.getImported());
+        assertEquals(5, result.getRejected());
+        assertEquals(MEMBERS + 1, repository.size());
+        for (int i = 1; i <= MEMBERS; i++) {
+            ClubberRecord expected = SyntheticClubbers.clubber(i);
+            for (String key : expected.keys())
+                assertEquals(expected.getId(), repository.find(key).getId(), key);
+        }
+        assertEquals(0, store.committed);
+        assertEquals(1, store.compacted);
+
+        List<String> rejected = Files.readAllLines(rejects.toPath(), StandardCharsets.UTF_8);
+        assertEquals(6, rejected.size());
+        assertEquals("line,reason,row", rejected.get(0));
+        assertTrue(rejected.get(1).startsWith("7,\"malformed row\","), rejected.get(1));
+        assertTrue(rejected.get(2).startsWith("14,") && rejected.get(2).contains("duplicates line 13"), rejected.get(2));
+        assertTrue(rejected.get(3).contains("\"invalid id\""), rejected.get(3));
+        assertTrue(rejected.get(4).contains("already belongs to a member"), rejected.get(4));
+        assertTrue(rejected.get(5).contains("already belongs to a member"), rejected.get(5));
+    }
+
+    @Test
+    public void nothingImportedLeavesTheStoreAlone() throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        CountingStore store = new CountingStore();
+        File csv = new File(dir, "empty.csv");
+        Files.write(csv.toPath(), "type,id,name,surname,tel,credential\nSoldier,1-2345678|9,Dan\n".getBytes(StandardCharsets.UTF_8));
+        ClubberImporter.Result result = new ClubberImporter(repository, store, BATCH).importFile(csv, new File(dir, "rejects.csv"));
+        assertEquals(1, result.getRejected());
+        assertEquals(0, repository.size());
+        assertEquals(0, store.compacted);
+    }
+
+    /**
+     * Imported members are in the data file once the import returns, with nothing left in the journal.
+     */
+    @Test
+    public void importedMembersAreCompactedIntoTheJournalStore() throws IOException {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = new JournalClubberStore(file, JournalClubberStore.FsyncPolicy.ALWAYS, 0, Integer.MAX_VALUE);
+        try {
+            store.load(repository);
+            repository.add(SyntheticClubbers.clubber(1 + 3 * MEMBERS));
+            new ClubberImporter(repository, store, BATCH).importFile(csv(), new File(dir, "rejects.csv"));
+        }
+        finally {
+            store.close();
+        }
+        assertEquals(0, new File(dir, "members.dat.log").length());
+        InMemoryClubberRepository loaded = new InMemoryClubberRepository();
+        new SnapshotClubberStore(file).load(loaded);
+        assertEquals(MEMBERS + 1, loaded.size());
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * A store that counts the calls of the importer.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class CountingStore implements ClubberStore {
+
+        private int committed, compacted; // Number of commits and compactions.
+
+        @Override
+        public void load(ClubberRepository repository) {
+        }
+
+        @Override
+        public void committed(ClubberRecord old, ClubberRecord updated) {
+            committed++;
+        }
+
+        @Override
+        public void save(ClubberRepository repository) {
+        }
+
+        @Override
+        public void compact(ClubberRepository repository) {
+            compacted++;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    } // CountingStore - End of class definition.
+
+} // ClubberImporterTest - End of class definition.
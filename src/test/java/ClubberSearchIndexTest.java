@@ -0,0 +1,174 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link ClubberSearchIndex}: members found by words of their names, surnames and phones, best matches first,
+ * and members browsed by filters and in an order.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ClubberSearchIndexTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private InMemoryClubberRepository repository; // The indexed members.
+    private ClubberSearchIndex index; // The index, built over the repository.
+    private ClubberRecord ariel, dana, daniel, moshe; // Members of the repository.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @BeforeEach
+    public void setUp() {
+        repository = new InMemoryClubberRepository();
+        ariel = add(new ClubberRecord(ClubberType.PERSON, "1-0000001|1", "Ariel", "Cohen", "+(972)54-1234567", null));
+        dana = add(new ClubberRecord(ClubberType.SOLDIER, "1-0000002|2", "Dana", "Levi", "+(972)52-7654321", "R/1000002"));
+        daniel = add(new ClubberRecord(ClubberType.STUDENT, "1-0000003|3", "Daniel", "Cohn", "+(1)3-5550123", "ABC/10003"));
+        moshe = add(new ClubberRecord(ClubberType.PERSON, "1-0000004|4", "Moshe", "Levinson", "+(972)3-9876543", null));
+        index = new ClubberSearchIndex(repository);
+        index.build();
+    }
+
+    /**
+     * @param record A member.
+     * @return The member, added to the repository.
+     */
+    private ClubberRecord add(ClubberRecord record) {
+        assertTrue(repository.add(record));
+        return record;
+    }
+
+    /**
+     * @param query A query.
+     * @return The ids of all the members matching the query, best matches first.
+     */
+    private List<String> ids(String query) {
+        List<String> ids = new ArrayList<String>();
+        for (ClubberRecord member : index.search(query, 0, 100).getMembers())
+            ids.add(member.getId());
+        return ids;
+    }
+
+    /**
+     * @param members Members.
+     * @return The members' ids.
+     */
+    private static List<String> idsOf(ClubberRecord... members) {
+        List<String> ids = new ArrayList<String>();
+        for (ClubberRecord member : members)
+            ids.add(member.getId());
+        return ids;
+    }
+
+    /**
+     * @param type Type of the members, null for all types.
+     * @param surnamePrefix Prefix of the members' surnames, null for all surnames.
+     * @param phoneDigits Digits the members' phones hold, null for all phones.
+     * @param order The order of the members.
+     * @return The ids of the browsed members.
+     */
+    private List<String> browse(ClubberType type, String surnamePrefix, String phoneDigits, ClubberSearchIndex.Order order) {
+        List<String> ids = new ArrayList<String>();
+        for (int document : index.browse(type, surnamePrefix, phoneDigits, order))
+            ids.add(index.member(document).getId());
+        return ids;
+    }
+
+    @Test
+    public void exactMatchesRankBeforeTypos() {
+        assertEquals(idsOf(ariel, daniel), ids("cohen")); // Cohn is one typo away.
+        assertEquals(idsOf(daniel, ariel), ids("COHN"));
+        assertEquals(idsOf(ariel), ids("coheen"));
+    }
+
+    @Test
+    public void prefixesAndSubstringsMatch() {
+        assertEquals(idsOf(dana, moshe), ids("lev"));
+        assertEquals(idsOf(dana, daniel), ids("dan"));
+        assertEquals(idsOf(moshe), ids("inso"));
+        assertTrue(ids("xyz").isEmpty());
+    }
+
+    @Test
+    public void everyWordMustMatch() {
+        assertEquals(idsOf(dana), ids("dan levi"));
+        assertEquals(idsOf(daniel), ids("Daniel Cohn"));
+        assertTrue(ids("moshe cohen").isEmpty());
+    }
+
+    @Test
+    public void phoneDigitsMatch() {
+        assertEquals(idsOf(ariel), ids("972541234567"));
+        assertEquals(idsOf(ariel), ids("+(972)54-1234567"));
+        assertEquals(idsOf(ariel, dana), ids("9725")); // Prefix of both phones.
+        assertEquals(idsOf(moshe), ids("98765"));
+        assertEquals(idsOf(daniel), ids("5550"));
+        assertEquals(idsOf(moshe), ids("levinson 98765"));
+        assertTrue(ids("cohen 98765").isEmpty());
+    }
+
+    @Test
+    public void replacedMembersAreFoundByTheirNewData() {
+        ClubberRecord noa = new ClubberRecord(dana.getType(), dana.getId(), "Noa", dana.getSurname(), dana.getTel(), dana.getPersonalNum());
+        assertTrue(repository.replace(dana, noa));
+        index.replace(dana, noa);
+        assertTrue(ids("dana").isEmpty());
+        assertEquals(idsOf(noa), ids("noa"));
+        assertEquals(idsOf(noa, moshe), ids("lev"));
+        ClubberRecord newcomer = add(new ClubberRecord(ClubberType.PERSON, "1-0000005|5", "Dana", "Katz", "+(972)50-1111111", null));
+        index.add(newcomer);
+        assertEquals(idsOf(newcomer), ids("dana"));
+    }
+
+    @Test
+    public void resultsArePaged() {
+        for (int i = 0; i < 10; i++)
+            index.add(add(new ClubberRecord(ClubberType.PERSON, String.format("2-%07d|1", i), "Ron", "Peretz", "+(972)50-20000" + i + "0", null)));
+        ClubberSearchIndex.Page first = index.search("peretz", 0, 4);
+        assertEquals(10, first.getTotal());
+        assertEquals(4, first.getMembers().size());
+        assertTrue(first.hasMore());
+        ClubberSearchIndex.Page last = index.search("peretz", 8, 4);
+        assertEquals(8, last.getOffset());
+        assertEquals(2, last.getMembers().size());
+        assertFalse(last.hasMore());
+        assertEquals(0, index.search("  ", 0, 4).getTotal());
+    }
+
+    @Test
+    public void browsedMembersAreOrdered() {
+        assertEquals(idsOf(ariel, dana, daniel, moshe), browse(null, null, null, ClubberSearchIndex.Order.ADDED));
+        assertEquals(idsOf(ariel, daniel, dana, moshe), browse(null, "", "", ClubberSearchIndex.Order.SURNAME));
+        assertEquals(idsOf(daniel, moshe, dana, ariel), browse(null, null, null, ClubberSearchIndex.Order.PHONE));
+    }
+
+    @Test
+    public void browsedMembersAreFiltered() {
+        assertEquals(idsOf(ariel, moshe), browse(ClubberType.PERSON, null, null, ClubberSearchIndex.Order.ADDED));
+        assertEquals(idsOf(dana, moshe), browse(null, "LEV", null, ClubberSearchIndex.Order.SURNAME));
+        assertEquals(idsOf(moshe), browse(ClubberType.PERSON, "lev", null, ClubberSearchIndex.Order.PHONE));
+        assertEquals(idsOf(ariel, dana), browse(null, null, "9725", ClubberSearchIndex.Order.ADDED));
+        assertEquals(idsOf(ariel, daniel), browse(null, null, "12", ClubberSearchIndex.Order.ADDED)); // Too short for the phone index.
+        assertEquals(idsOf(daniel), browse(null, "co", "0123", ClubberSearchIndex.Order.SURNAME));
+        assertEquals(0, index.browse(ClubberType.SOLDIER, "cohen", null, ClubberSearchIndex.Order.ADDED).length);
+    }
+
+    /**
+     * A replaced member is browsed by it's new data, and document numbers listed before the replacement find no member.
+     */
+    @Test
+    public void browsedMembersFollowReplacements() {
+        int[] before = index.browse(null, "levi", null, ClubberSearchIndex.Order.SURNAME);
+        ClubberRecord kaplan = new ClubberRecord(dana.getType(), dana.getId(), dana.getName(), "Kaplan", "+(972)52-0000000", dana.getPersonalNum());
+        assertTrue(repository.replace(dana, kaplan));
+        index.replace(dana, kaplan);
+        assertNull(index.member(before[0]));
+        assertEquals(idsOf(moshe), browse(null, "levi", null, ClubberSearchIndex.Order.SURNAME));
+        assertEquals(idsOf(ariel, daniel, kaplan, moshe), browse(null, null, null, ClubberSearchIndex.Order.SURNAME));
+        assertEquals(idsOf(daniel, moshe, kaplan, ariel), browse(null, null, null, ClubberSearchIndex.Order.PHONE));
+        assertEquals(idsOf(ariel, daniel, moshe, kaplan), browse(null, null, null, ClubberSearchIndex.Order.ADDED));
+    }
+
+} // ClubberSearchIndexTest - End of class definition.
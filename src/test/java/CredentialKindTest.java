@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link CredentialKind}'s codes of credentials, at the edges of each kind's range.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class CredentialKindTest {
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Encodes a credential, checks it's code is below 2^31 and decodes it back.
+     * @param key The credential.
+     * @return The credential's code.
+     */
+    private static long roundTrip(String key) {
+        long code = CredentialKind.encode(key);
+        assertTrue(code >= 0 && code <= LongIntMap.MAX_KEY, key + " -> " + code);
+        assertEquals(key, CredentialKind.decode(code));
+        return code;
+    }
+
+    @Test
+    public void idNumbersRoundTrip() {
+        assertEquals(0, roundTrip("0-0000000|0"));
+        assertEquals(999999999L, roundTrip("9-9999999|9"));
+        assertEquals(CredentialKind.PERSONAL_NUMBER_BASE - 1, CredentialKind.encode("9-9999999|9"));
+        roundTrip("1-0000000|9");
+        roundTrip("0-9999999|0");
+        roundTrip("5-0000001|1");
+    }
+
+    @Test
+    public void personalNumbersRoundTrip() {
+        assertEquals(CredentialKind.PERSONAL_NUMBER_BASE, roundTrip("R/0000000"));
+        roundTrip("R/9999999");
+        roundTrip("O/0000000");
+        assertEquals(CredentialKind.STUDENT_NUMBER_BASE - 1, roundTrip("C/9999999"));
+    }
+
+    @Test
+    public void studentNumbersRoundTrip() {
+        assertEquals(CredentialKind.STUDENT_NUMBER_BASE, roundTrip("00000"));
+        assertEquals(CredentialKind.STUDENT_NUMBER_BASE + 99999, roundTrip("99999"));
+        roundTrip("10000");
+    }
+
+    @Test
+    public void codesOfDifferentKindsDontOverlap() {
+        assertTrue(CredentialKind.encode("9-9999999|9") < CredentialKind.encode("R/0000000"));
+        assertTrue(CredentialKind.encode("C/9999999") < CredentialKind.encode("00000"));
+    }
+
+    @Test
+    public void otherFormatsHaveNoCode() {
+        String[] keys = { "", "1", "1234", "123456", "0-0000000|", "0-0000000|00", "0_0000000|0", "0-0000000/0",
+                "a-0000000|0", "0-000000a|0", "0-0000000|a", "X/0000000", "R-0000000", "R/000000a", "R/00000000",
+                "ABC/12345", "1234a", "/0000", ":0000", "0000:" };
+        for (String key : keys)
+            assertEquals(-1, CredentialKind.encode(key), key);
+    }
+
+    @Test
+    public void numbersOutsideTheCodesDontDecode() {
+        assertThrows(IllegalArgumentException.class, () -> CredentialKind.decode(-1));
+        assertThrows(IllegalArgumentException.class, () -> CredentialKind.decode(CredentialKind.STUDENT_NUMBER_BASE + 100000));
+        assertEquals("99999", CredentialKind.decode(CredentialKind.STUDENT_NUMBER_BASE + 99999));
+    }
+
+    @Test
+    public void kindsByFormat() {
+        assertEquals(CredentialKind.NATIONAL_ID, CredentialKind.of("1-2345678|9"));
+        assertEquals(CredentialKind.PERSONAL_NUMBER, CredentialKind.of("R/1234567"));
+        assertEquals(CredentialKind.STUDENT_NUMBER, CredentialKind.of("12345"));
+        assertNull(CredentialKind.of(""));
+        assertNull(CredentialKind.of("12a45"));
+    }
+
+} // CredentialKindTest - End of class definition.
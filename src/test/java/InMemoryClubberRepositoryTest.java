@@ -0,0 +1,245 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link InMemoryClubberRepository} used by many threads at once:
+ * members added, replaced and found concurrently, while the slots and the index grow.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class InMemoryClubberRepositoryTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int THREADS = 8; // Number of threads working at once.
+    private static final int MEMBERS = 30000; // Number of members, more than the repository starts with room for.
+
+    private ExecutorService pool; // Runs the threads.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param record A member.
+     * @param name The member's new name.
+     * @return A copy of the member with the new name.
+     */
+    private static ClubberRecord renamed(ClubberRecord record, String name) {
+        String credential = (record.getType() == ClubberType.SOLDIER ? record.getPersonalNum()
+                : record.getType() == ClubberType.STUDENT ? record.getStudentId() : null);
+        return new ClubberRecord(record.getType(), record.getId(), name, record.getSurname(), record.getTel(), credential);
+    }
+
+    /**
+     * Waits for tasks, rethrowing their failures.
+     * @param tasks The tasks.
+     * @throws Exception If a task failed.
+     */
+    private static void join(List<Future<?>> tasks) throws Exception {
+        for (Future<?> task : tasks)
+            task.get(60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Every thread adds every member, each in a different order: each member gets in exactly once,
+     * and all of it's credentials find it, though the slots and the index grow meanwhile.
+     */
+    @Test
+    public void concurrentAddsOfTheSameMembersLetEachInOnce() throws Exception {
+        final InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        final AtomicInteger added = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            tasks.add(pool.submit(() -> {
+                List<Integer> order = new ArrayList<Integer>(MEMBERS);
+                for (int i = 0; i < MEMBERS; i++)
+                    order.add(i);
+                Collections.shuffle(order, new Random(seed));
+                start.await();
+                for (int i : order)
+                    if (repository.add(SyntheticClubbers.clubber(i)))
+                        added.incrementAndGet();
+                return null;
+            }));
+        }
+        start.countDown();
+        join(tasks);
+        assertEquals(MEMBERS, added.get());
+        assertEquals(MEMBERS, repository.size());
+        int counted = 0;
+        for (ClubberType type : ClubberType.values())
+            counted += repository.count(type);
+        assertEquals(MEMBERS, counted);
+        for (int i = 0; i < MEMBERS; i++) {
+            ClubberRecord expected = SyntheticClubbers.clubber(i);
+            for (String key : expected.keys()) {
+                ClubberRecord found = repository.find(key);
+                assertNotNull(found, key);
+                assertEquals(expected.getId(), found.getId());
+            }
+        }
+    }
+
+    /**
+     * Threads add disjoint members while others look up the members already added:
+     * a member, once added, is always found, while the slots and the index grow.
+     */
+    @Test
+    public void membersAddedAreFoundWhileTheRepositoryGrows() throws Exception {
+        final InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        final AtomicInteger[] progress = new AtomicInteger[THREADS]; // Members each adding thread added so far.
+        final AtomicBoolean adding = new AtomicBoolean(true);
+        final AtomicInteger misses = new AtomicInteger();
+        List<Future<?>> adders = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            progress[t] = new AtomicInteger();
+            adders.add(pool.submit(() -> {
+                for (int i = thread; i < MEMBERS; i += THREADS) {
+                    assertTrue(repository.add(SyntheticClubbers.clubber(i)));
+                    progress[thread].incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        Future<?> reader = pool.submit(() -> {
+            Random random = new Random(1);
+            while (adding.get()) {
+                int thread = random.nextInt(THREADS);
+                int done = progress[thread].get();
+                if (done == 0)
+                    continue;
+                ClubberRecord expected = SyntheticClubbers.clubber(thread + random.nextInt(done) * THREADS);
+                for (String key : expected.keys())
+                    if (repository.find(key) == null)
+                        misses.incrementAndGet();
+            }
+            return null;
+        });
+        join(adders);
+        adding.set(false);
+        reader.get(60, TimeUnit.SECONDS);
+        assertEquals(0, misses.get());
+        assertEquals(MEMBERS, repository.size());
+    }
+
+    /**
+     * Every thread tries to replace every member with a copy of it's own: exactly one replacement of each
+     * member succeeds, and the member is found by all of it's credentials throughout.
+     */
+    @Test
+    public void concurrentReplacesOfTheSameMemberLetOneWin() throws Exception {
+        final InMemoryClubberRepository repository = SyntheticClubbers.repository(MEMBERS);
+        final ClubberRecord[] originals = new ClubberRecord[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++)
+            originals[i] = repository.find(SyntheticClubbers.clubber(i).getId());
+        final AtomicInteger replaced = new AtomicInteger();
+        final AtomicBoolean replacing = new AtomicBoolean(true);
+        final AtomicInteger misses = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> replacers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final String name = "Name" + (char)('a' + t);
+            replacers.add(pool.submit(() -> {
+                start.await();
+                for (ClubberRecord original : originals)
+                    if (repository.replace(original, renamed(original, name)))
+                        replaced.incrementAndGet();
+                return null;
+            }));
+        }
+        Future<?> reader = pool.submit(() -> {
+            Random random = new Random(2);
+            while (replacing.get()) {
+                ClubberRecord original = originals[random.nextInt(MEMBERS)];
+                for (String key : original.keys()) {
+                    ClubberRecord found = repository.find(key);
+                    if (found == null || !found.getId().equals(original.getId()))
+                        misses.incrementAndGet();
+                }
+            }
+            return null;
+        });
+        start.countDown();
+        join(replacers);
+        replacing.set(false);
+        reader.get(60, TimeUnit.SECONDS);
+        assertEquals(0, misses.get());
+        assertEquals(MEMBERS, replaced.get());
+        assertEquals(MEMBERS, repository.size());
+        for (ClubberRecord original : originals) {
+            ClubberRecord found = repository.find(original.getId());
+            assertNotSame(original, found);
+            assertTrue(found.getName().startsWith("Name"));
+            for (String key : original.keys())
+                assertSame(found, repository.find(key));
+        }
+    }
+
+    /**
+     * Two members racing for the same credential: only one of them gets it.
+     */
+    @Test
+    public void concurrentAddsOfASharedCredentialLetOneIn() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            final InMemoryClubberRepository repository = new InMemoryClubberRepository();
+            final CountDownLatch start = new CountDownLatch(1);
+            final String personalNum = String.format("R/%d", 1000000 + round);
+            List<Future<Boolean>> tasks = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < THREADS; t++) {
+                final String id = String.format("1-%07d|%d", round * THREADS + t, 1 + t);
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    return repository.add(new ClubberRecord(ClubberType.SOLDIER, id, "Ari", "Cohen", "+(972)54-1234567", personalNum));
+                }));
+            }
+            start.countDown();
+            int winners = 0;
+            for (Future<Boolean> task : tasks)
+                if (task.get(60, TimeUnit.SECONDS))
+                    winners++;
+            assertEquals(1, winners);
+            assertEquals(1, repository.size());
+            ClubberRecord owner = repository.find(personalNum);
+            assertNotNull(owner);
+            assertSame(owner, repository.find(owner.getId()));
+        }
+    }
+
+    /**
+     * Synthetic members past the last student number are all distinct, so the repository takes every one of them.
+     */
+    @Test
+    public void syntheticMembersAreAllAdded() {
+        int members = 3 * SyntheticClubbers.STUDENTS + 1000;
+        InMemoryClubberRepository repository = SyntheticClubbers.repository(members);
+        assertEquals(members, repository.size());
+        assertEquals(SyntheticClubbers.STUDENTS, repository.count(ClubberType.STUDENT));
+    }
+
+} // InMemoryClubberRepositoryTest - End of class definition.
@@ -0,0 +1,210 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link JournalClubberStore}'s replay of a journal torn by a crash.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class JournalClubberStoreTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 20; // Number of members journaled.
+
+    @TempDir
+    File dir; // Holds the snapshots and journals.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param file The snapshot file.
+     * @return A store that leaves compaction alone.
+     */
+    private static JournalClubberStore store(File file) {
+        return new JournalClubberStore(file, JournalClubberStore.FsyncPolicy.NEVER, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param file The snapshot file.
+     * @return It's journal.
+     */
+    private static File journalOf(File file) {
+        return new File(file.getPath() + ".log");
+    }
+
+    /**
+     * Loads a snapshot and it's journal.
+     * @param file The snapshot file.
+     * @return The members.
+     * @throws IOException If the store cannot be loaded.
+     */
+    private static InMemoryClubberRepository load(File file) throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = store(file);
+        try {
+            store.load(repository);
+        }
+        finally {
+            store.close();
+        }
+        return repository;
+    }
+
+    /**
+     * Journals members 0 to {@link #MEMBERS} - 1, member 0 renamed after it was added, then member {@link #MEMBERS}.
+     * The truncated journals are cut in the last entry, which adds member {@link #MEMBERS}.
+     * Every cut drops that entry only, and the journal can be appended to again afterwards.
+     */
+    @Test
+    public void replayDropsAFinalEntryTornAtAnyByte() throws IOException {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = store(file);
+        store.load(repository);
+        for (int i = 0; i < MEMBERS; i++) {
+            ClubberRecord member = SyntheticClubbers.clubber(i);
+            assertTrue(repository.add(member));
+            store.committed(null, member);
+        }
+        ClubberRecord old = repository.find(SyntheticClubbers.clubber(0).getId());
+        ClubberRecord renamed = new ClubberRecord(old.getType(), old.getId(), "Renamed", old.getSurname(), old.getTel(), null);
+        assertTrue(repository.replace(old, renamed));
+        store.committed(old, renamed);
+        long lastEntry = journalOf(file).length();
+        ClubberRecord last = SyntheticClubbers.clubber(MEMBERS);
+        assertTrue(repository.add(last));
+        store.committed(null, last);
+        store.close();
+        long length = journalOf(file).length();
+        assertTrue(length > lastEntry);
+
+        InMemoryClubberRepository whole = load(file);
+        assertEquals(MEMBERS + 1, whole.size());
+        assertEquals("Renamed", whole.find(old.getId()).getName());
+
+        File torn = new File(dir, "torn.dat");
+        for (long cut = lastEntry; cut < length; cut++) {
+            Files.copy(journalOf(file).toPath(), journalOf(torn).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (RandomAccessFile journal = new RandomAccessFile(journalOf(torn), "rw")) {
+                journal.setLength(cut);
+            }
+            InMemoryClubberRepository replayed = new InMemoryClubberRepository();
+            JournalClubberStore tornStore = store(torn);
+            tornStore.load(replayed);
+            assertEquals(MEMBERS, replayed.size(), "cut at " + cut);
+            assertNull(replayed.find(last.getId()), "cut at " + cut);
+            assertEquals("Renamed", replayed.find(old.getId()).getName(), "cut at " + cut);
+            assertEquals(lastEntry, journalOf(torn).length(), "cut at " + cut);
+            assertTrue(replayed.add(last));
+            tornStore.committed(null, last);
+            tornStore.close();
+            assertEquals(length, journalOf(torn).length(), "cut at " + cut);
+            assertEquals(MEMBERS + 1, load(torn).size(), "cut at " + cut);
+        }
+    }
+
+    /**
+     * A flipped byte in the last entry fails it's checksum, and the entry is dropped.
+     */
+    @Test
+    public void replayDropsACorruptedFinalEntry() throws IOException {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = store(file);
+        store.load(repository);
+        ClubberRecord first = SyntheticClubbers.clubber(0), second = SyntheticClubbers.clubber(1);
+        repository.add(first);
+        store.committed(null, first);
+        long lastEntry = journalOf(file).length();
+        repository.add(second);
+        store.committed(null, second);
+        store.close();
+        try (RandomAccessFile journal = new RandomAccessFile(journalOf(file), "rw")) {
+            journal.seek(journal.length() - 1);
+            int b = journal.read();
+            journal.seek(journal.length() - 1);
+            journal.write(b ^ 0x01);
+        }
+        InMemoryClubberRepository replayed = load(file);
+        assertEquals(1, replayed.size());
+        assertNotNull(replayed.find(first.getId()));
+        assertEquals(lastEntry, journalOf(file).length());
+    }
+
+    /**
+     * Changes compacted into the snapshot aren't applied again, and later ones are.
+     */
+    @Test
+    public void replayAfterCompactionAppliesOnlyLaterChanges() throws IOException {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = store(file);
+        store.load(repository);
+        for (int i = 0; i < MEMBERS; i++) {
+            ClubberRecord member = SyntheticClubbers.clubber(i);
+            repository.add(member);
+            store.committed(null, member);
+        }
+        store.compact(repository);
+        assertEquals(0, journalOf(file).length());
+        ClubberRecord last = SyntheticClubbers.clubber(MEMBERS);
+        repository.add(last);
+        store.committed(null, last);
+        store.close();
+        InMemoryClubberRepository replayed = load(file);
+        assertEquals(MEMBERS + 1, replayed.size());
+        assertNotNull(replayed.find(last.getId()));
+    }
+
+    /**
+     * A background snapshot that fails leaves the rotated journal behind; the next rotation appends to it
+     * rather than replacing it, so no change is lost, and the next load writes the snapshot.
+     */
+    @Test
+    public void rotationAfterAFailedSnapshotKeepsTheRotatedJournal() throws Exception {
+        File file = new File(dir, "members.dat");
+        File temp = new File(dir, "members.dat.tmp");
+        assertTrue(temp.mkdir()); // The snapshot cannot be written while it's temporary file is a directory.
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        JournalClubberStore store = new JournalClubberStore(file, JournalClubberStore.FsyncPolicy.NEVER, 0, 5);
+        store.load(repository);
+        for (int i = 0; i < 5; i++) {
+            ClubberRecord member = SyntheticClubbers.clubber(i);
+            repository.add(member);
+            store.committed(null, member);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) { // Wait for the background snapshot to fail.
+            try {
+                store.save(repository);
+            }
+            catch (IOException e) {
+                break;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Snapshot didn't fail");
+            Thread.sleep(10);
+        }
+        File rotated = new File(dir, "members.dat.log.old");
+        assertTrue(rotated.exists());
+        for (int i = 5; i < 10; i++) {
+            ClubberRecord member = SyntheticClubbers.clubber(i);
+            repository.add(member);
+            store.committed(null, member);
+        }
+        store.close();
+        assertTrue(rotated.exists());
+        assertTrue(temp.delete());
+        InMemoryClubberRepository replayed = load(file);
+        assertEquals(10, replayed.size());
+        assertFalse(rotated.exists());
+        assertEquals(10, load(file).size());
+    }
+
+} // JournalClubberStoreTest - End of class definition.
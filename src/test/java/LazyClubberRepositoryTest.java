@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link LazyClubberRepository}: members read from the data file on demand, alongside committed members.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class LazyClubberRepositoryTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 30; // Number of members in the data file.
+    private static final int CACHE_SIZE = 4; // Number of file records kept in memory.
+
+    @TempDir
+    File dir; // Holds the data file.
+
+    private File file; // The data file.
+    private LazyClubberRepository repository; // The repository over the data file.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = new File(dir, "members.dat");
+        List<ClubberRecord> members = new ArrayList<ClubberRecord>();
+        for (int i = 0; i < MEMBERS; i++)
+            members.add(SyntheticClubbers.clubber(i));
+        SnapshotClubberStore.writeSnapshot(members, 0, file);
+        repository = new LazyClubberRepository(file, CACHE_SIZE);
+        repository.open();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        repository.close();
+    }
+
+    /**
+     * @param record A member.
+     * @param name The member's new name.
+     * @param personalNum The soldier's new personal number.
+     * @return A copy of the soldier with the new name and personal number.
+     */
+    private static ClubberRecord soldier(ClubberRecord record, String name, String personalNum) {
+        return new ClubberRecord(ClubberType.SOLDIER, record.getId(), name, record.getSurname(), record.getTel(), personalNum);
+    }
+
+    @Test
+    public void fileMembersAreFoundByEveryCredential() {
+        assertEquals(MEMBERS, repository.size());
+        for (ClubberType type : ClubberType.values())
+            assertEquals(MEMBERS / 3, repository.count(type));
+        for (int i = 0; i < MEMBERS; i++) {
+            ClubberRecord expected = SyntheticClubbers.clubber(i);
+            for (String key : expected.keys())
+                assertEquals(expected.getId(), repository.find(key).getId(), key);
+        }
+        assertTrue(repository.cachedCount() <= CACHE_SIZE);
+        assertNull(repository.find("0-9999999|9"));
+    }
+
+    @Test
+    public void addRefusesCredentialsOfFileMembers() {
+        ClubberRecord fileSoldier = SyntheticClubbers.clubber(1);
+        ClubberRecord newcomer = SyntheticClubbers.clubber(MEMBERS + 1);
+        assertFalse(repository.add(soldier(newcomer, "Dan", fileSoldier.getPersonalNum())));
+        assertTrue(repository.add(newcomer));
+        assertEquals(MEMBERS + 1, repository.size());
+        assertFalse(repository.add(SyntheticClubbers.clubber(MEMBERS + 1)));
+    }
+
+    /**
+     * A committed member must not take a credential still held by a member only in the file.
+     */
+    @Test
+    public void replaceOfCommittedMemberRefusesCredentialsOfFileMembers() {
+        ClubberRecord fileSoldier = SyntheticClubbers.clubber(1);
+        ClubberRecord newcomer = SyntheticClubbers.clubber(MEMBERS + 1); // A soldier.
+        assertTrue(repository.add(newcomer));
+        assertFalse(repository.replace(newcomer, soldier(newcomer, "Dan", fileSoldier.getPersonalNum())));
+        assertEquals(fileSoldier.getId(), repository.find(fileSoldier.getPersonalNum()).getId());
+        assertSame(newcomer, repository.find(newcomer.getId()));
+        ClubberRecord renamed = soldier(newcomer, "Dan", newcomer.getPersonalNum());
+        assertTrue(repository.replace(newcomer, renamed));
+        assertFalse(repository.replace(newcomer, soldier(newcomer, "Eli", newcomer.getPersonalNum()))); // Stale.
+        assertSame(renamed, repository.find(newcomer.getId()));
+    }
+
+    @Test
+    public void replaceOfFileMemberMovesItToMemory() {
+        ClubberRecord fileSoldier = repository.find(SyntheticClubbers.clubber(4).getId());
+        ClubberRecord otherSoldier = SyntheticClubbers.clubber(7);
+        assertFalse(repository.replace(fileSoldier, soldier(fileSoldier, "Dan", otherSoldier.getPersonalNum())));
+        ClubberRecord moved = soldier(fileSoldier, "Dan", "R/7654321");
+        assertTrue(repository.replace(fileSoldier, moved));
+        assertEquals(MEMBERS, repository.size());
+        assertEquals(MEMBERS / 3, repository.count(ClubberType.SOLDIER));
+        assertSame(moved, repository.find("R/7654321"));
+        assertNull(repository.find(fileSoldier.getPersonalNum()));
+        assertEquals("Dan", repository.find(fileSoldier.getId()).getName());
+    }
+
+    @Test
+    public void rewriteMovesCommittedMembersToTheFile() throws IOException {
+        ClubberRecord fileMember = repository.find(SyntheticClubbers.clubber(3).getId());
+        ClubberRecord renamed = new ClubberRecord(fileMember.getType(), fileMember.getId(), "Dan", fileMember.getSurname(),
+                fileMember.getTel(), null);
+        assertTrue(repository.replace(fileMember, renamed));
+        assertTrue(repository.add(SyntheticClubbers.clubber(MEMBERS)));
+        repository.rewrite();
+        repository.close();
+        LazyClubberRepository reopened = new LazyClubberRepository(file, CACHE_SIZE);
+        reopened.open();
+        try {
+            assertEquals(MEMBERS + 1, reopened.size());
+            assertEquals("Dan", reopened.find(fileMember.getId()).getName());
+            assertNotNull(reopened.find(SyntheticClubbers.clubber(MEMBERS).getId()));
+            int iterated = 0;
+            for (ClubberRecord record : reopened) {
+                assertNotNull(record);
+                iterated++;
+            }
+            assertEquals(MEMBERS + 1, iterated);
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+} // LazyClubberRepositoryTest - End of class definition.
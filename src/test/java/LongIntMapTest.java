@@ -0,0 +1,176 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link LongIntMap}, and of it's table being rebuilt while other threads read and write it.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class LongIntMapTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int THREADS = 4; // Number of writing threads, and of reading threads.
+    private static final int KEYS = 200000; // Number of keys written, many times the map's initial room.
+
+    private ExecutorService pool; // Runs the threads.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(2 * THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param i Index of a key.
+     * @return The key, spread over the whole range of keys.
+     */
+    private static long key(int i) {
+        return (i * 10007L) % (LongIntMap.MAX_KEY + 1);
+    }
+
+    @Test
+    public void keysAtTheEndsOfTheRange() {
+        LongIntMap map = new LongIntMap(1);
+        assertEquals(LongIntMap.NO_VALUE, map.putIfAbsent(0, 7));
+        assertEquals(LongIntMap.NO_VALUE, map.putIfAbsent(LongIntMap.MAX_KEY, Integer.MAX_VALUE));
+        assertEquals(7, map.get(0));
+        assertEquals(Integer.MAX_VALUE, map.get(LongIntMap.MAX_KEY));
+        assertEquals(7, map.putIfAbsent(0, 8));
+        assertThrows(IllegalArgumentException.class, () -> map.putIfAbsent(-1, 0));
+        assertThrows(IllegalArgumentException.class, () -> map.putIfAbsent(LongIntMap.MAX_KEY + 1, 0));
+        assertEquals(LongIntMap.NO_VALUE, map.get(1));
+    }
+
+    @Test
+    public void replaceAndRemoveNeedTheExpectedValue() {
+        LongIntMap map = new LongIntMap(16);
+        map.putIfAbsent(42, 1);
+        assertFalse(map.replace(42, 2, 3));
+        assertTrue(map.replace(42, 1, 3));
+        assertFalse(map.remove(42, 1));
+        assertTrue(map.remove(42, 3));
+        assertEquals(LongIntMap.NO_VALUE, map.get(42));
+        assertEquals(0, map.size());
+        assertEquals(LongIntMap.NO_VALUE, map.putIfAbsent(42, 4));
+        assertEquals(4, map.get(42));
+    }
+
+    /**
+     * Removing and adding keys over and over leaves tombstones which rebuilds drop;
+     * the keys left alone are found throughout.
+     */
+    @Test
+    public void tombstonesAreDroppedByRebuilds() {
+        LongIntMap map = new LongIntMap(16);
+        for (int i = 0; i < 8; i++)
+            map.putIfAbsent(key(i), i);
+        for (int round = 0; round < 100000; round++) {
+            long key = key(8 + round);
+            assertEquals(LongIntMap.NO_VALUE, map.putIfAbsent(key, round));
+            assertTrue(map.remove(key, round));
+            for (int i = 0; i < 8; i++)
+                assertEquals(i, map.get(key(i)));
+        }
+        assertEquals(8, map.size());
+    }
+
+    /**
+     * Writers add disjoint keys to a map that starts small, so it's table is rebuilt many times,
+     * while readers look up the keys already added: a key, once added, is always found with it's value.
+     */
+    @Test
+    public void keysAddedAreFoundWhileTheTableIsRebuilt() throws Exception {
+        final LongIntMap map = new LongIntMap(1);
+        final AtomicInteger[] progress = new AtomicInteger[THREADS]; // Keys each writer added so far.
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger misses = new AtomicInteger();
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            progress[t] = new AtomicInteger();
+            writers.add(pool.submit(() -> {
+                for (int i = thread; i < KEYS; i += THREADS) {
+                    assertEquals(LongIntMap.NO_VALUE, map.putIfAbsent(key(i), i));
+                    progress[thread].incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<Future<?>>();
+        for (int r = 0; r < THREADS; r++) {
+            final long seed = r;
+            readers.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                while (writing.get()) {
+                    int thread = random.nextInt(THREADS);
+                    int done = progress[thread].get();
+                    if (done == 0)
+                        continue;
+                    int i = thread + random.nextInt(done) * THREADS;
+                    if (map.get(key(i)) != i)
+                        misses.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers)
+            writer.get(60, TimeUnit.SECONDS);
+        writing.set(false);
+        for (Future<?> reader : readers)
+            reader.get(60, TimeUnit.SECONDS);
+        assertEquals(0, misses.get());
+        assertEquals(KEYS, map.size());
+        for (int i = 0; i < KEYS; i++)
+            assertEquals(i, map.get(key(i)));
+    }
+
+    /**
+     * Writers race to add the same keys while the table is rebuilt: each key keeps the first value put.
+     */
+    @Test
+    public void racingPutsKeepOneValue() throws Exception {
+        final LongIntMap map = new LongIntMap(1);
+        final AtomicInteger[] wins = new AtomicInteger[KEYS / 10];
+        for (int i = 0; i < wins.length; i++)
+            wins[i] = new AtomicInteger();
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+        for (int t = 0; t < 2 * THREADS; t++) {
+            final int thread = t;
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < wins.length; i++) {
+                    int current = map.putIfAbsent(key(i), thread);
+                    if (current == LongIntMap.NO_VALUE)
+                        wins[i].incrementAndGet();
+                    else
+                        assertEquals(current, map.get(key(i)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers)
+            writer.get(60, TimeUnit.SECONDS);
+        for (AtomicInteger win : wins)
+            assertEquals(1, win.get());
+        assertEquals(wins.length, map.size());
+    }
+
+} // LongIntMapTest - End of class definition.
@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of a {@link ClubberReplica} following a {@link ReplicationPrimary}.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ReplicationPrimaryTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int BACKLOG = 4; // Number of recent changes the primary keeps.
+    private static final long TIMEOUT_MILLIS = 20000; // Longest wait for the replica to catch up.
+
+    private ReplicationPrimary primary; // The primary, once started.
+    private ClubberReplica replica; // The replica, once started.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (replica != null)
+            replica.close();
+        if (primary != null)
+            primary.close();
+    }
+
+    /**
+     * Starts a primary over a repository holding the first members, and a replica following it.
+     * @param repository The primary's repository.
+     * @param members Number of members the repository starts with.
+     * @throws IOException If the primary cannot listen.
+     */
+    private void start(InMemoryClubberRepository repository, int members) throws IOException {
+        for (int i = 0; i < members; i++)
+            repository.add(SyntheticClubbers.clubber(i));
+        primary = new ReplicationPrimary(new NoStore(), 0, BACKLOG);
+        primary.load(repository);
+        replica = new ClubberReplica(new InetSocketAddress(InetAddress.getLoopbackAddress(), primary.getPort()), 5000);
+        replica.start();
+        await(() -> replica.size() == members && replica.isCurrent());
+    }
+
+    /**
+     * Adds members to the primary's repository and commits them.
+     * @param repository The primary's repository.
+     * @param from Index of the first member.
+     * @param to Index after the last member.
+     * @throws IOException If a change cannot be committed.
+     */
+    private void commit(InMemoryClubberRepository repository, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            ClubberRecord member = SyntheticClubbers.clubber(i);
+            assertTrue(repository.add(member));
+            primary.committed(null, member);
+        }
+    }
+
+    /**
+     * Waits for a condition.
+     * @param condition The condition.
+     */
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+    }
+
+    @Test
+    public void replicaAppliesChangesWithinTheBacklog() throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        start(repository, 10);
+        for (int i = 10; i < 30; i++) {
+            commit(repository, i, i + 1);
+            final long sequence = i - 9;
+            await(() -> replica.getApplied() == sequence);
+        }
+        assertEquals(30, replica.size());
+        for (int i = 0; i < 30; i++)
+            assertNotNull(replica.find(SyntheticClubbers.clubber(i).getId()));
+    }
+
+    /**
+     * Changes are committed while the primary's lock is held, so the replica's connection cannot send any of them
+     * before more than the backlog holds were committed: the primary drops the replica, which reconnects
+     * and catches up from a snapshot.
+     */
+    @Test
+    public void replicaOutsideTheBacklogCatchesUpFromASnapshot() throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        start(repository, 10);
+        synchronized (primary) {
+            commit(repository, 10, 10 + 5 * BACKLOG);
+        }
+        await(() -> replica.getApplied() == 5 * BACKLOG && replica.size() == 10 + 5 * BACKLOG);
+        for (int i = 0; i < 10 + 5 * BACKLOG; i++)
+            assertNotNull(replica.find(SyntheticClubbers.clubber(i).getId()));
+        commit(repository, 10 + 5 * BACKLOG, 11 + 5 * BACKLOG);
+        await(() -> replica.getApplied() == 5 * BACKLOG + 1);
+        assertEquals(11 + 5 * BACKLOG, replica.size());
+    }
+
+    //------------------------------------------- Nested classes ----------------------------------
+
+    /**
+     * A store that keeps nothing, for a primary whose repository the test fills.
+     * @author Magen Rosenwasser, Atalo Tarafa.
+     */
+    private static final class NoStore implements ClubberStore {
+
+        @Override
+        public void load(ClubberRepository repository) {
+        }
+
+        @Override
+        public void committed(ClubberRecord old, ClubberRecord updated) {
+        }
+
+        @Override
+        public void save(ClubberRepository repository) {
+        }
+
+        @Override
+        public void compact(ClubberRepository repository) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    } // NoStore - End of class definition.
+
+} // ReplicationPrimaryTest - End of class definition.
@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link ShardedClubberStore}: members split into shard files, saves of the changed shards only,
+ * and the unsharded data file and shards of a different number split again.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class ShardedClubberStoreTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 200; // Number of members stored.
+    private static final int SHARDS = 4; // Number of shards.
+    private static final long OLD = 1000000000000L; // Modification time given to shard files, to tell the rewritten ones.
+
+    @TempDir
+    File dir; // Holds the data file and it's shards.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * Loads the members of a sharded data file.
+     * @param file The data file.
+     * @param shards Number of shards.
+     * @return The members.
+     * @throws IOException If the shards cannot be read.
+     */
+    private static InMemoryClubberRepository load(File file, int shards) throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        ShardedClubberStore store = new ShardedClubberStore(file, shards);
+        try {
+            store.load(repository);
+        }
+        finally {
+            store.close();
+        }
+        return repository;
+    }
+
+    /**
+     * Stores the members in shards.
+     * @param file The data file.
+     * @param repository The repository the members are added to.
+     * @return The store, loaded and saved.
+     * @throws IOException If the shards cannot be written.
+     */
+    private static ShardedClubberStore storeMembers(File file, InMemoryClubberRepository repository) throws IOException {
+        ShardedClubberStore store = new ShardedClubberStore(file, SHARDS);
+        store.load(repository);
+        for (int i = 0; i < MEMBERS; i++) {
+            ClubberRecord member = SyntheticClubbers.clubber(i);
+            assertTrue(repository.add(member));
+            store.committed(null, member);
+        }
+        store.compact(repository);
+        return store;
+    }
+
+    @Test
+    public void membersAreSplitIntoShards() throws IOException {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        ShardedClubberStore store = storeMembers(file, repository);
+        store.close();
+        assertFalse(file.exists());
+        int stored = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            List<ClubberRecord> shard = new ArrayList<ClubberRecord>();
+            ClubberStorage.readFile(store.shardFile(i), shard::add);
+            for (ClubberRecord member : shard)
+                assertEquals(i, store.shardOf(member));
+            assertFalse(shard.isEmpty());
+            stored += shard.size();
+        }
+        assertEquals(MEMBERS, stored);
+        assertFalse(store.shardFile(SHARDS).exists());
+        InMemoryClubberRepository loaded = load(file, SHARDS);
+        assertEquals(MEMBERS, loaded.size());
+        for (int i = 0; i < MEMBERS; i++)
+            assertNotNull(loaded.find(SyntheticClubbers.clubber(i).getId()));
+    }
+
+    @Test
+    public void saveRewritesOnlyTheChangedShards() throws IOException {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        ShardedClubberStore store = storeMembers(file, repository);
+        for (int i = 0; i < SHARDS; i++)
+            assertTrue(store.shardFile(i).setLastModified(OLD));
+        ClubberRecord old = repository.find(SyntheticClubbers.clubber(7).getId());
+        ClubberRecord renamed = new ClubberRecord(old.getType(), old.getId(), "Renamed", old.getSurname(), old.getTel(), old.getPersonalNum());
+        assertTrue(repository.replace(old, renamed));
+        store.committed(old, renamed);
+        store.save(repository);
+        store.close();
+        for (int i = 0; i < SHARDS; i++)
+            assertEquals(i == store.shardOf(renamed), store.shardFile(i).lastModified() != OLD, "shard " + i);
+        assertEquals("Renamed", load(file, SHARDS).find(old.getId()).getName());
+    }
+
+    /**
+     * The members of an unsharded data file are split into shards by the first save, which then retires the file.
+     */
+    @Test
+    public void unshardedFileIsSplitByTheFirstSave() throws IOException {
+        File file = new File(dir, "members.dat");
+        List<ClubberRecord> members = new ArrayList<ClubberRecord>();
+        for (int i = 0; i < MEMBERS; i++)
+            members.add(SyntheticClubbers.clubber(i));
+        SnapshotClubberStore.writeSnapshot(members, 0, file);
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        ShardedClubberStore store = new ShardedClubberStore(file, SHARDS);
+        store.load(repository);
+        assertEquals(MEMBERS, repository.size());
+        store.save(repository);
+        store.close();
+        assertFalse(file.exists());
+        assertTrue(new File(dir, "members.dat.unsharded").exists());
+        assertEquals(MEMBERS, load(file, SHARDS).size());
+    }
+
+    /**
+     * Shards found in a different number than configured are all rewritten by the next save, and surplus ones deleted.
+     */
+    @Test
+    public void fewerShardsAreSplitAgain() throws IOException {
+        File file = new File(dir, "members.dat");
+        storeMembers(file, new InMemoryClubberRepository()).close();
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        ShardedClubberStore store = new ShardedClubberStore(file, 2);
+        store.load(repository);
+        assertEquals(MEMBERS, repository.size());
+        store.save(repository);
+        store.close();
+        assertTrue(store.shardFile(1).exists());
+        assertFalse(store.shardFile(2).exists());
+        assertFalse(store.shardFile(SHARDS - 1).exists());
+        assertEquals(MEMBERS, load(file, 2).size());
+    }
+
+    /**
+     * A shard that fails to be written is reported by the next check, and written by the next save.
+     */
+    @Test
+    public void failedShardIsWrittenByTheNextSave() throws Exception {
+        File file = new File(dir, "members.dat");
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        ShardedClubberStore store = storeMembers(file, repository);
+        ClubberRecord old = repository.find(SyntheticClubbers.clubber(7).getId());
+        int shard = store.shardOf(old);
+        File temp = new File(store.shardFile(shard).getPath() + ".tmp");
+        assertTrue(temp.mkdir()); // The shard cannot be written while it's temporary file is a directory.
+        ClubberRecord renamed = new ClubberRecord(old.getType(), old.getId(), "Renamed", old.getSurname(), old.getTel(), old.getPersonalNum());
+        assertTrue(repository.replace(old, renamed));
+        store.committed(old, renamed);
+        long deadline = System.currentTimeMillis() + 10000;
+        try {
+            store.save(repository); // Reports the failure itself if the save failed already.
+            while (true) { // Wait for the background save to fail.
+                store.checkSaved();
+                assertTrue(System.currentTimeMillis() < deadline, "Save didn't fail");
+                Thread.sleep(10);
+            }
+        }
+        catch (IOException e) {
+            // The failure was reported.
+        }
+        assertEquals(old.getName(), load(file, SHARDS).find(old.getId()).getName());
+        assertTrue(temp.delete());
+        store.save(repository);
+        store.close();
+        assertEquals("Renamed", load(file, SHARDS).find(old.getId()).getName());
+    }
+
+} // ShardedClubberStoreTest - End of class definition.
@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link SnapshotClubberStore}'s background saves, and of loading snapshots serialized by older versions.
+ * @author Magen Rosenwasser, Atalo Tarafa.
+ */
+public class SnapshotClubberStoreTest {
+
+    //------------------------------------------- Fields ------------------------------------------
+
+    private static final int MEMBERS = 20; // Number of members saved.
+
+    @TempDir
+    File dir; // Holds the snapshots.
+
+    //------------------------------------------- Methods -----------------------------------------
+
+    /**
+     * @param count Number of members.
+     * @return A repository holding the first members.
+     */
+    private static InMemoryClubberRepository members(int count) {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        for (int i = 0; i < count; i++)
+            repository.add(SyntheticClubbers.clubber(i));
+        return repository;
+    }
+
+    /**
+     * @param file The snapshot file.
+     * @return The members read from the snapshot.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    private static InMemoryClubberRepository load(File file) throws IOException {
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        new SnapshotClubberStore(file).load(repository);
+        return repository;
+    }
+
+    @Test
+    public void closeWaitsForTheBackgroundSave() throws IOException {
+        File file = new File(dir, "members.dat");
+        SnapshotClubberStore store = new SnapshotClubberStore(file);
+        store.save(members(MEMBERS));
+        store.close();
+        assertEquals(MEMBERS, load(file).size());
+    }
+
+    /**
+     * A background save that fails is reported once, by the next check, and the members can then be saved again.
+     */
+    @Test
+    public void failedBackgroundSaveIsReportedOnce() throws Exception {
+        File file = new File(dir, "members.dat");
+        File temp = new File(dir, "members.dat.tmp");
+        assertTrue(temp.mkdir()); // The snapshot cannot be written while it's temporary file is a directory.
+        SnapshotClubberStore store = new SnapshotClubberStore(file);
+        InMemoryClubberRepository repository = members(MEMBERS);
+        long deadline = System.currentTimeMillis() + 10000;
+        try {
+            store.save(repository); // Reports the failure itself if the save failed already.
+            while (true) { // Wait for the background save to fail.
+                store.checkSaved();
+                assertTrue(System.currentTimeMillis() < deadline, "Save didn't fail");
+                Thread.sleep(10);
+            }
+        }
+        catch (IOException e) {
+            // The failure was reported.
+        }
+        store.checkSaved(); // Already reported.
+        assertFalse(file.exists());
+        assertTrue(temp.delete());
+        store.save(repository);
+        store.close();
+        assertEquals(MEMBERS, load(file).size());
+    }
+
+    /**
+     * A serialized snapshot is loaded, members that cannot be are logged, and the old file is kept beside the new one.
+     */
+    @Test
+    public void serializedSnapshotIsLoadedAndKept() throws IOException {
+        File file = new File(dir, "members.dat");
+        ArrayList<ClubberRecord> members = new ArrayList<ClubberRecord>();
+        for (int i = 0; i < MEMBERS; i++)
+            members.add(SyntheticClubbers.clubber(i));
+        members.add(new ClubberRecord(ClubberType.PERSON, null, "Ari", "Cohen", null, null)); // An empty entry.
+        ClubberRecord soldier = SyntheticClubbers.clubber(1);
+        members.add(new ClubberRecord(ClubberType.SOLDIER, "0-9999999|9", "Dan", "Levi", null, soldier.getPersonalNum()));
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(members);
+        }
+        byte[] serialized = Files.readAllBytes(file.toPath());
+
+        final List<String> logged = new ArrayList<String>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logged.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger log = Logger.getLogger("bk");
+        log.addHandler(handler);
+        SnapshotClubberStore store = new SnapshotClubberStore(file);
+        InMemoryClubberRepository repository = new InMemoryClubberRepository();
+        try {
+            store.load(repository);
+        }
+        finally {
+            log.removeHandler(handler);
+        }
+        assertEquals(MEMBERS, repository.size());
+        assertEquals(soldier.getId(), repository.find(soldier.getPersonalNum()).getId());
+        assertEquals(1, logged.size(), logged.toString());
+        assertTrue(logged.get(0).endsWith("1 empty entries dropped, 0 unresolved, 1 duplicates refused"), logged.get(0));
+
+        File kept = new File(dir, "members.dat.legacy");
+        assertArrayEquals(serialized, Files.readAllBytes(kept.toPath()));
+        store.save(repository);
+        store.close();
+        assertTrue(ClubberFileFormat.isFormatOf(file));
+        assertArrayEquals(serialized, Files.readAllBytes(kept.toPath()));
+        assertEquals(MEMBERS, load(file).size());
+    }
+
+} // SnapshotClubberStoreTest - End of class definition.